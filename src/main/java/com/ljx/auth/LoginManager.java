@@ -0,0 +1,226 @@
+package com.ljx.auth;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+
+/*
+* 登录状态管理
+* session方式：登录的员工id、用户id保存在HttpSession中，与原来的实现相同
+* token方式：登录时签发HMAC签名令牌写入Cookie（也支持Authorization: Bearer请求头），
+* 校验令牌只需要密钥，不创建会话、不访问共享存储，多实例部署时不需要会话粘滞或会话共享
+* 与会话中分别保存employee和user一样，员工和用户的令牌使用不同的Cookie，同一浏览器登录移动端不会覆盖后台的登录*/
+@Component
+@Slf4j
+public class LoginManager {
+
+    //过滤器校验通过后把登录信息放到请求属性中
+    public static final String PRINCIPAL_ATTRIBUTE = LoginManager.class.getName() + ".PRINCIPAL";
+
+    //令牌Cookie名称前缀，后接登录类型，例如reggie_token_employee
+    public static final String TOKEN_COOKIE_PREFIX = "reggie_token_";
+
+    //登录和续期时在该响应头中返回令牌，供不使用Cookie的客户端读取
+    public static final String TOKEN_HEADER = "X-Auth-Token";
+
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private static final int MIN_KEY_BYTES = 32;
+
+    @Value("${reggie.auth.mode:session}")
+    private String mode;
+
+    @Value("${reggie.auth.token.ttl-minutes:720}")
+    private long ttlMinutes;
+
+    @Value("${reggie.auth.token.keys:}")
+    private String keys;
+
+    @Value("${reggie.auth.token.secure-cookie:false}")
+    private boolean secureCookie;
+
+    private TokenSigner signer;
+
+    @PostConstruct
+    public void init() {
+        if (!isTokenMode()) {
+            return;
+        }
+        LinkedHashMap<String, byte[]> keyMap = new LinkedHashMap<>();
+        for (String entry : keys.split(",")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            int separator = entry.indexOf(':');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("签名密钥格式应为 密钥id:密钥");
+            }
+            byte[] secret = entry.substring(separator + 1).getBytes(StandardCharsets.UTF_8);
+            if (secret.length < MIN_KEY_BYTES) {
+                throw new IllegalArgumentException("签名密钥至少" + MIN_KEY_BYTES + "字节：" + entry.substring(0, separator));
+            }
+            keyMap.put(entry.substring(0, separator), secret);
+        }
+        if (keyMap.isEmpty()) {
+            //没有配置密钥时生成随机密钥，只适合单实例开发环境，重启后所有令牌失效
+            byte[] secret = new byte[MIN_KEY_BYTES];
+            new SecureRandom().nextBytes(secret);
+            keyMap.put("dev", secret);
+            log.warn("未配置reggie.auth.token.keys，使用随机生成的签名密钥");
+        }
+        signer = new TokenSigner(keyMap);
+        log.info("使用令牌方式保存登录状态，签发密钥：{}", signer.getPrimaryKeyId());
+    }
+
+    public boolean isTokenMode() {
+        return "token".equalsIgnoreCase(mode);
+    }
+
+    /**
+     * 登录成功后保存登录状态
+     * @param request
+     * @param response
+     * @param type LoginPrincipal.EMPLOYEE 或 LoginPrincipal.USER
+     * @param id
+     */
+    public void login(HttpServletRequest request, HttpServletResponse response, String type, Long id) {
+        if (isTokenMode()) {
+            writeToken(response, type, signer.issue(type, id, nowSeconds() + ttlSeconds()));
+        } else {
+            request.getSession().setAttribute(type, id);
+        }
+    }
+
+    /**
+     * 退出登录
+     * 令牌方式只删除该登录类型的Cookie，已经签发的令牌在过期前仍然有效
+     * @param request
+     * @param response
+     * @param type
+     */
+    public void logout(HttpServletRequest request, HttpServletResponse response, String type) {
+        if (isTokenMode()) {
+            response.addHeader(HttpHeaders.SET_COOKIE, cookie(type, "", Duration.ZERO).toString());
+        } else {
+            HttpSession session = request.getSession(false);
+            if (session != null) {
+                session.removeAttribute(type);
+            }
+        }
+    }
+
+    /**
+     * 识别当前请求的登录信息，由登录检查过滤器调用
+     * 令牌方式下，令牌剩余有效期不足一半或者由旧密钥签名时重新签发
+     * @param request
+     * @param response
+     * @return 未登录时返回null
+     */
+    public LoginPrincipal authenticate(HttpServletRequest request, HttpServletResponse response) {
+        LoginPrincipal principal = isTokenMode() ? authenticateToken(request, response) : authenticateSession(request);
+        if (principal != null) {
+            request.setAttribute(PRINCIPAL_ATTRIBUTE, principal);
+        }
+        return principal;
+    }
+
+    /**
+     * 获取过滤器识别出的登录信息
+     * @param request
+     * @return
+     */
+    public static LoginPrincipal current(HttpServletRequest request) {
+        return (LoginPrincipal) request.getAttribute(PRINCIPAL_ATTRIBUTE);
+    }
+
+    private LoginPrincipal authenticateSession(HttpServletRequest request) {
+        //不创建新会话，未登录的请求不占用会话内存
+        HttpSession session = request.getSession(false);
+        if (session == null) {
+            return null;
+        }
+        Long employeeId = (Long) session.getAttribute(LoginPrincipal.EMPLOYEE);
+        if (employeeId != null) {
+            return new LoginPrincipal(LoginPrincipal.EMPLOYEE, employeeId, 0);
+        }
+        Long userId = (Long) session.getAttribute(LoginPrincipal.USER);
+        if (userId != null) {
+            return new LoginPrincipal(LoginPrincipal.USER, userId, 0);
+        }
+        return null;
+    }
+
+    private LoginPrincipal authenticateToken(HttpServletRequest request, HttpServletResponse response) {
+        long now = nowSeconds();
+        String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (authorization != null && authorization.startsWith(BEARER_PREFIX)) {
+            return verify(authorization.substring(BEARER_PREFIX.length()).trim(), null, now, response);
+        }
+        //与会话方式相同，员工和用户都登录时优先识别为员工
+        LoginPrincipal principal = verify(readCookie(request, LoginPrincipal.EMPLOYEE), LoginPrincipal.EMPLOYEE, now, response);
+        if (principal != null) {
+            return principal;
+        }
+        return verify(readCookie(request, LoginPrincipal.USER), LoginPrincipal.USER, now, response);
+    }
+
+    //type不为null时令牌中的登录类型必须与Cookie对应的类型一致
+    private LoginPrincipal verify(String token, String type, long now, HttpServletResponse response) {
+        LoginPrincipal principal = signer.verify(token, now);
+        if (principal == null || (type != null && !type.equals(principal.getType()))) {
+            return null;
+        }
+        if (principal.getExpiresAt() - now < ttlSeconds() / 2 || !signer.isSignedByPrimary(token)) {
+            writeToken(response, principal.getType(), signer.issue(principal.getType(), principal.getId(), now + ttlSeconds()));
+        }
+        return principal;
+    }
+
+    private String readCookie(HttpServletRequest request, String type) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if ((TOKEN_COOKIE_PREFIX + type).equals(cookie.getName())) {
+                    return cookie.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    private void writeToken(HttpServletResponse response, String type, String token) {
+        response.addHeader(HttpHeaders.SET_COOKIE, cookie(type, token, Duration.ofSeconds(ttlSeconds())).toString());
+        response.setHeader(TOKEN_HEADER, token);
+    }
+
+    private ResponseCookie cookie(String type, String value, Duration maxAge) {
+        return ResponseCookie.from(TOKEN_COOKIE_PREFIX + type, value)
+                .httpOnly(true)
+                .secure(secureCookie)
+                .path("/")
+                .sameSite("Lax")
+                .maxAge(maxAge)
+                .build();
+    }
+
+    private long ttlSeconds() {
+        return ttlMinutes * 60;
+    }
+
+    private static long nowSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+}
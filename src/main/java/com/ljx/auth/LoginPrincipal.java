@@ -0,0 +1,40 @@
+package com.ljx.auth;
+
+/*
+* 当前登录的员工或移动端用户*/
+public final class LoginPrincipal {
+
+    public static final String EMPLOYEE = "employee";
+
+    public static final String USER = "user";
+
+    //employee 或 user，与会话中保存登录状态的属性名一致
+    private final String type;
+
+    private final Long id;
+
+    //过期时间（秒），会话方式登录时为0
+    private final long expiresAt;
+
+    public LoginPrincipal(String type, Long id, long expiresAt) {
+        this.type = type;
+        this.id = id;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public boolean isEmployee() {
+        return EMPLOYEE.equals(type);
+    }
+}
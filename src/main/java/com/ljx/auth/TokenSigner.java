@@ -0,0 +1,118 @@
+package com.ljx.auth;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.*;
+
+/*
+* HMAC-SHA256签名的无状态登录令牌
+* 令牌格式：密钥id.类型.用户id.过期时间(秒).签名，签名为前面部分的HMAC，使用base64url编码
+* 可以配置多个密钥：第一个用于签发，全部用于校验。轮换时把新密钥放到最前面，旧密钥保留到旧令牌全部过期后再删除*/
+public class TokenSigner {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private final String primaryKeyId;
+
+    //密钥id -> 每个线程一个Mac实例，Mac不是线程安全的
+    private final Map<String, ThreadLocal<Mac>> macs = new HashMap<>();
+
+    /**
+     * @param keys 密钥id -> 密钥，按顺序第一个为签发密钥
+     */
+    public TokenSigner(LinkedHashMap<String, byte[]> keys) {
+        if (keys.isEmpty()) {
+            throw new IllegalArgumentException("至少需要一个签名密钥");
+        }
+        this.primaryKeyId = keys.keySet().iterator().next();
+        keys.forEach((keyId, secret) -> {
+            if (keyId.isEmpty() || keyId.contains(".")) {
+                throw new IllegalArgumentException("密钥id不能为空或包含'.'：" + keyId);
+            }
+            SecretKeySpec key = new SecretKeySpec(secret, ALGORITHM);
+            macs.put(keyId, ThreadLocal.withInitial(() -> {
+                try {
+                    Mac mac = Mac.getInstance(ALGORITHM);
+                    mac.init(key);
+                    return mac;
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+        });
+    }
+
+    public String getPrimaryKeyId() {
+        return primaryKeyId;
+    }
+
+    /**
+     * 使用签发密钥签发令牌
+     * @param type
+     * @param id
+     * @param expiresAt 过期时间（秒）
+     * @return
+     */
+    public String issue(String type, Long id, long expiresAt) {
+        String payload = primaryKeyId + "." + type + "." + id + "." + expiresAt;
+        return payload + "." + ENCODER.encodeToString(sign(primaryKeyId, payload));
+    }
+
+    /**
+     * 校验令牌签名和有效期，不访问任何共享状态
+     * @param token
+     * @param now 当前时间（秒）
+     * @return 令牌有效时返回登录信息，否则返回null
+     */
+    public LoginPrincipal verify(String token, long now) {
+        if (token == null) {
+            return null;
+        }
+        int signatureStart = token.lastIndexOf('.');
+        if (signatureStart < 0) {
+            return null;
+        }
+        String payload = token.substring(0, signatureStart);
+        String[] parts = payload.split("\\.");
+        if (parts.length != 4 || !macs.containsKey(parts[0])) {
+            return null;
+        }
+        byte[] signature;
+        try {
+            signature = Base64.getUrlDecoder().decode(token.substring(signatureStart + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        //常量时间比较，避免通过响应时间猜测签名
+        if (!MessageDigest.isEqual(signature, sign(parts[0], payload))) {
+            return null;
+        }
+        try {
+            long expiresAt = Long.parseLong(parts[3]);
+            if (expiresAt <= now) {
+                return null;
+            }
+            return new LoginPrincipal(parts[1], Long.parseLong(parts[2]), expiresAt);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 令牌是否由签发密钥签名，密钥轮换后旧密钥签名的令牌需要重新签发
+     * @param token 已经校验通过的令牌
+     * @return
+     */
+    public boolean isSignedByPrimary(String token) {
+        return token.startsWith(primaryKeyId + ".");
+    }
+
+    private byte[] sign(String keyId, String payload) {
+        return macs.get(keyId).get().doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,57 @@
+package com.ljx.cache;
+
+import com.ljx.entity.Category;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/*
+* 分类数据的不可变快照，按id和按类型建立索引
+* 快照创建后不再修改，更新时整体替换，所以读取时不需要加锁
+* 注意：快照中的Category对象是共享的，调用方不能修改*/
+public final class CategorySnapshot {
+
+    //排序规则与CategoryController.list一致：sort升序，updateTime降序
+    private static final Comparator<Category> ORDER = Comparator
+            .comparing(Category::getSort, Comparator.nullsLast(Comparator.<Integer>naturalOrder()))
+            .thenComparing(Category::getUpdateTime, Comparator.nullsLast(Comparator.<LocalDateTime>reverseOrder()));
+
+    private final List<Category> all;
+
+    private final Map<Long, Category> byId;
+
+    private final Map<Integer, List<Category>> byType;
+
+    public CategorySnapshot(Collection<Category> categories) {
+        List<Category> sorted = new ArrayList<>(categories);
+        sorted.sort(ORDER);
+
+        Map<Long, Category> idIndex = new HashMap<>();
+        Map<Integer, List<Category>> typeIndex = new HashMap<>();
+        for (Category category : sorted) {
+            idIndex.put(category.getId(), category);
+            typeIndex.computeIfAbsent(category.getType(), (type) -> new ArrayList<>()).add(category);
+        }
+        typeIndex.replaceAll((type, list) -> Collections.unmodifiableList(list));
+
+        this.all = Collections.unmodifiableList(sorted);
+        this.byId = Collections.unmodifiableMap(idIndex);
+        this.byType = Collections.unmodifiableMap(typeIndex);
+    }
+
+    public Category getById(Long id) {
+        return id == null ? null : byId.get(id);
+    }
+
+    //type为null时返回全部分类
+    public List<Category> listByType(Integer type) {
+        if (type == null) {
+            return all;
+        }
+        return byType.getOrDefault(type, Collections.emptyList());
+    }
+
+    public int size() {
+        return all.size();
+    }
+}
@@ -0,0 +1,37 @@
+package com.ljx.cache;
+
+/*
+* 已经序列化好的JSON响应：UTF-8字节，以及可选的gzip压缩字节
+* 由JsonBytesHttpMessageConverter直接写入响应输出流，不再经过Jackson*/
+public final class JsonBytes {
+
+    private final long version;
+
+    private final byte[] json;
+
+    //响应体太小时不压缩，为null
+    private final byte[] gzip;
+
+    public JsonBytes(long version, byte[] json, byte[] gzip) {
+        this.version = version;
+        this.json = json;
+        this.gzip = gzip;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    //返回内部数组，调用方不能修改
+    public byte[] getJson() {
+        return json;
+    }
+
+    public byte[] getGzip() {
+        return gzip;
+    }
+
+    public boolean hasGzip() {
+        return gzip != null;
+    }
+}
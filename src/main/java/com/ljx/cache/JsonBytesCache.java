@@ -0,0 +1,124 @@
+package com.ljx.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.ljx.common.CustomException;
+import com.ljx.common.JacksonObjectMapper;
+import com.ljx.common.MetricsSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/*
+* 热点接口的JSON字节缓存
+* 同一个key在同一个菜单版本内只序列化（和压缩）一次，之后的请求直接写出缓存的字节*/
+@Component
+@Slf4j
+public class JsonBytesCache implements MetricsSource {
+
+    //与WebMvcConfig中消息转换器使用相同的序列化规则
+    private final JacksonObjectMapper objectMapper = new JacksonObjectMapper();
+
+    private final LinkedHashMap<String, JsonBytes> cache;
+
+    private final int gzipMinBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public JsonBytesCache(@Value("${reggie.cache.json.max-entries:512}") int maxEntries,
+                          @Value("${reggie.cache.json.gzip-min-bytes:1024}") int gzipMinBytes) {
+        this.gzipMinBytes = gzipMinBytes;
+        this.cache = new LinkedHashMap<String, JsonBytes>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, JsonBytes> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * 获取某个key在指定版本下的JSON字节，版本不一致时重新序列化
+     * 调用方必须在加载数据之前读取版本号，这样缓存的数据至少和版本号一样新
+     * @param key 缓存key，例如 dish:list:分类id
+     * @param version 数据版本号
+     * @param body 响应对象，未命中时才会调用
+     * @return
+     */
+    public JsonBytes get(String key, long version, Supplier<?> body) {
+        JsonBytes cached;
+        synchronized (cache) {
+            cached = cache.get(key);
+        }
+        if (cached != null && cached.getVersion() == version) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+
+        JsonBytes serialized = serialize(version, body.get());
+        synchronized (cache) {
+            JsonBytes current = cache.get(key);
+            //并发情况下不用旧版本覆盖新版本
+            if (current == null || current.getVersion() <= version) {
+                cache.put(key, serialized);
+            }
+        }
+        return serialized;
+    }
+
+    private JsonBytes serialize(long version, Object body) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(body);
+            byte[] gzip = json.length >= gzipMinBytes ? gzip(json) : null;
+            return new JsonBytes(version, json, gzip);
+        } catch (JsonProcessingException e) {
+            log.error("JSON序列化失败", e);
+            throw new CustomException("数据序列化失败");
+        }
+    }
+
+    private byte[] gzip(byte[] json) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(json.length / 4 + 64);
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(bytes)) {
+            gzipOutputStream.write(json);
+        } catch (IOException e) {
+            //内存流不会抛出IO异常，压缩失败时只返回未压缩的数据
+            log.warn("gzip压缩失败", e);
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "jsonBytesCache";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long total = hitCount + missCount;
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        long bytes = 0;
+        synchronized (cache) {
+            metrics.put("size", cache.size());
+            for (JsonBytes jsonBytes : cache.values()) {
+                bytes += jsonBytes.getJson().length + (jsonBytes.hasGzip() ? jsonBytes.getGzip().length : 0);
+            }
+        }
+        metrics.put("bytes", bytes);
+        metrics.put("hits", hitCount);
+        metrics.put("misses", missCount);
+        metrics.put("hitRatio", total == 0 ? 0d : (double) hitCount / total);
+        return metrics;
+    }
+}
@@ -0,0 +1,199 @@
+package com.ljx.cache;
+
+import com.ljx.common.MetricsSource;
+import com.ljx.dto.DishDto;
+import com.ljx.entity.Setmeal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/*
+* 移动端菜单缓存
+* 按分类缓存/dish/list和/setmeal/list组装好的结果，容量有上限（LRU淘汰），
+* 菜品、套餐、分类修改后由service在事务提交之后按分类精确失效*/
+@Component
+@Slf4j
+public class MenuCache implements MetricsSource {
+
+    private final LruCache dishCache;
+
+    private final LruCache setmealCache;
+
+    //菜单版本号，任何菜品、套餐、分类变化都会加一，用于判断菜单快照是否过期
+    private final AtomicLong version = new AtomicLong();
+
+    public MenuCache(@Value("${reggie.cache.menu.max-entries:256}") int maxEntries) {
+        this.dishCache = new LruCache(maxEntries);
+        this.setmealCache = new LruCache(maxEntries);
+    }
+
+    /**
+     * 查询某个分类下起售的菜品，未命中时调用loader加载并放入缓存
+     * @param categoryId 分类id，为null表示所有分类
+     * @param loader
+     * @return 不可修改的列表
+     */
+    public List<DishDto> getDishList(Long categoryId, Supplier<List<DishDto>> loader) {
+        return dishCache.get(new MenuKey(categoryId, 1), loader);
+    }
+
+    /**
+     * 查询某个分类下的套餐，未命中时调用loader加载并放入缓存
+     * @param categoryId 分类id，为null表示所有分类
+     * @param status 套餐状态，为null表示不限
+     * @param loader
+     * @return 不可修改的列表
+     */
+    public List<Setmeal> getSetmealList(Long categoryId, Integer status, Supplier<List<Setmeal>> loader) {
+        return setmealCache.get(new MenuKey(categoryId, status), loader);
+    }
+
+    //失效这些分类下的菜品缓存
+    public void evictDishCategories(Collection<Long> categoryIds) {
+        version.incrementAndGet();
+        dishCache.evictCategories(categoryIds);
+    }
+
+    //失效这些分类下的套餐缓存
+    public void evictSetmealCategories(Collection<Long> categoryIds) {
+        version.incrementAndGet();
+        setmealCache.evictCategories(categoryIds);
+    }
+
+    //分类本身修改（例如名称），两种缓存都要失效
+    public void evictCategory(Long categoryId) {
+        version.incrementAndGet();
+        List<Long> categoryIds = Collections.singletonList(categoryId);
+        dishCache.evictCategories(categoryIds);
+        setmealCache.evictCategories(categoryIds);
+    }
+
+    //当前菜单版本号
+    public long getVersion() {
+        return version.get();
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "menuCache";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("version", version.get());
+        metrics.put("dish", dishCache.stats());
+        metrics.put("setmeal", setmealCache.stats());
+        return metrics;
+    }
+
+    /*
+    * 缓存key：分类id + 状态*/
+    private static final class MenuKey {
+        private final Long categoryId;
+        private final Integer status;
+
+        private MenuKey(Long categoryId, Integer status) {
+            this.categoryId = categoryId;
+            this.status = status;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof MenuKey)) return false;
+            MenuKey other = (MenuKey) o;
+            return Objects.equals(categoryId, other.categoryId) && Objects.equals(status, other.status);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(categoryId, status);
+        }
+    }
+
+    /*
+    * 有容量上限的LRU缓存，读写都在同一把锁下，数据量很小（分类数量级）所以锁竞争可以忽略*/
+    private static final class LruCache {
+        private final LinkedHashMap<MenuKey, List<?>> map;
+        private final int maxEntries;
+
+        //每次失效加一，加载期间如果发生过失效，则加载结果不放入缓存，避免写入旧数据
+        private final AtomicLong generation = new AtomicLong();
+
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+        private final LongAdder invalidations = new LongAdder();
+
+        private LruCache(int maxEntries) {
+            this.maxEntries = maxEntries;
+            this.map = new LinkedHashMap<MenuKey, List<?>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<MenuKey, List<?>> eldest) {
+                    if (size() > LruCache.this.maxEntries) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        @SuppressWarnings("unchecked")
+        private <E> List<E> get(MenuKey key, Supplier<List<E>> loader) {
+            synchronized (map) {
+                List<?> cached = map.get(key);
+                if (cached != null) {
+                    hits.increment();
+                    return (List<E>) cached;
+                }
+            }
+            misses.increment();
+            long loadGeneration = generation.get();
+            List<E> loaded = Collections.unmodifiableList(new ArrayList<>(loader.get()));
+            synchronized (map) {
+                if (generation.get() == loadGeneration) {
+                    map.put(key, loaded);
+                }
+            }
+            return loaded;
+        }
+
+        //分类id为null的key代表"所有分类"，任何分类变化都要一起失效
+        private void evictCategories(Collection<Long> categoryIds) {
+            synchronized (map) {
+                generation.incrementAndGet();
+                Iterator<MenuKey> iterator = map.keySet().iterator();
+                while (iterator.hasNext()) {
+                    Long categoryId = iterator.next().categoryId;
+                    if (categoryId == null || categoryIds.contains(categoryId)) {
+                        iterator.remove();
+                        invalidations.increment();
+                    }
+                }
+            }
+        }
+
+        private Map<String, Object> stats() {
+            long hitCount = hits.sum();
+            long missCount = misses.sum();
+            long total = hitCount + missCount;
+            Map<String, Object> stats = new LinkedHashMap<>();
+            synchronized (map) {
+                stats.put("size", map.size());
+            }
+            stats.put("hits", hitCount);
+            stats.put("misses", missCount);
+            stats.put("hitRatio", total == 0 ? 0d : (double) hitCount / total);
+            stats.put("evictions", evictions.sum());
+            stats.put("invalidations", invalidations.sum());
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.ljx.cache;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.ljx.dto.DishDto;
+import com.ljx.dto.SetmealDto;
+import com.ljx.entity.Category;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+* 移动端完整菜单的不可变快照：分类、起售菜品（含口味）、起售套餐（含菜品）
+* 每个菜单版本只构建一次，所有请求共享，调用方不能修改其中的数据*/
+public final class MenuSnapshot {
+
+    private final long version;
+
+    private final List<Category> categories;
+
+    private final List<DishDto> dishes;
+
+    private final List<SetmealDto> setmeals;
+
+    private final Map<Long, DishDto> dishById = new HashMap<>();
+
+    private final Map<Long, SetmealDto> setmealById = new HashMap<>();
+
+    //强ETag，由快照内容计算得到，内容不变则ETag不变
+    private final String etag;
+
+    public MenuSnapshot(long version, List<Category> categories, List<DishDto> dishes,
+                        List<SetmealDto> setmeals, String etag) {
+        this.version = version;
+        this.categories = Collections.unmodifiableList(categories);
+        this.dishes = Collections.unmodifiableList(dishes);
+        this.setmeals = Collections.unmodifiableList(setmeals);
+        this.etag = etag;
+        dishes.forEach((dish) -> dishById.put(dish.getId(), dish));
+        setmeals.forEach((setmeal) -> setmealById.put(setmeal.getId(), setmeal));
+    }
+
+    /**
+     * 根据id查找起售菜品
+     * @param id
+     * @return 不存在或已停售时返回null
+     */
+    public DishDto findDish(Long id) {
+        return dishById.get(id);
+    }
+
+    /**
+     * 根据id查找起售套餐
+     * @param id
+     * @return 不存在或已停售时返回null
+     */
+    public SetmealDto findSetmeal(Long id) {
+        return setmealById.get(id);
+    }
+
+    //版本号只在本进程内有效，不写入响应，客户端以ETag作为菜单版本
+    @JsonIgnore
+    public long getVersion() {
+        return version;
+    }
+
+    public List<Category> getCategories() {
+        return categories;
+    }
+
+    public List<DishDto> getDishes() {
+        return dishes;
+    }
+
+    public List<SetmealDto> getSetmeals() {
+        return setmeals;
+    }
+
+    @JsonIgnore
+    public String getEtag() {
+        return etag;
+    }
+}
@@ -0,0 +1,20 @@
+package com.ljx.cart;
+
+import com.ljx.entity.ShoppingCart;
+import lombok.Getter;
+
+/*
+* 购物车中一条记录的数量变化*/
+@Getter
+public class CartChange {
+
+    //菜品或套餐信息，新增时使用其中的名称、图片、口味和金额
+    private final ShoppingCart item;
+
+    private final int delta;
+
+    public CartChange(ShoppingCart item, int delta) {
+        this.item = item;
+        this.delta = delta;
+    }
+}
@@ -0,0 +1,49 @@
+package com.ljx.cart;
+
+import com.ljx.entity.ShoppingCart;
+
+import java.util.Collection;
+import java.util.List;
+
+/*
+* 购物车存储
+* 同一用户购物车中同一个菜品或套餐只有一条记录，按菜品id或套餐id区分*/
+public interface CartStore {
+
+    /**
+     * 查询用户购物车，按加入时间排序
+     * @param userId
+     * @return
+     */
+    List<ShoppingCart> list(Long userId);
+
+    /**
+     * 修改购物车中菜品或套餐的数量，没有时新增，数量减到0时删除
+     * @param userId
+     * @param item 菜品或套餐信息，新增时使用其中的名称、图片、口味和金额
+     * @param delta 数量变化
+     * @return 修改后的记录，被删除时number为0
+     */
+    ShoppingCart change(Long userId, ShoppingCart item, int delta);
+
+    /**
+     * 一次修改购物车中多条记录
+     * @param userId
+     * @param changes
+     * @return 修改后的整个购物车
+     */
+    List<ShoppingCart> changeAll(Long userId, List<CartChange> changes);
+
+    /**
+     * 清空用户购物车
+     * @param userId
+     */
+    void clean(Long userId);
+
+    /**
+     * 删除用户购物车中的指定记录，下单后使用
+     * @param userId
+     * @param ids
+     */
+    void remove(Long userId, Collection<Long> ids);
+}
@@ -0,0 +1,107 @@
+package com.ljx.cart;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.ljx.entity.ShoppingCart;
+import com.ljx.mapper.ShoppingCartMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/*
+* 直接读写shopping_cart表的购物车存储，多实例部署且不能按用户路由时使用*/
+@Component
+@ConditionalOnProperty(name = "reggie.cart.store", havingValue = "database")
+public class DatabaseCartStore implements CartStore {
+
+    @Autowired
+    private ShoppingCartMapper shoppingCartMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Override
+    public List<ShoppingCart> list(Long userId) {
+        LambdaQueryWrapper<ShoppingCart> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(ShoppingCart::getUserId, userId);
+        queryWrapper.orderByAsc(ShoppingCart::getCreateTime);
+        return shoppingCartMapper.selectList(queryWrapper);
+    }
+
+    @Override
+    public ShoppingCart change(Long userId, ShoppingCart item, int delta) {
+        return transactionTemplate.execute((status) -> {
+            apply(userId, item, delta);
+            ShoppingCart line = shoppingCartMapper.selectOne(lineQuery(userId, item));
+            if (line == null) {
+                line = item;
+                line.setUserId(userId);
+                line.setNumber(0);
+            } else if (line.getNumber() < 0) {
+                line.setNumber(0);
+            }
+            deleteEmpty(userId);
+            return line;
+        });
+    }
+
+    @Override
+    public List<ShoppingCart> changeAll(Long userId, List<CartChange> changes) {
+        return transactionTemplate.execute((status) -> {
+            changes.forEach((change) -> apply(userId, change.getItem(), change.getDelta()));
+            deleteEmpty(userId);
+            return list(userId);
+        });
+    }
+
+    //每条记录一条update语句原子修改数量，没有记录且是增加时再插入
+    //shopping_cart没有(user_id, dish_id, setmeal_id)唯一索引，不能使用insert ... on duplicate key update
+    private void apply(Long userId, ShoppingCart item, int delta) {
+        int updated = shoppingCartMapper.incrementNumber(userId, item.getDishId(), item.getSetmealId(), delta);
+        if (updated == 0 && delta > 0) {
+            item.setUserId(userId);
+            item.setNumber(delta);
+            item.setCreateTime(LocalDateTime.now());
+            shoppingCartMapper.insert(item);
+        }
+    }
+
+    //数量减到0或以下的记录从购物车删除
+    private void deleteEmpty(Long userId) {
+        LambdaQueryWrapper<ShoppingCart> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(ShoppingCart::getUserId, userId).le(ShoppingCart::getNumber, 0);
+        shoppingCartMapper.delete(queryWrapper);
+    }
+
+    private static LambdaQueryWrapper<ShoppingCart> lineQuery(Long userId, ShoppingCart item) {
+        LambdaQueryWrapper<ShoppingCart> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(ShoppingCart::getUserId, userId);
+        if (item.getDishId() != null) {
+            queryWrapper.eq(ShoppingCart::getDishId, item.getDishId());
+        } else {
+            queryWrapper.eq(ShoppingCart::getSetmealId, item.getSetmealId()).isNull(ShoppingCart::getDishId);
+        }
+        return queryWrapper;
+    }
+
+    @Override
+    public void clean(Long userId) {
+        LambdaQueryWrapper<ShoppingCart> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(ShoppingCart::getUserId, userId);
+        shoppingCartMapper.delete(queryWrapper);
+    }
+
+    @Override
+    public void remove(Long userId, Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        LambdaQueryWrapper<ShoppingCart> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(ShoppingCart::getUserId, userId).in(ShoppingCart::getId, ids);
+        shoppingCartMapper.delete(queryWrapper);
+    }
+}
@@ -0,0 +1,287 @@
+package com.ljx.cart;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.ljx.common.MetricsSource;
+import com.ljx.entity.ShoppingCart;
+import com.ljx.mapper.ShoppingCartMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/*
+* 内存购物车存储，默认使用
+* 每个用户的购物车第一次访问时从shopping_cart表加载，之后的修改只在内存中进行，同一用户的修改加锁保证原子性
+* 后台线程定时把有修改的购物车整体回写到数据库，空闲超过ttl的购物车回写后从内存移除
+* 购物车只在本实例内存中修改，多实例部署时需要按用户路由到同一实例，否则使用database存储*/
+@Component
+@ConditionalOnProperty(name = "reggie.cart.store", havingValue = "memory", matchIfMissing = true)
+@Slf4j
+public class MemoryCartStore implements CartStore, MetricsSource {
+
+    @Autowired
+    private ShoppingCartMapper shoppingCartMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${reggie.cart.flush-interval-seconds:5}")
+    private long flushIntervalSeconds;
+
+    @Value("${reggie.cart.ttl-minutes:30}")
+    private long ttlMinutes;
+
+    private final Map<Long, UserCart> carts = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService flusher;
+
+    private final AtomicLong loads = new AtomicLong();
+
+    private final AtomicLong flushes = new AtomicLong();
+
+    private final AtomicLong flushErrors = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        flusher = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "cart-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushAndEvict, flushIntervalSeconds, flushIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+        //停止前把所有修改写回数据库
+        for (UserCart cart : carts.values()) {
+            flush(cart);
+        }
+    }
+
+    @Override
+    public List<ShoppingCart> list(Long userId) {
+        return withCart(userId, MemoryCartStore::copyLines);
+    }
+
+    @Override
+    public ShoppingCart change(Long userId, ShoppingCart item, int delta) {
+        return withCart(userId, (cart) -> apply(cart, item, delta));
+    }
+
+    @Override
+    public List<ShoppingCart> changeAll(Long userId, List<CartChange> changes) {
+        //整批在同一把锁内完成，其他请求看不到只改了一部分的购物车
+        return withCart(userId, (cart) -> {
+            changes.forEach((change) -> apply(cart, change.getItem(), change.getDelta()));
+            return copyLines(cart);
+        });
+    }
+
+    private ShoppingCart apply(UserCart cart, ShoppingCart item, int delta) {
+        ShoppingCart line = cart.find(item.getDishId(), item.getSetmealId());
+        if (line == null) {
+            if (delta <= 0) {
+                ShoppingCart empty = copy(item);
+                empty.setUserId(cart.userId);
+                empty.setNumber(0);
+                return empty;
+            }
+            line = copy(item);
+            line.setId(IdWorker.getId());
+            line.setUserId(cart.userId);
+            line.setNumber(0);
+            line.setCreateTime(LocalDateTime.now());
+            cart.lines.add(line);
+        }
+        line.setNumber(line.getNumber() + delta);
+        ShoppingCart result = copy(line);
+        if (line.getNumber() <= 0) {
+            cart.lines.remove(line);
+            result.setNumber(0);
+        }
+        cart.dirty = true;
+        return result;
+    }
+
+    @Override
+    public void clean(Long userId) {
+        withCart(userId, (cart) -> {
+            if (!cart.lines.isEmpty()) {
+                cart.lines.clear();
+                cart.dirty = true;
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void remove(Long userId, Collection<Long> ids) {
+        withCart(userId, (cart) -> {
+            if (cart.lines.removeIf((line) -> ids.contains(line.getId()))) {
+                cart.dirty = true;
+            }
+            return null;
+        });
+    }
+
+    /*
+    * 加锁操作用户购物车，购物车不在内存中时先从数据库加载
+    * 拿到锁时购物车可能刚好被淘汰，这时重新获取*/
+    private <T> T withCart(Long userId, Function<UserCart, T> action) {
+        while (true) {
+            UserCart cart = carts.get(userId);
+            if (cart == null) {
+                UserCart loaded = load(userId);
+                cart = carts.putIfAbsent(userId, loaded);
+                if (cart == null) {
+                    cart = loaded;
+                }
+            }
+            synchronized (cart) {
+                if (cart.evicted) {
+                    continue;
+                }
+                cart.lastAccess = System.currentTimeMillis();
+                return action.apply(cart);
+            }
+        }
+    }
+
+    private UserCart load(Long userId) {
+        LambdaQueryWrapper<ShoppingCart> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(ShoppingCart::getUserId, userId);
+        queryWrapper.orderByAsc(ShoppingCart::getCreateTime);
+        UserCart cart = new UserCart(userId);
+        cart.lines.addAll(shoppingCartMapper.selectList(queryWrapper));
+        loads.incrementAndGet();
+        return cart;
+    }
+
+    void flushAndEvict() {
+        long expireBefore = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(ttlMinutes);
+        for (UserCart cart : carts.values()) {
+            try {
+                flush(cart);
+                synchronized (cart) {
+                    //回写期间又有修改的不淘汰，等下一轮
+                    if (!cart.dirty && cart.lastAccess < expireBefore) {
+                        cart.evicted = true;
+                        carts.remove(cart.userId, cart);
+                        evictions.incrementAndGet();
+                    }
+                }
+            } catch (RuntimeException e) {
+                log.error("购物车回写失败，用户{}", cart.userId, e);
+            }
+        }
+    }
+
+    //把购物车当前内容整体写回数据库：先删除该用户全部记录再插入
+    private void flush(UserCart cart) {
+        List<ShoppingCart> lines;
+        synchronized (cart) {
+            if (!cart.dirty) {
+                return;
+            }
+            lines = copyLines(cart);
+            cart.dirty = false;
+        }
+        try {
+            transactionTemplate.executeWithoutResult((status) -> {
+                LambdaQueryWrapper<ShoppingCart> queryWrapper = new LambdaQueryWrapper<>();
+                queryWrapper.eq(ShoppingCart::getUserId, cart.userId);
+                shoppingCartMapper.delete(queryWrapper);
+                if (!lines.isEmpty()) {
+                    shoppingCartMapper.insertBatch(lines);
+                }
+            });
+            flushes.incrementAndGet();
+        } catch (RuntimeException e) {
+            flushErrors.incrementAndGet();
+            synchronized (cart) {
+                cart.dirty = true;
+            }
+            throw e;
+        }
+    }
+
+    //返回购物车内容的副本，调用方修改不会影响内存中的数据
+    private static List<ShoppingCart> copyLines(UserCart cart) {
+        List<ShoppingCart> list = new ArrayList<>(cart.lines.size());
+        cart.lines.forEach((line) -> list.add(copy(line)));
+        return list;
+    }
+
+    private static ShoppingCart copy(ShoppingCart source) {
+        ShoppingCart target = new ShoppingCart();
+        BeanUtils.copyProperties(source, target);
+        return target;
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "cartStore";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        int dirty = 0;
+        for (UserCart cart : carts.values()) {
+            synchronized (cart) {
+                if (cart.dirty) {
+                    dirty++;
+                }
+            }
+        }
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("carts", carts.size());
+        metrics.put("dirtyCarts", dirty);
+        metrics.put("loads", loads.get());
+        metrics.put("flushes", flushes.get());
+        metrics.put("flushErrors", flushErrors.get());
+        metrics.put("evictions", evictions.get());
+        return metrics;
+    }
+
+    private static final class UserCart {
+        private final Long userId;
+        private final List<ShoppingCart> lines = new ArrayList<>();
+        private long lastAccess = System.currentTimeMillis();
+        private boolean dirty;
+        private boolean evicted;
+
+        private UserCart(Long userId) {
+            this.userId = userId;
+        }
+
+        //同一个菜品或套餐只有一条记录
+        private ShoppingCart find(Long dishId, Long setmealId) {
+            for (ShoppingCart line : lines) {
+                if (dishId != null ? dishId.equals(line.getDishId()) : Objects.equals(setmealId, line.getSetmealId()) && line.getDishId() == null) {
+                    return line;
+                }
+            }
+            return null;
+        }
+    }
+}
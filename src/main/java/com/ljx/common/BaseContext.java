@@ -1,7 +1,14 @@
 package com.ljx.common;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
 /*
-* 基于ThreadLocal封装工具类，用户保存和获取当前登录用户id*/
+* 基于ThreadLocal封装工具类，用户保存和获取当前登录用户id
+* 由登录检查过滤器设置，请求结束时清除
+* 交给其他线程执行的任务需要用wrap包装：提交时记录当前用户id，执行时设置，执行完恢复执行线程原来的值，
+* 线程池线程、每个任务一个的虚拟线程都不会残留上一个任务的用户id*/
 public class BaseContext {
     private static ThreadLocal<Long> threadLocal = new ThreadLocal<>();
 
@@ -12,4 +19,74 @@ public class BaseContext {
     public static Long getCurrentId(){
         return threadLocal.get();
     }
+
+    public static void clear(){
+        threadLocal.remove();
+    }
+
+    /**
+     * 包装任务，在执行线程中使用提交时的用户id
+     * @param task
+     * @return
+     */
+    public static Runnable wrap(Runnable task){
+        Long captured = threadLocal.get();
+        return ()->{
+            Long previous = swap(captured);
+            try {
+                task.run();
+            } finally {
+                swap(previous);
+            }
+        };
+    }
+
+    public static <T> Callable<T> wrap(Callable<T> task){
+        Long captured = threadLocal.get();
+        return ()->{
+            Long previous = swap(captured);
+            try {
+                return task.call();
+            } finally {
+                swap(previous);
+            }
+        };
+    }
+
+    /**
+     * 包装CompletableFuture.supplyAsync等使用的Supplier，与Callable分开命名避免lambda重载歧义
+     * @param task
+     * @return
+     */
+    public static <T> Supplier<T> wrapSupplier(Supplier<T> task){
+        Long captured = threadLocal.get();
+        return ()->{
+            Long previous = swap(captured);
+            try {
+                return task.get();
+            } finally {
+                swap(previous);
+            }
+        };
+    }
+
+    /**
+     * 包装线程池，提交的每个任务都使用提交时的用户id
+     * CompletableFuture的xxxAsync方法传入包装后的线程池即可，后续阶段也会带上用户id
+     * @param executor
+     * @return
+     */
+    public static Executor wrap(Executor executor){
+        return (task)->executor.execute(wrap(task));
+    }
+
+    private static Long swap(Long id){
+        Long previous = threadLocal.get();
+        if(id == null){
+            threadLocal.remove();
+        }else {
+            threadLocal.set(id);
+        }
+        return previous;
+    }
 }
@@ -0,0 +1,14 @@
+package com.ljx.common;
+
+/*
+* 分页查询总条数的统计方式*/
+public enum CountMode {
+    //每次都执行count(*)
+    EXACT,
+    //相同条件的count结果缓存一小段时间，表有写操作时失效
+    CACHED,
+    //没有过滤条件时使用表统计信息中的估算行数，有过滤条件时按CACHED处理
+    APPROXIMATE,
+    //不统计总数，只返回是否还有下一页
+    NONE
+}
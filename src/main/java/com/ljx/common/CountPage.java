@@ -0,0 +1,100 @@
+package com.ljx.common;
+
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+* 可以指定总条数统计方式的分页对象，统计由CountCachePaginationInnerInterceptor完成
+* countMode为NONE时不执行count，分页查询多取一条用来判断hasNext*/
+public class CountPage<T> extends Page<T> {
+
+    //为null时使用配置的默认方式
+    private CountMode countMode;
+
+    private boolean hasNext;
+
+    //拼接分页SQL期间为true，此时getSize()多返回一条
+    private transient boolean probing;
+
+    public CountPage() {
+        super();
+    }
+
+    public CountPage(long current, long size, CountMode countMode) {
+        super(current, size);
+        this.countMode = countMode;
+    }
+
+    /**
+     * 根据请求参数创建分页对象
+     * @param current 页码
+     * @param size 每页条数
+     * @param countMode 统计方式，不区分大小写，为空时使用默认方式
+     * @return
+     */
+    public static <T> CountPage<T> of(long current, long size, String countMode) {
+        if (countMode == null || countMode.isEmpty()) {
+            return new CountPage<>(current, size, null);
+        }
+        try {
+            return new CountPage<>(current, size, CountMode.valueOf(countMode.toUpperCase()));
+        } catch (IllegalArgumentException e) {
+            throw new CustomException("不支持的统计方式：" + countMode);
+        }
+    }
+
+    public CountMode getCountMode() {
+        return countMode;
+    }
+
+    public void setCountMode(CountMode countMode) {
+        this.countMode = countMode;
+    }
+
+    public boolean isHasNext() {
+        return hasNext;
+    }
+
+    public void setHasNext(boolean hasNext) {
+        this.hasNext = hasNext;
+    }
+
+    @JsonIgnore
+    public boolean isProbing() {
+        return probing;
+    }
+
+    public void setProbing(boolean probing) {
+        this.probing = probing;
+    }
+
+    @Override
+    public boolean searchCount() {
+        return countMode != CountMode.NONE && super.searchCount();
+    }
+
+    @Override
+    public long getSize() {
+        return probing ? super.getSize() + 1 : super.getSize();
+    }
+
+    //偏移量始终按真实的每页条数计算
+    @Override
+    public long offset() {
+        long current = getCurrent();
+        return current > 0 ? (current - 1) * super.getSize() : 0;
+    }
+
+    //NONE模式下多取的那一条只用来判断是否有下一页，不返回给调用方
+    @Override
+    public Page<T> setRecords(List<T> records) {
+        if (countMode == CountMode.NONE && records != null && records.size() > super.getSize()) {
+            hasNext = true;
+            records = new ArrayList<>(records.subList(0, (int) super.getSize()));
+        }
+        return super.setRecords(records);
+    }
+}
@@ -0,0 +1,69 @@
+package com.ljx.common;
+
+import com.ljx.cache.JsonBytes;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/*
+* 将预先序列化好的JsonBytes直接写入响应输出流
+* 客户端支持gzip且存在压缩数据时，直接写出压缩后的字节*/
+public class JsonBytesHttpMessageConverter extends AbstractHttpMessageConverter<JsonBytes> {
+
+    public JsonBytesHttpMessageConverter() {
+        super(MediaType.APPLICATION_JSON);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return JsonBytes.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected JsonBytes readInternal(Class<? extends JsonBytes> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("JsonBytes只用于响应", inputMessage);
+    }
+
+    @Override
+    protected void addDefaultHeaders(HttpHeaders headers, JsonBytes jsonBytes, MediaType contentType) throws IOException {
+        headers.setContentType(new MediaType(MediaType.APPLICATION_JSON, StandardCharsets.UTF_8));
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        boolean gzip = jsonBytes.hasGzip() && acceptsGzip();
+        if (gzip) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        headers.setContentLength(gzip ? jsonBytes.getGzip().length : jsonBytes.getJson().length);
+    }
+
+    @Override
+    protected void writeInternal(JsonBytes jsonBytes, HttpOutputMessage outputMessage) throws IOException {
+        boolean gzip = "gzip".equals(outputMessage.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        outputMessage.getBody().write(gzip ? jsonBytes.getGzip() : jsonBytes.getJson());
+    }
+
+    //从当前请求中判断客户端是否接受gzip
+    private boolean acceptsGzip() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return false;
+        }
+        HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+    }
+}
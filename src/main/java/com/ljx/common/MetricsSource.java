@@ -0,0 +1,14 @@
+package com.ljx.common;
+
+import java.util.Map;
+
+/*
+* 运行指标来源，实现此接口的bean会由MetricsController统一输出*/
+public interface MetricsSource {
+
+    //指标分组名称
+    String getMetricsName();
+
+    //当前指标快照
+    Map<String, Object> getMetrics();
+}
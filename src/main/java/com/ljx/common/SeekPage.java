@@ -0,0 +1,156 @@
+package com.ljx.common;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.support.SFunction;
+import com.baomidou.mybatisplus.extension.service.IService;
+import lombok.Data;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/*
+* 游标分页（keyset/seek）结果
+* 不使用 LIMIT offset,size，而是记住上一页最后一条记录的(排序字段, id)，下一页用 where 条件直接定位，
+* 也不执行 COUNT(*)，越往后翻页查询速度不变，索引见db/seek_index.sql
+* 排序字段可以为null，与MySQL的排序规则一致，null在升序时排在最前，降序时排在最后
+* 游标对客户端是不透明的字符串，第一页传空字符串*/
+@Data
+public class SeekPage<T> {
+
+    //单页最多条数
+    public static final int MAX_PAGE_SIZE = 200;
+
+    private List<T> records = new ArrayList<>();
+
+    //下一页游标，没有下一页时为null
+    private String nextCursor;
+
+    private boolean hasNext;
+
+    private long size;
+
+    /**
+     * 执行游标分页查询
+     * @param service 对应表的service
+     * @param queryWrapper 过滤条件，不要添加排序条件
+     * @param keyColumn 排序字段，支持LocalDateTime和Integer
+     * @param idColumn 主键字段，排序字段相同时用id保证顺序稳定
+     * @param desc 是否倒序
+     * @param cursor 上一页返回的游标，第一页为空
+     * @param pageSize 每页条数
+     * @return
+     */
+    public static <T, K extends Comparable<? super K>> SeekPage<T> query(IService<T> service,
+                                                                        LambdaQueryWrapper<T> queryWrapper,
+                                                                        SFunction<T, K> keyColumn,
+                                                                        SFunction<T, Long> idColumn,
+                                                                        boolean desc,
+                                                                        String cursor,
+                                                                        int pageSize) {
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            throw new CustomException("每页条数必须在1到" + MAX_PAGE_SIZE + "之间");
+        }
+
+        if (cursor != null && !cursor.isEmpty()) {
+            Object[] decoded = decode(cursor);
+            @SuppressWarnings("unchecked")
+            K key = (K) decoded[0];
+            Long id = (Long) decoded[1];
+            if (key == null) {
+                //desc: key is null and id < ?，null排在最后，后面只有null
+                //asc : (key is null and id > ?) or key is not null，null排在最前，后面还有全部非null记录
+                if (desc) {
+                    queryWrapper.and((w) -> w.isNull(keyColumn).lt(idColumn, id));
+                } else {
+                    queryWrapper.and((w) -> w.and((o) -> o.isNull(keyColumn).gt(idColumn, id)).or().isNotNull(keyColumn));
+                }
+            } else if (desc) {
+                //desc: key < ? or (key = ? and id < ?) or key is null
+                queryWrapper.and((w) -> w.lt(keyColumn, key).or((o) -> o.eq(keyColumn, key).lt(idColumn, id)).or().isNull(keyColumn));
+            } else {
+                //asc : key > ? or (key = ? and id > ?)
+                queryWrapper.and((w) -> w.gt(keyColumn, key).or((o) -> o.eq(keyColumn, key).gt(idColumn, id)));
+            }
+        }
+
+        if (desc) {
+            queryWrapper.orderByDesc(keyColumn).orderByDesc(idColumn);
+        } else {
+            queryWrapper.orderByAsc(keyColumn).orderByAsc(idColumn);
+        }
+        //多查一条用来判断是否还有下一页，pageSize已校验过，是安全的整数
+        queryWrapper.last("limit " + (pageSize + 1));
+
+        List<T> list = service.list(queryWrapper);
+
+        SeekPage<T> seekPage = new SeekPage<>();
+        seekPage.hasNext = list.size() > pageSize;
+        if (seekPage.hasNext) {
+            list = new ArrayList<>(list.subList(0, pageSize));
+        }
+        seekPage.records = list;
+        seekPage.size = list.size();
+        if (seekPage.hasNext) {
+            T last = list.get(list.size() - 1);
+            seekPage.nextCursor = encode(keyColumn.apply(last), idColumn.apply(last));
+        }
+        return seekPage;
+    }
+
+    //转换记录类型，例如实体转为dto，游标信息保持不变
+    public <R> SeekPage<R> convert(Function<List<T>, List<R>> converter) {
+        SeekPage<R> converted = new SeekPage<>();
+        converted.records = converter.apply(records);
+        converted.nextCursor = nextCursor;
+        converted.hasNext = hasNext;
+        converted.size = size;
+        return converted;
+    }
+
+    public <R> SeekPage<R> map(Function<T, R> mapper) {
+        return convert((list) -> list.stream().map(mapper).collect(Collectors.toList()));
+    }
+
+    //游标格式：类型标记:排序字段值:id，再做base64url编码，排序字段为null时类型标记为n
+    static String encode(Object key, Long id) {
+        String raw;
+        if (key == null) {
+            raw = "n::" + id;
+        } else if (key instanceof LocalDateTime) {
+            raw = "t:" + key + ":" + id;
+        } else if (key instanceof Integer) {
+            raw = "i:" + key + ":" + id;
+        } else {
+            throw new CustomException("不支持的游标字段类型");
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Object[] decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int first = raw.indexOf(':');
+            int last = raw.lastIndexOf(':');
+            String type = raw.substring(0, first);
+            String key = raw.substring(first + 1, last);
+            Long id = Long.valueOf(raw.substring(last + 1));
+            if ("t".equals(type)) {
+                return new Object[]{LocalDateTime.parse(key), id};
+            }
+            if ("i".equals(type)) {
+                return new Object[]{Integer.valueOf(key), id};
+            }
+            if ("n".equals(type) && key.isEmpty()) {
+                return new Object[]{null, id};
+            }
+        } catch (RuntimeException e) {
+            //格式错误统一按无效游标处理
+        }
+        throw new CustomException("分页游标无效");
+    }
+}
@@ -0,0 +1,78 @@
+package com.ljx.common;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+* 虚拟线程工具类
+* 项目按Java 17编译，虚拟线程的API通过反射调用，运行在JDK 21及以上时使用虚拟线程，
+* 否则退回为每个任务一个平台线程，行为相同，只是线程开销更大*/
+@Slf4j
+public final class VirtualThreads {
+
+    //Thread.ofVirtual()，不支持时为null
+    private static final Method OF_VIRTUAL = lookup(Thread.class, "ofVirtual");
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * 创建线程工厂，线程名为 前缀+序号
+     * @param prefix
+     * @return
+     */
+    public static ThreadFactory factory(String prefix) {
+        if (isSupported()) {
+            try {
+                Object builder = OF_VIRTUAL.invoke(null);
+                Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+                builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+                return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            } catch (ReflectiveOperationException e) {
+                log.warn("创建虚拟线程工厂失败，使用平台线程", e);
+            }
+        }
+        AtomicLong sequence = new AtomicLong();
+        return (runnable) -> {
+            Thread thread = new Thread(runnable, prefix + sequence.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 每个任务一个新线程的线程池，支持时使用虚拟线程
+     * @param prefix
+     * @return
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String prefix) {
+        ThreadFactory factory = factory(prefix);
+        if (isSupported()) {
+            try {
+                Method method = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+                return (ExecutorService) method.invoke(null, factory);
+            } catch (ReflectiveOperationException e) {
+                log.warn("创建虚拟线程池失败，使用平台线程", e);
+            }
+        }
+        //空闲线程很快回收，效果接近每个任务一个线程
+        return Executors.newCachedThreadPool(factory);
+    }
+
+    private static Method lookup(Class<?> type, String name) {
+        try {
+            return type.getMethod(name);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
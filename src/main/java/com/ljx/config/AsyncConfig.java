@@ -0,0 +1,20 @@
+package com.ljx.config;
+
+import com.ljx.common.BaseContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.scheduling.annotation.EnableAsync;
+
+/*
+* 开启@Async，异步方法使用调用方的当前用户id
+* Spring Boot自动配置的任务线程池会使用容器中的TaskDecorator*/
+@Configuration
+@EnableAsync
+public class AsyncConfig {
+
+    @Bean
+    public TaskDecorator baseContextTaskDecorator(){
+        return BaseContext::wrap;
+    }
+}
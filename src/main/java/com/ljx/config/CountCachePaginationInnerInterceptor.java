@@ -0,0 +1,240 @@
+package com.ljx.config;
+
+import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.baomidou.mybatisplus.core.metadata.TableInfo;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.baomidou.mybatisplus.core.toolkit.ParameterUtils;
+import com.baomidou.mybatisplus.extension.plugins.inner.PaginationInnerInterceptor;
+import com.ljx.common.CountMode;
+import com.ljx.common.CountPage;
+import com.ljx.common.MetricsSource;
+import com.ljx.utils.TransactionUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+* 带总条数缓存的分页插件
+* 在MP分页插件的基础上，按 (mapper, 查询条件) 缓存count结果，同一个mapper有insert/update/delete时失效，
+* 也可以使用表统计信息估算总数，或者完全不执行count
+* 每次失效递增该mapper的版本号，count前读取版本号并与结果一起缓存，
+* 统计期间发生过失效的结果不会写入，写入后才发生失效的结果在读取时因版本号不一致被丢弃*/
+@Slf4j
+public class CountCachePaginationInnerInterceptor extends PaginationInnerInterceptor implements MetricsSource {
+
+    private static final String APPROXIMATE_SQL =
+            "select TABLE_ROWS from information_schema.TABLES where TABLE_SCHEMA = database() and TABLE_NAME = ?";
+
+    //每个mapper最多缓存的条件数，超过后整体清空
+    private static final int MAX_ENTRIES_PER_MAPPER = 1024;
+
+    private final CountMode defaultMode;
+
+    private final long ttlMillis;
+
+    //mapper命名空间 -> (查询条件 -> 总条数)
+    private final Map<String, Map<CacheKey, CachedCount>> cache = new ConcurrentHashMap<>();
+
+    //mapper命名空间 -> 失效版本号
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    private final LongAdder exactCounts = new LongAdder();
+    private final LongAdder cachedHits = new LongAdder();
+    private final LongAdder approximateCounts = new LongAdder();
+    private final LongAdder skippedCounts = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public CountCachePaginationInnerInterceptor(CountMode defaultMode, long ttlMillis) {
+        this.defaultMode = defaultMode;
+        this.ttlMillis = ttlMillis;
+    }
+
+    @Override
+    public boolean willDoQuery(Executor executor, MappedStatement ms, Object parameter, RowBounds rowBounds,
+                               ResultHandler resultHandler, BoundSql boundSql) throws SQLException {
+        IPage<?> page = ParameterUtils.findPage(parameter).orElse(null);
+        if (page == null || page.getSize() < 0 || resultHandler != Executor.NO_RESULT_HANDLER) {
+            return super.willDoQuery(executor, ms, parameter, rowBounds, resultHandler, boundSql);
+        }
+        if (!page.searchCount()) {
+            skippedCounts.increment();
+            return true;
+        }
+
+        CountMode mode = modeOf(page);
+        if (mode == CountMode.EXACT) {
+            exactCounts.increment();
+            return super.willDoQuery(executor, ms, parameter, rowBounds, resultHandler, boundSql);
+        }
+
+        //此时boundSql还是原始SQL，还没有拼接limit，key中包含SQL和所有参数值
+        String namespace = namespace(ms);
+        Map<CacheKey, CachedCount> counts = cache.computeIfAbsent(namespace, (k) -> new ConcurrentHashMap<>());
+        AtomicLong generation = generations.computeIfAbsent(namespace, (k) -> new AtomicLong());
+        //必须在count之前读取，count期间提交的写操作会改变版本号
+        long countGeneration = generation.get();
+        CacheKey key = executor.createCacheKey(ms, parameter, RowBounds.DEFAULT, boundSql);
+        CachedCount cached = counts.get(key);
+        long now = System.currentTimeMillis();
+        if (cached != null && cached.generation != countGeneration) {
+            counts.remove(key, cached);
+            cached = null;
+        }
+        if (cached != null && cached.expireAt > now) {
+            cachedHits.increment();
+            page.setTotal(cached.total);
+            return continuePage(page);
+        }
+
+        if (mode == CountMode.APPROXIMATE) {
+            Long approximate = approximateCount(executor, ms, boundSql);
+            if (approximate != null) {
+                approximateCounts.increment();
+                page.setTotal(approximate);
+                put(counts, generation, countGeneration, key, approximate, now);
+                return continuePage(page);
+            }
+        }
+
+        exactCounts.increment();
+        boolean result = super.willDoQuery(executor, ms, parameter, rowBounds, resultHandler, boundSql);
+        put(counts, generation, countGeneration, key, page.getTotal(), now);
+        return result;
+    }
+
+    @Override
+    public void beforeQuery(Executor executor, MappedStatement ms, Object parameter, RowBounds rowBounds,
+                            ResultHandler resultHandler, BoundSql boundSql) throws SQLException {
+        IPage<?> page = ParameterUtils.findPage(parameter).orElse(null);
+        //不统计总数时多查一条，用来判断是否还有下一页
+        if (page instanceof CountPage && ((CountPage<?>) page).getCountMode() == CountMode.NONE) {
+            CountPage<?> countPage = (CountPage<?>) page;
+            countPage.setProbing(true);
+            try {
+                super.beforeQuery(executor, ms, parameter, rowBounds, resultHandler, boundSql);
+            } finally {
+                countPage.setProbing(false);
+            }
+            return;
+        }
+        super.beforeQuery(executor, ms, parameter, rowBounds, resultHandler, boundSql);
+    }
+
+    //同一个mapper的写操作使缓存的总数失效，事务提交后再失效一次，防止提交前被重新缓存旧值
+    @Override
+    public void beforeUpdate(Executor executor, MappedStatement ms, Object parameter) throws SQLException {
+        String namespace = namespace(ms);
+        invalidate(namespace);
+        TransactionUtils.afterCommit(() -> invalidate(namespace));
+    }
+
+    private void invalidate(String namespace) {
+        generations.computeIfAbsent(namespace, (k) -> new AtomicLong()).incrementAndGet();
+        Map<CacheKey, CachedCount> counts = cache.get(namespace);
+        if (counts != null && !counts.isEmpty()) {
+            counts.clear();
+            invalidations.increment();
+        }
+    }
+
+    private void put(Map<CacheKey, CachedCount> counts, AtomicLong generation, long countGeneration,
+                     CacheKey key, long total, long now) {
+        //统计期间已经失效过，结果可能是写操作提交前的旧值
+        if (generation.get() != countGeneration) {
+            return;
+        }
+        if (counts.size() >= MAX_ENTRIES_PER_MAPPER) {
+            counts.clear();
+        }
+        counts.put(key, new CachedCount(total, now + ttlMillis, countGeneration));
+    }
+
+    private CountMode modeOf(IPage<?> page) {
+        if (page instanceof CountPage && ((CountPage<?>) page).getCountMode() != null) {
+            return ((CountPage<?>) page).getCountMode();
+        }
+        return defaultMode;
+    }
+
+    //com.ljx.mapper.DishMapper.selectPage -> com.ljx.mapper.DishMapper
+    private String namespace(MappedStatement ms) {
+        String id = ms.getId();
+        return id.substring(0, id.lastIndexOf('.'));
+    }
+
+    /*
+    * 查询没有任何过滤条件时，从information_schema中读取InnoDB估算的行数
+    * 有过滤条件或无法确定表名时返回null，由调用方执行精确count*/
+    private Long approximateCount(Executor executor, MappedStatement ms, BoundSql boundSql) {
+        if (!boundSql.getParameterMappings().isEmpty() || boundSql.getSql().toLowerCase().contains("where")) {
+            return null;
+        }
+        if (ms.getResultMaps().isEmpty()) {
+            return null;
+        }
+        TableInfo tableInfo = TableInfoHelper.getTableInfo(ms.getResultMaps().get(0).getType());
+        if (tableInfo == null) {
+            return null;
+        }
+        try {
+            //连接由当前事务管理，这里不能关闭
+            Connection connection = executor.getTransaction().getConnection();
+            try (PreparedStatement statement = connection.prepareStatement(APPROXIMATE_SQL)) {
+                statement.setString(1, tableInfo.getTableName());
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    if (resultSet.next()) {
+                        return resultSet.getLong(1);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            log.warn("读取表{}的估算行数失败，改为精确统计：{}", tableInfo.getTableName(), e.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "pageCount";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("defaultMode", defaultMode);
+        metrics.put("exactCounts", exactCounts.sum());
+        metrics.put("cachedHits", cachedHits.sum());
+        metrics.put("approximateCounts", approximateCounts.sum());
+        metrics.put("skippedCounts", skippedCounts.sum());
+        metrics.put("invalidations", invalidations.sum());
+        return metrics;
+    }
+
+    private static final class CachedCount {
+        private final long total;
+        private final long expireAt;
+
+        //统计前读取的失效版本号
+        private final long generation;
+
+        private CachedCount(long total, long expireAt, long generation) {
+            this.total = total;
+            this.expireAt = expireAt;
+            this.generation = generation;
+        }
+    }
+}
@@ -1,7 +1,8 @@
 package com.ljx.config;
 
 import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
-import com.baomidou.mybatisplus.extension.plugins.inner.PaginationInnerInterceptor;
+import com.ljx.common.CountMode;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -13,9 +14,19 @@ import org.springframework.context.annotation.Configuration;
 public class MybatisPlusConfig {
 
     @Bean
-    public MybatisPlusInterceptor mybatisPlusInterceptor(){
+    public MybatisPlusInterceptor mybatisPlusInterceptor(CountCachePaginationInnerInterceptor paginationInnerInterceptor){
         MybatisPlusInterceptor mybatisPlusInterceptor = new MybatisPlusInterceptor();
-        mybatisPlusInterceptor.addInnerInterceptor(new PaginationInnerInterceptor());
+        mybatisPlusInterceptor.addInnerInterceptor(paginationInnerInterceptor);
         return mybatisPlusInterceptor;
     }
+
+    /*
+    * 分页插件，支持缓存和估算总条数
+    * 默认统计方式和缓存时间可以在配置文件中修改*/
+    @Bean
+    public CountCachePaginationInnerInterceptor paginationInnerInterceptor(
+            @Value("${reggie.page.count-mode:cached}") String countMode,
+            @Value("${reggie.page.count-ttl-seconds:10}") long ttlSeconds){
+        return new CountCachePaginationInnerInterceptor(CountMode.valueOf(countMode.toUpperCase()), ttlSeconds * 1000);
+    }
 }
@@ -0,0 +1,35 @@
+package com.ljx.config;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/*
+* 静态资源的缓存头
+* 文件名带内容MD5的js、css内容不会变化，浏览器长期缓存且不再验证；
+* 页面等其他资源每次使用前向服务器验证，内容未变化时返回304*/
+public class StaticCacheControlInterceptor implements HandlerInterceptor {
+
+    //与VersionResourceResolver的文件名格式相同：name-{md5}.ext
+    private static final Pattern VERSIONED = Pattern.compile(".*-[0-9a-f]{32}\\.[^/.]+$");
+
+    private final String versioned;
+
+    private final String unversioned = CacheControl.noCache().getHeaderValue();
+
+    public StaticCacheControlInterceptor(long maxAgeDays) {
+        this.versioned = "public, max-age=" + TimeUnit.DAYS.toSeconds(maxAgeDays) + ", immutable";
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        boolean isVersioned = VERSIONED.matcher(request.getRequestURI()).matches();
+        response.setHeader(HttpHeaders.CACHE_CONTROL, isVersioned ? versioned : unversioned);
+        return true;
+    }
+}
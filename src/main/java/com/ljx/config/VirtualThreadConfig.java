@@ -0,0 +1,73 @@
+package com.ljx.config;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import com.ljx.common.VirtualThreads;
+import com.ljx.filter.ConcurrencyLimitFilter;
+import com.ljx.filter.PathPatternMatcher;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+
+/*
+* 虚拟线程方式处理请求，使用virtual配置文件开启：--spring.profiles.active=virtual
+* Tomcat请求处理和@Async异步任务都改为每个任务一个虚拟线程，
+* 同时按数据库连接池大小限制同时处理的请求数，避免大量虚拟线程同时等待数据库连接
+* 运行在JDK 21以下时退回为每个任务一个平台线程，限流照常生效*/
+@Configuration
+@ConditionalOnProperty(name = "reggie.threads.virtual", havingValue = "true")
+@Slf4j
+public class VirtualThreadConfig {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        if (!VirtualThreads.isSupported()) {
+            log.warn("当前JDK不支持虚拟线程，请求处理使用每个请求一个平台线程");
+        }
+        return (protocolHandler) -> protocolHandler.setExecutor(VirtualThreads.newThreadPerTaskExecutor("tomcat-virtual-"));
+    }
+
+    /*
+    * 替换自动配置的任务线程池，@Async方法在虚拟线程中执行，仍然带上调用方的用户id*/
+    @Bean(name = {"applicationTaskExecutor", "taskExecutor"}, destroyMethod = "")
+    public TaskExecutorAdapter applicationTaskExecutor(TaskDecorator taskDecorator) {
+        TaskExecutorAdapter executor = new TaskExecutorAdapter(VirtualThreads.newThreadPerTaskExecutor("async-virtual-"));
+        executor.setTaskDecorator(taskDecorator);
+        return executor;
+    }
+
+    @Bean
+    public ConcurrencyLimitFilter concurrencyLimitFilter(
+            DataSource dataSource,
+            @Value("${reggie.threads.limit.requests-per-connection:10}") int requestsPerConnection,
+            @Value("${reggie.threads.limit.connections:8}") int connections,
+            @Value("${reggie.threads.limit.queue-timeout-ms:3000}") long queueTimeoutMillis,
+            @Value("${reggie.threads.limit.exclude-paths:/backend/**,/front/**}") String excludePaths) {
+        //使用Druid连接池的最大连接数，其他连接池使用配置的连接数
+        if (dataSource instanceof DruidDataSource) {
+            connections = ((DruidDataSource) dataSource).getMaxActive();
+        }
+        int permits = Math.max(1, connections * requestsPerConnection);
+        log.info("虚拟线程方式同时处理的请求数上限：{}（数据库连接数{}）", permits, connections);
+        return new ConcurrencyLimitFilter(permits, queueTimeoutMillis,
+                new PathPatternMatcher(Arrays.asList(excludePaths.split(","))));
+    }
+
+    //排在登录检查前面，被拒绝的请求不需要校验登录状态
+    @Bean
+    public FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilterRegistration(ConcurrencyLimitFilter concurrencyLimitFilter) {
+        FilterRegistrationBean<ConcurrencyLimitFilter> registration = new FilterRegistrationBean<>(concurrencyLimitFilter);
+        registration.addUrlPatterns("/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+}
@@ -1,12 +1,17 @@
 package com.ljx.config;
 
 import com.ljx.common.JacksonObjectMapper;
+import com.ljx.common.JsonBytesHttpMessageConverter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurationSupport;
+import org.springframework.web.servlet.resource.EncodedResourceResolver;
+import org.springframework.web.servlet.resource.VersionResourceResolver;
 
 import java.util.List;
 
@@ -14,13 +19,32 @@ import java.util.List;
 @Configuration
 public class WebMvcConfig extends WebMvcConfigurationSupport {
 
+    //文件名带内容哈希的静态资源浏览器缓存时间
+    @Value("${reggie.static.cache-max-age-days:365}")
+    private long staticCacheMaxAgeDays;
+
     /*
-    * 设置静态资源映射*/
+    * 设置静态资源映射
+    * 构建时页面中的js、css引用已改为带内容MD5的文件名，并生成了gzip版本（见StaticAssetBuilder）
+    * EncodedResourceResolver按Accept-Encoding返回预压缩的文件，VersionResourceResolver校验MD5后返回原文件
+    * 解析结果会缓存，不会每次请求都计算MD5*/
     @Override
     protected void addResourceHandlers(ResourceHandlerRegistry registry) {
         log.info("开始进行静态资源映射...");
-        registry.addResourceHandler("/backend/**").addResourceLocations("classpath:/static/backend/");
-        registry.addResourceHandler("/front/**").addResourceLocations("classpath:/static/front/");
+        for (String name : new String[]{"backend", "front"}) {
+            registry.addResourceHandler("/" + name + "/**").addResourceLocations("classpath:/static/" + name + "/")
+                    .resourceChain(true)
+                    .addResolver(new EncodedResourceResolver())
+                    .addResolver(new VersionResourceResolver().addContentVersionStrategy("/**"));
+        }
+    }
+
+    /*
+    * 静态资源的缓存头，带哈希的文件长期缓存，其他文件每次验证*/
+    @Override
+    protected void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new StaticCacheControlInterceptor(staticCacheMaxAgeDays))
+                .addPathPatterns("/backend/**", "/front/**");
     }
 
     /*
@@ -34,5 +58,7 @@ public class WebMvcConfig extends WebMvcConfigurationSupport {
         messageConverter.setObjectMapper(new JacksonObjectMapper());
         //将上面的消息转换器对象追加到mvc框架的转换器集合中
         converters.add(0,messageConverter);
+        //预先序列化好的热点响应直接写出字节，需要排在jackson转换器前面
+        converters.add(0,new JsonBytesHttpMessageConverter());
     }
 }
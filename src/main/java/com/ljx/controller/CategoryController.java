@@ -2,21 +2,28 @@ package com.ljx.controller;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.ljx.cache.JsonBytes;
+import com.ljx.cache.JsonBytesCache;
+import com.ljx.cache.MenuCache;
+import com.ljx.common.CountPage;
 import com.ljx.common.R;
+import com.ljx.common.SeekPage;
 import com.ljx.entity.Category;
 import com.ljx.service.CategoryService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
-
 @RestController
 @RequestMapping("/category")
 @Slf4j
 public class CategoryController {
     @Autowired
     private CategoryService categoryService;
+    @Autowired
+    private MenuCache menuCache;
+    @Autowired
+    private JsonBytesCache jsonBytesCache;
 
     /*
     * 新增分类*/
@@ -30,9 +37,9 @@ public class CategoryController {
     /*
     * 分页查询*/
     @GetMapping("/page")
-    public R<Page> page(int page,int pageSize){
-        //分页构造器
-        Page<Category> pageInfo = new Page<>(page,pageSize);
+    public R<Page> page(int page,int pageSize,String countMode){
+        //分页构造器，countMode为总条数统计方式，不传使用默认配置
+        Page<Category> pageInfo = CountPage.of(page,pageSize,countMode);
 
         //根据category中的sort排序
         LambdaQueryWrapper<Category> queryWrapper = new LambdaQueryWrapper<>();
@@ -44,6 +51,16 @@ public class CategoryController {
         return R.success(pageInfo);
     }
 
+    /*
+    * 游标分页查询，请求中带cursor参数时使用，第一页cursor传空字符串
+    * 与分页查询一样按sort升序*/
+    @GetMapping(value = "/page",params = "cursor")
+    public R<SeekPage<Category>> seekPage(String cursor,int pageSize){
+        LambdaQueryWrapper<Category> queryWrapper = new LambdaQueryWrapper<>();
+        SeekPage<Category> seekPage = SeekPage.query(categoryService,queryWrapper,Category::getSort,Category::getId,false,cursor,pageSize);
+        return R.success(seekPage);
+    }
+
     /*
     * 根据id删除分类*/
     @DeleteMapping
@@ -70,16 +87,12 @@ public class CategoryController {
      * @return
      */
     @GetMapping("/list")
-    public R<List<Category>> list(Category category){
-        //条件构造器
-        LambdaQueryWrapper<Category> queryWrapper = new LambdaQueryWrapper<>();
-        //添加条件
-        queryWrapper.eq(category.getType()!=null,Category::getType,category.getType());
-        //添加排序条件
-        queryWrapper.orderByAsc(Category::getSort).orderByDesc(Category::getUpdateTime);
-
-        List<Category> list = categoryService.list(queryWrapper);
-        return R.success(list);
+    public JsonBytes list(Category category){
+        //从分类快照中按类型读取，已按sort升序、updateTime降序排好
+        //响应内容为R<List<Category>>，分类变化时菜单版本会变化，每个版本只序列化一次
+        long version = menuCache.getVersion();
+        return jsonBytesCache.get("category:list:" + category.getType(),version,
+                ()->R.success(categoryService.listFromCache(category.getType())));
     }
 
 }
@@ -1,21 +1,27 @@
 package com.ljx.controller;
 
+import com.ljx.auth.LoginManager;
+import com.ljx.auth.LoginPrincipal;
 import com.ljx.common.R;
+import com.ljx.image.ImageCache;
+import com.ljx.image.ImageCollector;
+import com.ljx.image.ImageSender;
+import com.ljx.image.ImageStore;
+import com.ljx.image.ImageVariants;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
-import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.UUID;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Map;
 
 /*
 * 文件上传和下载*/
@@ -24,75 +30,89 @@ import java.util.UUID;
 @Slf4j
 public class CommonController {
 
-    @Value("${reggie.path}")
-    private String basePath;
+    @Autowired
+    private ImageStore imageStore;
+
+    @Autowired
+    private ImageSender imageSender;
+
+    @Autowired
+    private ImageVariants imageVariants;
+
+    @Autowired
+    private ImageCache imageCache;
+
+    @Autowired
+    private ImageCollector imageCollector;
 
     /*
-    * 文件上传*/
+    * 文件上传
+    * 按内容保存，返回的文件名为内容哈希，同一张图片重复上传得到相同的文件名*/
     @PostMapping("/upload")
     public R<String> upload(MultipartFile file) {
         //file是一个临时文件，需要转存到指定位置，否则本次请求完成后临时文件会删除
         log.info(file.toString());
 
-        //原始文件名
-        String orginalFilename = file.getOriginalFilename();
-        //将原始名的.jpg截取出来
-        String suffix = orginalFilename.substring(orginalFilename.lastIndexOf("."));
-
-        //使用UUID重新生成文件名，防止文件名称重复造成文件覆盖
-        String fileName = UUID.randomUUID().toString()+suffix;
-
-        //创建一个目录对象
-        File dir = new File(basePath);
-        //判断当前目录是否存在
-        if(!dir.exists()){
-            //目录不存在，需要创建
-            dir.mkdirs();
-        }
-
-
-        try{
-            //将临时文件转存到指定位置
-            file.transferTo(new File(basePath+fileName));
+        String fileName;
+        try(InputStream in = file.getInputStream()){
+            //边读边计算哈希，写入临时文件后原子改名
+            fileName = imageStore.save(in,file.getOriginalFilename());
         }catch (IOException e){
-            e.printStackTrace();
+            log.error("图片保存失败",e);
+            return R.error("图片上传失败");
         }
+        //文件名由内容决定，同名文件内容不会变化，这里只是保证缓存中不会留下旧内容
+        imageCache.invalidateImage(fileName);
+        //后台生成各个宽度的版本
+        imageVariants.generateAsync(fileName,imageStore.path(fileName));
         return R.success(fileName);
     }
 
     /**
      * 文件下载
-     * @param name
+     * @param name 内容文件名，或者以前上传时的UUID文件名
+     * @param size 图片版本：thumb、list、detail，不传或不支持的版本返回原图
+     * @param request
      * @param response
      */
     @GetMapping("/download")
-    public void download(String name, HttpServletResponse response){
-
-        try{
-            //输入流，通过输入流读取文件内容
-            FileInputStream fileInputStream = new FileInputStream(new File(basePath+name));
-
-            //输出流，通过输出流将文件写回浏览器，在浏览器展示图片
-            ServletOutputStream outputStream = response.getOutputStream();
-
-            response.setContentType("image/jpg");
-
-            int len = 0;
-            byte[] bytes = new byte[1024];
-            while((len=fileInputStream.read(bytes))!= -1){
-                outputStream.write(bytes,0,len);
-                outputStream.flush();
+    public void download(String name, String size, HttpServletRequest request, HttpServletResponse response){
+        Path file = imageStore.locate(name);
+        if(file == null){
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        boolean immutable = true;
+        if(imageVariants.isVariant(size)){
+            //没有该版本时按需生成，生成失败返回原图，原图不能作为该版本长期缓存
+            Path variant = imageVariants.resolve(imageStore.canonicalName(name),file,size);
+            if(variant != null){
+                file = variant;
+            }else {
+                immutable = false;
             }
-            //关闭资源
-            outputStream.close();
-            fileInputStream.close();
-
-        } catch (Exception e){
-            e.printStackTrace();
         }
 
+        try {
+            imageSender.send(request,response,file,immutable);
+        } catch (IOException e){
+            //通常是客户端在传输过程中断开
+            log.debug("图片发送中断：{}，{}",name,e.getMessage());
+        }
+    }
 
-
-
+    /**
+     * 立即清理没有被引用的图片，只有员工可以执行
+     * @param dryRun 为true时只返回报告，不删除文件
+     * @param request
+     * @return 清理报告
+     */
+    @PostMapping("/gc")
+    public R<Map<String, Object>> gc(boolean dryRun, HttpServletRequest request){
+        LoginPrincipal principal = LoginManager.current(request);
+        if(principal == null || !principal.isEmployee()){
+            return R.error("没有权限");
+        }
+        return R.success(imageCollector.run(dryRun ? ImageCollector.DRY_RUN : imageCollector.getMode()));
     }
 }
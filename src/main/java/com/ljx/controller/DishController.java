@@ -2,32 +2,50 @@ package com.ljx.controller;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.ljx.auth.LoginManager;
+import com.ljx.auth.LoginPrincipal;
+import com.ljx.cache.JsonBytes;
+import com.ljx.cache.JsonBytesCache;
+import com.ljx.cache.MenuCache;
+import com.ljx.common.CountPage;
 import com.ljx.common.R;
+import com.ljx.common.SeekPage;
 import com.ljx.dto.DishDto;
-import com.ljx.entity.Category;
 import com.ljx.entity.Dish;
-import com.ljx.entity.DishFlavor;
-import com.ljx.service.CategoryService;
-import com.ljx.service.DishFlavorService;
+import com.ljx.loader.DishDtoLoader;
+import com.ljx.search.MenuSearchIndex;
+import com.ljx.search.RankedPage;
+import com.ljx.search.Suggestion;
 import com.ljx.service.DishService;
+import com.ljx.service.StockService;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.StringUtils;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @RestController
 @Slf4j
 @RequestMapping("/dish")
 public class DishController {
+    private static final int SUGGEST_DEFAULT_LIMIT = 10;
+    private static final int SUGGEST_MAX_LIMIT = 50;
+
     @Autowired
     private DishService dishService;
     @Autowired
-    private DishFlavorService dishFlavorService;
+    private DishDtoLoader dishDtoLoader;
+    @Autowired
+    private MenuCache menuCache;
+    @Autowired
+    private JsonBytesCache jsonBytesCache;
     @Autowired
-    private CategoryService categoryService;
+    private MenuSearchIndex menuSearchIndex;
+    @Autowired
+    private StockService stockService;
 
     /**
      * 新增菜品
@@ -46,47 +64,81 @@ public class DishController {
      * @param page
      * @param pageSize
      * @param name
+     * @param countMode 总条数统计方式，可选exact、cached、approximate、none，不传使用默认配置
      * @return
      */
     @GetMapping("/page")
-    public R<Page> page(int page,int pageSize,String name){
-        //构造分页构造器
-        Page<Dish> pageInfo = new Page<>(page,pageSize);
-        Page<DishDto> pageDtoInfo = new Page<>();
-
-        //条件构造器
-        LambdaQueryWrapper<Dish> queryWrapper = new LambdaQueryWrapper<>();
-        //添加过滤条件
-        queryWrapper.like(name!=null,Dish::getName,name);
-        //添加排序
-        queryWrapper.orderByDesc(Dish::getUpdateTime);
-
-        //执行分页查询
-        dishService.page(pageInfo,queryWrapper);
+    public R<Page> page(int page,int pageSize,String name,String countMode){
+        Page<Dish> pageInfo;
+        Page<DishDto> pageDtoInfo = new CountPage<>();
+
+        if(StringUtils.isNotEmpty(name)){
+            //按名称搜索时使用内存索引，结果按相关度排序，只按主键查询当前页
+            List<Long> ids = menuSearchIndex.searchDishes(name);
+            pageInfo = RankedPage.of(dishService,ids,Dish::getId,page,pageSize);
+        }else {
+            //构造分页构造器
+            pageInfo = CountPage.of(page,pageSize,countMode);
+
+            //条件构造器
+            LambdaQueryWrapper<Dish> queryWrapper = new LambdaQueryWrapper<>();
+            //添加排序
+            queryWrapper.orderByDesc(Dish::getUpdateTime);
+
+            //执行分页查询
+            dishService.page(pageInfo,queryWrapper);
+        }
 
         //对象拷贝
         BeanUtils.copyProperties(pageInfo,pageDtoInfo,"records");//不要拷records进来，因为这个是返回数据
 
         List<Dish> records = pageInfo.getRecords();
-        List<DishDto> list = records.stream().map((item)->{//这里要接收dto对象，里面有categoryname
-            DishDto dishDto = new DishDto();
+        //这里要接收dto对象，里面有categoryname，分类名称一次性批量查询
+        List<DishDto> list = dishDtoLoader.load(records,true,false);
 
-            BeanUtils.copyProperties(item,dishDto);
+        pageDtoInfo.setRecords(list);
 
-            Long categoryId = item.getCategoryId();//分类id
-            //根据id查询分类对象
-            Category category = categoryService.getById(categoryId);
-            if(category != null){
-                String categoryName = category.getName();
-                dishDto.setCategoryName(categoryName);
-            }
+        return R.success(pageDtoInfo);
+    }
 
-            return dishDto;
-        }).collect(Collectors.toList());
+    /**
+     * 菜品信息游标分页查询，请求中带cursor参数时使用，第一页cursor传空字符串
+     * 按更新时间倒序，不执行count，翻到后面的页也不会变慢
+     * @param cursor 上一页返回的nextCursor
+     * @param pageSize
+     * @param name
+     * @return
+     */
+    @GetMapping(value = "/page",params = "cursor")
+    public R<SeekPage<DishDto>> seekPage(String cursor,int pageSize,String name){
+        LambdaQueryWrapper<Dish> queryWrapper = new LambdaQueryWrapper<>();
+        if(StringUtils.isNotEmpty(name)){
+            //名称过滤使用内存索引，没有匹配时直接返回空页
+            List<Long> ids = menuSearchIndex.searchDishes(name);
+            if(ids.isEmpty()){
+                return R.success(new SeekPage<>());
+            }
+            queryWrapper.in(Dish::getId,ids);
+        }
 
-        pageDtoInfo.setRecords(list);
+        SeekPage<Dish> seekPage = SeekPage.query(dishService,queryWrapper,Dish::getUpdateTime,Dish::getId,true,cursor,pageSize);
+        return R.success(seekPage.convert((records)->dishDtoLoader.load(records,true,false)));
+    }
 
-        return R.success(pageDtoInfo);
+    /**
+     * 输入提示，根据前缀匹配菜品名称、菜品商品码和套餐名称
+     * 直接从内存前缀树读取，不查询数据库，员工以外只返回起售的菜品和套餐
+     * @param request
+     * @param prefix
+     * @param limit 最多返回条数，默认10，最大50
+     * @return
+     */
+    @GetMapping("/suggest")
+    public R<List<Suggestion>> suggest(HttpServletRequest request,String prefix,Integer limit){
+        int size = limit == null ? SUGGEST_DEFAULT_LIMIT : Math.min(Math.max(limit,1),SUGGEST_MAX_LIMIT);
+        LoginPrincipal principal = LoginManager.current(request);
+        boolean onSaleOnly = principal == null || !principal.isEmployee();
+        return R.success(menuSearchIndex.suggest(prefix,size,onSaleOnly));
     }
 
     /**
@@ -134,42 +186,31 @@ public class DishController {
 
     }*/
     @GetMapping("/list")
-    public R<List<DishDto>> list(Dish dish){
-
-        //构造查询条件
-        LambdaQueryWrapper<Dish> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(dish.getCategoryId() != null,Dish::getCategoryId,dish.getCategoryId());
-        //添加条件，查询状态为1（起售）状态的菜品
-        queryWrapper.eq(Dish::getStatus,1);
-        //添加排序条件
-        queryWrapper.orderByAsc(Dish::getSort).orderByDesc(Dish::getUpdateTime);
-
-        List<Dish> list = dishService.list(queryWrapper);
-
-        List<DishDto> dishDtoList = list.stream().map((item)->{//这里要接收dto对象
-            DishDto dishDto = new DishDto();
-
-            BeanUtils.copyProperties(item,dishDto);
-
-            Long categoryId = item.getCategoryId();//分类id
-            //根据id查询分类对象
-            Category category = categoryService.getById(categoryId);
-            if(category != null){
-                String categoryName = category.getName();
-                dishDto.setCategoryName(categoryName);
-            }
-
-            Long dishId = item.getId();
-            LambdaQueryWrapper<DishFlavor> lambdaQueryWrapper = new LambdaQueryWrapper<>();
-            lambdaQueryWrapper.eq(DishFlavor::getDishId,dishId);
-            List<DishFlavor> dishFlavorList = dishFlavorService.list(lambdaQueryWrapper);
-            dishDto.setFlavors(dishFlavorList);
-
-            return dishDto;
-        }).collect(Collectors.toList());
-        return R.success(dishDtoList);
-
+    public JsonBytes list(Dish dish){
+        //响应内容为R<List<DishDto>>，每个菜单版本只序列化一次
+        long version = menuCache.getVersion();
+        return jsonBytesCache.get("dish:list:" + dish.getCategoryId(),version,()->R.success(listDishDto(dish)));
+    }
 
+    private List<DishDto> listDishDto(Dish dish){
+        //按分类缓存组装好的结果，菜品修改后在事务提交时失效
+        return menuCache.getDishList(dish.getCategoryId(),()->{
+            //构造查询条件
+            LambdaQueryWrapper<Dish> queryWrapper = new LambdaQueryWrapper<>();
+            queryWrapper.eq(dish.getCategoryId() != null,Dish::getCategoryId,dish.getCategoryId());
+            //添加条件，查询状态为1（起售）状态的菜品
+            queryWrapper.eq(Dish::getStatus,1);
+            //添加排序条件
+            queryWrapper.orderByAsc(Dish::getSort).orderByDesc(Dish::getUpdateTime);
+
+            List<Dish> list = dishService.list(queryWrapper);
+
+            //分类名称和口味数据各执行一次IN查询，再在内存中拼装
+            List<DishDto> dishDtos = dishDtoLoader.load(list,true,true);
+            //售罄状态变化时会失效该分类的缓存
+            stockService.markSoldOut(dishDtos);
+            return dishDtos;
+        });
     }
 
 
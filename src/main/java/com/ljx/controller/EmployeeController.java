@@ -2,7 +2,12 @@ package com.ljx.controller;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.ljx.auth.LoginManager;
+import com.ljx.auth.LoginPrincipal;
+import com.ljx.common.BaseContext;
+import com.ljx.common.CountPage;
 import com.ljx.common.R;
+import com.ljx.common.SeekPage;
 import com.ljx.entity.Employee;
 import com.ljx.service.EmployeeService;
 import lombok.extern.slf4j.Slf4j;
@@ -12,6 +17,7 @@ import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.*;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.time.LocalDateTime;
 
 @Slf4j
@@ -22,8 +28,11 @@ public class EmployeeController {
     @Autowired
     private EmployeeService employeeService;
 
+    @Autowired
+    private LoginManager loginManager;
+
     @PostMapping("/login")
-    public R<Employee> login(HttpServletRequest request, @RequestBody Employee employee) {
+    public R<Employee> login(HttpServletRequest request, HttpServletResponse response, @RequestBody Employee employee) {
 
         //1.将页面提交的密码password进行md5加密
         String password = employee.getPassword();
@@ -49,8 +58,8 @@ public class EmployeeController {
             return R.error("账号已禁用");
         }
 
-        //6.登录成功，将员工id存入Session并返回登录成功结果
-        request.getSession().setAttribute("employee", emp.getId());
+        //6.登录成功，保存登录状态（Session或签名令牌）并返回登录成功结果
+        loginManager.login(request, response, LoginPrincipal.EMPLOYEE, emp.getId());
         return R.success(emp);
     }
 
@@ -59,9 +68,9 @@ public class EmployeeController {
     * */
 
     @PostMapping("/logout")
-    public R<String> logout(HttpServletRequest request) {
-        //清理session中保存的员工id
-        request.getSession().removeAttribute("employee");
+    public R<String> logout(HttpServletRequest request, HttpServletResponse response) {
+        //清理保存的员工登录状态
+        loginManager.logout(request, response, LoginPrincipal.EMPLOYEE);
         return R.success("退出成功");
     }
 
@@ -77,7 +86,7 @@ public class EmployeeController {
         //employee.setUpdateTime(LocalDateTime.now());
 
         //获得当前登录用户的id
-        Long empId = (Long)request.getSession().getAttribute("employee");
+        Long empId = BaseContext.getCurrentId();
         //employee.setCreateUser(empId);
         //employee.setUpdateUser(empId);
 
@@ -89,11 +98,11 @@ public class EmployeeController {
     /*
     分页查询*/
     @GetMapping("/page")
-    public R<Page> page(int page,int pageSize,String name){
+    public R<Page> page(int page,int pageSize,String name,String countMode){
         log.info("page={},pageSize={},name={}",page,pageSize,name);
 
-        //构造分页构造器
-        Page pageInfo = new Page<>(page,pageSize);
+        //构造分页构造器，countMode为总条数统计方式，不传使用默认配置
+        Page pageInfo = CountPage.of(page,pageSize,countMode);
 
         //构造条件构造器
         LambdaQueryWrapper<Employee> lambdaQueryWrapper = new LambdaQueryWrapper<>();
@@ -108,13 +117,26 @@ public class EmployeeController {
         return R.success(pageInfo);
     }
 
+    /*
+    * 游标分页查询，请求中带cursor参数时使用，第一页cursor传空字符串*/
+    @GetMapping(value = "/page",params = "cursor")
+    public R<SeekPage<Employee>> seekPage(String cursor,int pageSize,String name){
+        log.info("cursor={},pageSize={},name={}",cursor,pageSize,name);
+
+        LambdaQueryWrapper<Employee> lambdaQueryWrapper = new LambdaQueryWrapper<>();
+        lambdaQueryWrapper.like(StringUtils.isNotEmpty(name),Employee::getName,name);
+
+        SeekPage<Employee> seekPage = SeekPage.query(employeeService,lambdaQueryWrapper,Employee::getUpdateTime,Employee::getId,true,cursor,pageSize);
+        return R.success(seekPage);
+    }
+
     /*
     * 根据id修改员工信息*/
     @PutMapping
     public R<String> update(HttpServletRequest request,@RequestBody Employee employee){
         log.info(employee.toString());
 
-        Long empId = (Long)request.getSession().getAttribute("employee");
+        Long empId = BaseContext.getCurrentId();
         //employee.setUpdateTime(LocalDateTime.now());
         //employee.setUpdateUser(empId);
         employeeService.updateById(employee);
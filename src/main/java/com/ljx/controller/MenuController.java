@@ -0,0 +1,45 @@
+package com.ljx.controller;
+
+import com.ljx.cache.JsonBytes;
+import com.ljx.cache.JsonBytesCache;
+import com.ljx.cache.MenuSnapshot;
+import com.ljx.common.R;
+import com.ljx.service.MenuService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+
+/*
+* 移动端菜单，一次请求返回分类、菜品和套餐*/
+@RestController
+@Slf4j
+@RequestMapping("/menu")
+public class MenuController {
+
+    @Autowired
+    private MenuService menuService;
+
+    @Autowired
+    private JsonBytesCache jsonBytesCache;
+
+    /**
+     * 查询完整菜单，客户端携带的If-None-Match与当前ETag一致时返回304
+     * @param request
+     * @return
+     */
+    @GetMapping
+    public JsonBytes menu(ServletWebRequest request){
+        MenuSnapshot snapshot = menuService.getSnapshot();
+
+        //每次都要求客户端带ETag重新验证，菜单没变化时只返回304
+        request.getResponse().setHeader("Cache-Control","no-cache");
+        if(request.checkNotModified(snapshot.getEtag())){
+            return null;
+        }
+        //响应内容为R<MenuSnapshot>，每个菜单版本只序列化一次
+        return jsonBytesCache.get("menu",snapshot.getVersion(),()->R.success(snapshot));
+    }
+}
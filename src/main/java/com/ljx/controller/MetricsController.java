@@ -0,0 +1,33 @@
+package com.ljx.controller;
+
+import com.ljx.common.MetricsSource;
+import com.ljx.common.R;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+* 运行指标查看，例如缓存命中率*/
+@RestController
+@Slf4j
+@RequestMapping("/metrics")
+public class MetricsController {
+
+    @Autowired
+    private List<MetricsSource> metricsSources;
+
+    @GetMapping
+    public R<Map<String, Map<String, Object>>> metrics(){
+        Map<String, Map<String, Object>> metrics = new LinkedHashMap<>();
+        for (MetricsSource source : metricsSources) {
+            metrics.put(source.getMetricsName(), source.getMetrics());
+        }
+        return R.success(metrics);
+    }
+}
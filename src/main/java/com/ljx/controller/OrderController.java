@@ -1,14 +1,16 @@
 package com.ljx.controller;
 
+import com.ljx.auth.LoginManager;
+import com.ljx.auth.LoginPrincipal;
+import com.ljx.common.BaseContext;
 import com.ljx.common.R;
 import com.ljx.entity.Orders;
 import com.ljx.service.OrderService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestBody;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletRequest;
 
 @RestController
 @Slf4j
@@ -29,4 +31,19 @@ public class OrderController {
         orderService.submit(orders);
         return R.success("下单成功");
     }
+
+    /**
+     * 取消订单，员工可以取消任意订单，用户只能取消自己的订单
+     * @param id
+     * @param request
+     * @return
+     */
+    @PutMapping("/cancel/{id}")
+    public R<String> cancel(@PathVariable Long id, HttpServletRequest request){
+        log.info("取消订单：{}",id);
+        LoginPrincipal principal = LoginManager.current(request);
+        Long userId = principal != null && principal.isEmployee() ? null : BaseContext.getCurrentId();
+        orderService.cancel(id,userId);
+        return R.success("订单已取消");
+    }
 }
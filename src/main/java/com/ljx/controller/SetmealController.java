@@ -2,19 +2,31 @@ package com.ljx.controller;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.ljx.cache.JsonBytes;
+import com.ljx.cache.JsonBytesCache;
+import com.ljx.cache.MenuCache;
+import com.ljx.cache.MenuSnapshot;
+import com.ljx.common.CountPage;
 import com.ljx.common.R;
+import com.ljx.common.SeekPage;
+import com.ljx.dto.DishDto;
 import com.ljx.dto.SetmealDto;
-import com.ljx.entity.Category;
 import com.ljx.entity.Setmeal;
-import com.ljx.service.CategoryService;
+import com.ljx.loader.DishDtoLoader;
+import com.ljx.search.MenuSearchIndex;
+import com.ljx.search.RankedPage;
+import com.ljx.service.MenuService;
 import com.ljx.service.SetmealDishService;
 import com.ljx.service.SetmealService;
+import com.ljx.service.StockService;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.StringUtils;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /*
@@ -30,7 +42,17 @@ public class SetmealController {
     @Autowired
     private SetmealDishService setmealDishService;
     @Autowired
-    private CategoryService categoryService;
+    private DishDtoLoader dishDtoLoader;
+    @Autowired
+    private MenuCache menuCache;
+    @Autowired
+    private JsonBytesCache jsonBytesCache;
+    @Autowired
+    private MenuService menuService;
+    @Autowired
+    private MenuSearchIndex menuSearchIndex;
+    @Autowired
+    private StockService stockService;
 
     /**
      * 新增套餐
@@ -49,38 +71,42 @@ public class SetmealController {
      * @param page
      * @param pageSize
      * @param name
+     * @param countMode 总条数统计方式，可选exact、cached、approximate、none，不传使用默认配置
      * @return
      */
     @GetMapping("/page")
-    public R<Page> page(int page,int pageSize,String name){
-        //分页构造器
-        Page<Setmeal> pageInfo = new Page<>(page,pageSize);
-        Page<SetmealDto> dtoPage = new Page<>();
-
-        LambdaQueryWrapper<Setmeal> queryWrapper = new LambdaQueryWrapper<>();
-        //添加查询条件，根据name进行like模糊查询
-        queryWrapper.like(name!=null,Setmeal::getName,name);
-        //排序条件
-        queryWrapper.orderByDesc(Setmeal::getUpdateTime);
-        setmealService.page(pageInfo,queryWrapper);
+    public R<Page> page(int page,int pageSize,String name,String countMode){
+        Page<Setmeal> pageInfo;
+        Page<SetmealDto> dtoPage = new CountPage<>();
+
+        if(StringUtils.isNotEmpty(name)){
+            //按名称搜索时使用内存索引，结果按相关度排序，只按主键查询当前页
+            List<Long> ids = menuSearchIndex.searchSetmeals(name);
+            pageInfo = RankedPage.of(setmealService,ids,Setmeal::getId,page,pageSize);
+        }else {
+            //分页构造器
+            pageInfo = CountPage.of(page,pageSize,countMode);
+
+            LambdaQueryWrapper<Setmeal> queryWrapper = new LambdaQueryWrapper<>();
+            //排序条件
+            queryWrapper.orderByDesc(Setmeal::getUpdateTime);
+            setmealService.page(pageInfo,queryWrapper);
+        }
 
         //对象拷贝
         BeanUtils.copyProperties(pageInfo,dtoPage,"recodes");
         List<Setmeal> records = pageInfo.getRecords();
 
+        //分类名称一次性批量查询
+        Map<Long,String> categoryNames = dishDtoLoader.loadCategoryNames(
+                records.stream().map(Setmeal::getCategoryId).collect(Collectors.toSet()));
+
         List<SetmealDto> list = records.stream().map((item)->{
             SetmealDto setmealDto = new SetmealDto();
             //对象拷贝
             BeanUtils.copyProperties(item,setmealDto);
-            //分类id
-            Long categoryId = item.getCategoryId();
-            //根据分类id查询分类对象
-            Category category = categoryService.getById(categoryId);
-            if(category!=null){
-                //分类名称
-                String categoryName = category.getName();
-                setmealDto.setCategoryName(categoryName);
-            }
+            //分类名称
+            setmealDto.setCategoryName(categoryNames.get(item.getCategoryId()));
             return setmealDto;
         }).collect(Collectors.toList());
 
@@ -89,6 +115,37 @@ public class SetmealController {
         return R.success(dtoPage);
     }
 
+    /**
+     * 套餐游标分页查询，请求中带cursor参数时使用，第一页cursor传空字符串
+     * @param cursor 上一页返回的nextCursor
+     * @param pageSize
+     * @param name
+     * @return
+     */
+    @GetMapping(value = "/page",params = "cursor")
+    public R<SeekPage<SetmealDto>> seekPage(String cursor,int pageSize,String name){
+        LambdaQueryWrapper<Setmeal> queryWrapper = new LambdaQueryWrapper<>();
+        if(StringUtils.isNotEmpty(name)){
+            //名称过滤使用内存索引，没有匹配时直接返回空页
+            List<Long> ids = menuSearchIndex.searchSetmeals(name);
+            if(ids.isEmpty()){
+                return R.success(new SeekPage<>());
+            }
+            queryWrapper.in(Setmeal::getId,ids);
+        }
+
+        SeekPage<Setmeal> seekPage = SeekPage.query(setmealService,queryWrapper,Setmeal::getUpdateTime,Setmeal::getId,true,cursor,pageSize);
+
+        Map<Long,String> categoryNames = dishDtoLoader.loadCategoryNames(
+                seekPage.getRecords().stream().map(Setmeal::getCategoryId).collect(Collectors.toSet()));
+        return R.success(seekPage.map((item)->{
+            SetmealDto setmealDto = new SetmealDto();
+            BeanUtils.copyProperties(item,setmealDto);
+            setmealDto.setCategoryName(categoryNames.get(item.getCategoryId()));
+            return setmealDto;
+        }));
+    }
+
     /**
      * 删除套餐
      * @param ids
@@ -107,13 +164,61 @@ public class SetmealController {
      * @return
      */
     @GetMapping("/list")
-    public R<List<Setmeal>> list(Setmeal setmeal){
-        LambdaQueryWrapper<Setmeal> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(setmeal.getCategoryId() != null,Setmeal::getCategoryId,setmeal.getCategoryId());
-        queryWrapper.eq(setmeal.getStatus() != null,Setmeal::getStatus,setmeal.getStatus());
-        List<Setmeal> list = setmealService.list(queryWrapper);
+    public JsonBytes list(Setmeal setmeal){
+        //响应内容为R<List<Setmeal>>，每个菜单版本只序列化一次
+        long version = menuCache.getVersion();
+        String key = "setmeal:list:" + setmeal.getCategoryId() + ":" + setmeal.getStatus();
+        return jsonBytesCache.get(key,version,()->{
+            //按分类缓存查询结果，套餐修改后在事务提交时失效
+            List<Setmeal> list = menuCache.getSetmealList(setmeal.getCategoryId(),setmeal.getStatus(),()->{
+                LambdaQueryWrapper<Setmeal> queryWrapper = new LambdaQueryWrapper<>();
+                queryWrapper.eq(setmeal.getCategoryId() != null,Setmeal::getCategoryId,setmeal.getCategoryId());
+                queryWrapper.eq(setmeal.getStatus() != null,Setmeal::getStatus,setmeal.getStatus());
+                List<Setmeal> setmeals = setmealService.list(queryWrapper);
+                //售罄状态变化时会失效该分类的缓存
+                stockService.markSetmealSoldOut(setmeals);
+                return setmeals;
+            });
+            return R.success(list);
+        });
+    }
+
+    /**
+     * 查询套餐包含的菜品，数据来自菜单快照
+     * 响应内容为R<List<DishDto>>，copies为该菜品在套餐中的份数
+     * @param id 套餐id
+     * @return
+     */
+    @GetMapping("/dish/{id}")
+    public JsonBytes dish(@PathVariable Long id){
+        MenuSnapshot snapshot = menuService.getSnapshot();
+        return jsonBytesCache.get("setmeal:dish:" + id,snapshot.getVersion(),()->{
+            SetmealDto setmealDto = snapshot.getSetmeals().stream()
+                    .filter((item)->item.getId().equals(id))
+                    .findFirst().orElse(null);
+            if(setmealDto == null){
+                return R.error("套餐不存在或已停售");
+            }
 
-        return R.success(list);
+            Map<Long,DishDto> dishes = snapshot.getDishes().stream()
+                    .collect(Collectors.toMap(DishDto::getId,(item)->item));
+            List<DishDto> list = setmealDto.getSetmealDishes().stream().map((item)->{
+                //快照中的对象是共享的，这里复制一份再设置份数
+                DishDto dishDto = new DishDto();
+                DishDto dish = dishes.get(item.getDishId());
+                if(dish != null){
+                    BeanUtils.copyProperties(dish,dishDto);
+                }else {
+                    //菜品已停售时使用套餐中保存的冗余信息
+                    dishDto.setId(item.getDishId());
+                    dishDto.setName(item.getName());
+                    dishDto.setPrice(item.getPrice());
+                }
+                dishDto.setCopies(item.getCopies());
+                return dishDto;
+            }).collect(Collectors.toList());
+            return R.success(list);
+        });
     }
 
 }
@@ -1,15 +1,14 @@
 package com.ljx.controller;
 
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.ljx.common.BaseContext;
 import com.ljx.common.R;
+import com.ljx.dto.CartOperation;
 import com.ljx.entity.ShoppingCart;
 import com.ljx.service.ShoppingCartService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
-import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
@@ -29,52 +28,44 @@ public class ShoppingCartController {
     public R<ShoppingCart> add(@RequestBody ShoppingCart shoppingCart){
         log.info("购物车数据：{}",shoppingCart);
 
-        //设置用户id,指定当前是哪个用户的购物车数据
-        Long currentId = BaseContext.getCurrentId();
-        shoppingCart.setUserId(currentId);
+        //已经在购物车中时数量加一，不存在时添加到购物车，数量为1
+        ShoppingCart cartServiceOne = shoppingCartService.changeNumber(BaseContext.getCurrentId(),shoppingCart,1);
 
-        //查询当前菜品，套餐是否在购物车中
-        Long dishId = shoppingCart.getDishId();
-
-        LambdaQueryWrapper<ShoppingCart> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(ShoppingCart::getUserId,currentId);
+        return R.success(cartServiceOne);
+    }
 
-        if(dishId != null){
-            //添加到购物车的是菜品
-            queryWrapper.eq(ShoppingCart::getDishId,dishId);
+    /**
+     * 减少购物车中菜品或套餐的数量，减到0时从购物车删除
+     * @param shoppingCart
+     * @return
+     */
+    @PostMapping("/sub")
+    public R<ShoppingCart> sub(@RequestBody ShoppingCart shoppingCart){
+        log.info("购物车数据：{}",shoppingCart);
 
-        }else{
-            //添加到购物车的是菜品
-            queryWrapper.eq(ShoppingCart::getSetmealId,shoppingCart.getSetmealId());
+        ShoppingCart cartServiceOne = shoppingCartService.changeNumber(BaseContext.getCurrentId(),shoppingCart,-1);
 
-        }
-        ShoppingCart cartServiceOne = shoppingCartService.getOne(queryWrapper);
+        return R.success(cartServiceOne);
+    }
 
-        if(cartServiceOne != null){
-            //如果已经存在，就在原来数量基础上加一
-            Integer number = cartServiceOne.getNumber();
-            cartServiceOne.setNumber(number+1);
-            shoppingCartService.updateById(cartServiceOne);
-        }else {
-            //如果不存在，则添加到购物车，数量默认就是1
-            shoppingCart.setNumber(1);
-            shoppingCart.setCreateTime(LocalDateTime.now());
-            shoppingCartService.save(shoppingCart);
-            cartServiceOne = shoppingCart;
+    /**
+     * 批量修改购物车，客户端可以合并多次点击后一次提交
+     * @param operations 每项为菜品id或套餐id、口味和数量变化
+     * @return 修改后的整个购物车
+     */
+    @PostMapping("/batch")
+    public R<List<ShoppingCart>> batch(@RequestBody List<CartOperation> operations){
+        log.info("批量修改购物车：{}",operations);
 
-        }
+        List<ShoppingCart> list = shoppingCartService.applyOperations(BaseContext.getCurrentId(),operations);
 
-        return R.success(cartServiceOne);
+        return R.success(list);
     }
 
     @GetMapping("/list")
     public R<List<ShoppingCart>> list(){
         log.info("查看购物车");
-        LambdaQueryWrapper<ShoppingCart> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(ShoppingCart::getUserId,BaseContext.getCurrentId());
-        queryWrapper.orderByAsc(ShoppingCart::getCreateTime);
-
-        List<ShoppingCart> list = shoppingCartService.list(queryWrapper);
+        List<ShoppingCart> list = shoppingCartService.listCart(BaseContext.getCurrentId());
 
         return R.success(list);
     }
@@ -85,9 +76,7 @@ public class ShoppingCartController {
      */
     @DeleteMapping("/clean")
     public R<String> clean(){
-        LambdaQueryWrapper<ShoppingCart> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(ShoppingCart::getUserId,BaseContext.getCurrentId());
-        shoppingCartService.remove(queryWrapper);
+        shoppingCartService.cleanCart(BaseContext.getCurrentId());
 
         return R.success("清空购物车成功");
     }
@@ -0,0 +1,53 @@
+package com.ljx.controller;
+
+import com.ljx.common.R;
+import com.ljx.entity.Stock;
+import com.ljx.service.StockService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/*
+* 每日限量库存管理*/
+@RestController
+@Slf4j
+@RequestMapping("/stock")
+public class StockController {
+
+    @Autowired
+    private StockService stockService;
+
+    /**
+     * 查询当日设置了限量的菜品和套餐
+     * @return
+     */
+    @GetMapping("/list")
+    public R<List<Stock>> list(){
+        return R.success(stockService.listToday());
+    }
+
+    /**
+     * 设置菜品或套餐的当日限量，dishId和setmealId二选一
+     * @param stock
+     * @return
+     */
+    @PostMapping
+    public R<Stock> save(@RequestBody Stock stock){
+        log.info("设置当日限量：{}",stock);
+        return R.success(stockService.setDailyStock(stock));
+    }
+
+    /**
+     * 取消当日限量
+     * @param id
+     * @return
+     */
+    @DeleteMapping
+    public R<String> delete(Long id){
+        log.info("取消当日限量：{}",id);
+        stockService.removeDailyStock(id);
+        return R.success("已取消限量");
+    }
+}
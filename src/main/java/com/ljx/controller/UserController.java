@@ -1,10 +1,13 @@
 package com.ljx.controller;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.ljx.auth.LoginManager;
+import com.ljx.auth.LoginPrincipal;
 import com.ljx.common.R;
 import com.ljx.entity.User;
 import com.ljx.service.UserService;
-import com.ljx.utils.ValidateCodeUtils;
+import com.ljx.sms.ClientIpResolver;
+import com.ljx.sms.VerificationCodeStore;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,7 +18,8 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 
-import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.util.Map;
 
 @RestController
@@ -26,26 +30,32 @@ public class UserController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private LoginManager loginManager;
+
+    @Autowired
+    private VerificationCodeStore verificationCodeStore;
+
+    @Autowired
+    private ClientIpResolver clientIpResolver;
+
     /**
      * 发送手机短信验证码
      * @param user
+     * @param request
      * @return
      */
     @PostMapping("/sendMsg")
-    public R<String> sendMsg(@RequestBody User user,HttpSession session){
+    public R<String> sendMsg(@RequestBody User user,HttpServletRequest request){
         //获取手机号
         String phone = user.getPhone();
         if(StringUtils.isNotEmpty(phone)){
-            //生成随机的4位验证码
-            String code = ValidateCodeUtils.generateValidateCode(4).toString();
+            //生成验证码，保存到验证码存储，按手机号和IP限制发送频率，反向代理后面从受信任代理的请求头中取客户端IP
+            String code = verificationCodeStore.issue(phone,clientIpResolver.resolve(request));
 
             //发送短信
             log.info("短信验证码为：{}",code);
 
-            //需要将生成验证码保存到Session
-            session.setAttribute(phone,code);
-
-
             return R.success("手机验证码短信发送成功");
         }
 
@@ -55,11 +65,12 @@ public class UserController {
     /**
      * 移动端用户登录
      * @param map
-     * @param session
+     * @param request
+     * @param response
      * @return
      */
     @PostMapping("/login")
-    public R<User> login(@RequestBody Map map, HttpSession session){
+    public R<User> login(@RequestBody Map map, HttpServletRequest request, HttpServletResponse response){
         log.info(map.toString());
 
         //获取手机号
@@ -68,11 +79,8 @@ public class UserController {
         //获取验证码
         String code = map.get("code").toString();
 
-        //从session中获取保存的验证码
-        Object codeInSession = session.getAttribute(phone);
-
-        //进行验证码比对（页面提交的验证码和session中保存的验证码比对）
-        if(codeInSession != null && codeInSession.equals(code)){
+        //进行验证码比对（页面提交的验证码和验证码存储中的验证码比对），比对成功后验证码失效
+        if(verificationCodeStore.verify(phone,code)){
             //如果能够比对成功，说明登录成功
 
             LambdaQueryWrapper<User> queryWrapper = new LambdaQueryWrapper<>();
@@ -85,11 +93,23 @@ public class UserController {
                 user.setPhone(phone);
                 userService.save(user);
             }
-            session.setAttribute("user",user.getId());
+            loginManager.login(request,response,LoginPrincipal.USER,user.getId());
             return R.success(user);
         }
 
         return R.error("登录失败");
     }
 
+    /**
+     * 移动端用户退出
+     * @param request
+     * @param response
+     * @return
+     */
+    @PostMapping("/loginout")
+    public R<String> loginout(HttpServletRequest request, HttpServletResponse response){
+        loginManager.logout(request,response,LoginPrincipal.USER);
+        return R.success("退出成功");
+    }
+
 }
@@ -0,0 +1,19 @@
+package com.ljx.dto;
+
+import lombok.Data;
+
+/*
+* 购物车批量修改中的一项，dishId和setmealId二选一*/
+@Data
+public class CartOperation {
+
+    private Long dishId;
+
+    private Long setmealId;
+
+    //口味，只在新加入购物车时使用
+    private String dishFlavor;
+
+    //数量变化，正数增加，负数减少
+    private Integer delta;
+}
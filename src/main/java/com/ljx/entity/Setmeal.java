@@ -66,4 +66,9 @@ public class Setmeal implements Serializable {
 
     //是否删除
     private Integer isDeleted;
+
+
+    //设置了当日限量且已经卖完，不是表字段，查询菜单时填充
+    @TableField(exist = false)
+    private Boolean soldOut;
 }
@@ -0,0 +1,55 @@
+package com.ljx.entity;
+
+import com.baomidou.mybatisplus.annotation.FieldFill;
+import com.baomidou.mybatisplus.annotation.TableField;
+import lombok.Data;
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 菜品或套餐的每日限量库存
+ */
+@Data
+public class Stock implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+
+    //菜品id，和套餐id二选一
+    private Long dishId;
+
+
+    //套餐id
+    private Long setmealId;
+
+
+    //库存日期
+    private LocalDate stockDate;
+
+
+    //当日限量
+    private Integer total;
+
+
+    //已售数量，由内存计数定时回写
+    private Integer sold;
+
+
+    @TableField(fill = FieldFill.INSERT)
+    private LocalDateTime createTime;
+
+
+    @TableField(fill = FieldFill.INSERT_UPDATE)
+    private LocalDateTime updateTime;
+
+
+    @TableField(fill = FieldFill.INSERT)
+    private Long createUser;
+
+
+    @TableField(fill = FieldFill.INSERT_UPDATE)
+    private Long updateUser;
+}
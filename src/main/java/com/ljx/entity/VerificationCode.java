@@ -0,0 +1,27 @@
+package com.ljx.entity;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 短信验证码，database验证码存储使用
+ */
+@Data
+public class VerificationCode implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    //手机号
+    private String phone;
+
+    //验证码
+    private String code;
+
+    //过期时间
+    private LocalDateTime expireTime;
+
+    //已校验次数
+    private Integer attempts;
+}
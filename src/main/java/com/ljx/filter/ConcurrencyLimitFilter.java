@@ -0,0 +1,94 @@
+package com.ljx.filter;
+
+import com.alibaba.fastjson.JSON;
+import com.ljx.common.MetricsSource;
+import com.ljx.common.R;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+* 限制同时处理的请求数
+* 虚拟线程方式下每个请求一个线程，线程数不再限制并发，大量请求会同时去争抢数据库连接，
+* 这里按连接池大小限制同时进入业务处理的请求数，超出的请求公平排队，等待超时返回系统繁忙
+* 静态资源不访问数据库，不受限制*/
+public class ConcurrencyLimitFilter implements Filter, MetricsSource {
+
+    private static final byte[] BUSY = JSON.toJSONString(R.error("系统繁忙，请稍后再试")).getBytes(StandardCharsets.UTF_8);
+
+    private final int permits;
+
+    private final long timeoutMillis;
+
+    private final PathPatternMatcher excludedPaths;
+
+    private final Semaphore semaphore;
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param permits 同时处理的请求数
+     * @param timeoutMillis 最长排队时间
+     * @param excludedPaths 不限制的请求路径
+     */
+    public ConcurrencyLimitFilter(int permits, long timeoutMillis, PathPatternMatcher excludedPaths) {
+        this.permits = permits;
+        this.timeoutMillis = timeoutMillis;
+        this.excludedPaths = excludedPaths;
+        this.semaphore = new Semaphore(permits, true);
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain) throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletResponse response = (HttpServletResponse) servletResponse;
+        if (excludedPaths.matches(request.getRequestURI())) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        boolean acquired;
+        try {
+            acquired = semaphore.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            rejected.incrementAndGet();
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setContentType("application/json;charset=UTF-8");
+            response.setContentLength(BUSY.length);
+            response.getOutputStream().write(BUSY);
+            return;
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "concurrencyLimit";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("permits", permits);
+        metrics.put("inFlight", permits - semaphore.availablePermits());
+        metrics.put("waiting", semaphore.getQueueLength());
+        metrics.put("rejected", rejected.get());
+        return metrics;
+    }
+}
@@ -1,89 +1,84 @@
 package com.ljx.filter;
 
 import com.alibaba.fastjson.JSON;
+import com.ljx.auth.LoginManager;
+import com.ljx.auth.LoginPrincipal;
 import com.ljx.common.BaseContext;
 import com.ljx.common.R;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.util.AntPathMatcher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 
+import javax.annotation.PostConstruct;
 import javax.servlet.*;
 import javax.servlet.annotation.WebFilter;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /*
 * 检查用户是否已经完成登录*/
 @WebFilter(filterName = "loginCheckFilter",urlPatterns = "/*")
 @Slf4j
 public class LoginCheckFilter implements Filter {
-    //路径匹配器，支持通配符
-    public static final AntPathMatcher PATH_MATCHER = new AntPathMatcher();
 
-    @Override
-    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain) throws IOException, ServletException {
-        HttpServletRequest request = (HttpServletRequest) servletRequest;
-        HttpServletResponse response = (HttpServletResponse) servletResponse;
+    //未登录时的响应内容，只序列化一次
+    private static final byte[] NOT_LOGIN = JSON.toJSONString(R.error("NOTLOGIN")).getBytes(StandardCharsets.UTF_8);
 
-        //1.获取本次请求的url
-        String requestURI = request.getRequestURI();
+    @Autowired
+    private LoginManager loginManager;
 
-        log.info("拦截到请求：{}",requestURI);
+    //不需要登录就可以访问的请求路径，逗号分隔
+    @Value("${reggie.auth.public-paths:/employee/login,/employee/logout,/backend/**,/front/**,/user/sendMsg,/user/login,/user/loginout}")
+    private String publicPaths;
 
-        //定义不需要处理的请求路径
-        String[] urls = new String[]{
-            "/employee/login",
-            "/employee/logout",
-            "/backend/**",
-            "/front/**",
-            "/user/sendMsg",//移动端发送短信验证码
-            "/user/login"//移动端登录
-        };
+    private PathPatternMatcher publicPathMatcher;
 
-        //2.判断本次请求是否需要处理
-        boolean check = check(urls, requestURI);
+    @PostConstruct
+    public void compile() {
+        //启动时编译一次，每个请求只做一次前缀树匹配
+        publicPathMatcher = new PathPatternMatcher(Arrays.asList(publicPaths.split(",")));
+    }
 
-        //3.如果不需要处理，则直接放行
-        if(check){
-            log.info("本次请求{}不需要处理",requestURI);
-            filterChain.doFilter(request,response);
-            return;
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain) throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletResponse response = (HttpServletResponse) servletResponse;
+
+        //请求结束时清除当前用户id，线程复用时不会带到下一个请求
+        try {
+            doFilterInternal(request,response,filterChain);
+        } finally {
+            BaseContext.clear();
         }
+    }
 
-        //4-1.判断登录状态，如果已登录，则直接放行
-        if(request.getSession().getAttribute("employee") != null){
-            log.info("用户已登录，用户id为：{}",request.getSession().getAttribute("employee"));
-            Long empId = (Long) request.getSession().getAttribute("employee");
-            BaseContext.setCurrentId(empId);
+    private void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws IOException, ServletException {
+        //1.获取本次请求的url
+        String requestURI = request.getRequestURI();
 
+        //2.判断本次请求是否需要处理，如果不需要处理，则直接放行
+        if(publicPathMatcher.matches(requestURI)){
             filterChain.doFilter(request,response);
             return;
         }
 
-        //4-2.判断登录状态，如果已登录，则直接放行
-        if(request.getSession().getAttribute("user") != null){
-            log.info("用户已登录，用户id为：{}",request.getSession().getAttribute("user"));
-            Long userId = (Long) request.getSession().getAttribute("user");
-            BaseContext.setCurrentId(userId);
+        //3.判断登录状态，如果已登录，则直接放行
+        //会话方式读取HttpSession，令牌方式校验签名令牌，不需要查询任何共享存储
+        LoginPrincipal principal = loginManager.authenticate(request, response);
+        if(principal != null){
+            BaseContext.setCurrentId(principal.getId());
 
             filterChain.doFilter(request,response);
             return;
         }
 
-        log.info("用户未登录");
-        //5.如果未登录则返回未登录结果,通过输出流方式向客户端页面相应
-        response.getWriter().write(JSON.toJSONString(R.error("NOTLOGIN")));
-    }
-
-    /*
-    * 路径匹配,检查本次请求是否需要放行*/
-    public boolean check(String[] urls,String requestURI){
-        for (String url : urls) {
-            boolean match = PATH_MATCHER.match(url, requestURI);
-            if(match){
-                return true;
-            }
-        }
-        return false;
+        log.debug("用户未登录，请求：{}",requestURI);
+        //4.如果未登录则返回未登录结果,通过输出流方式向客户端页面相应
+        response.setContentType("application/json;charset=UTF-8");
+        response.setContentLength(NOT_LOGIN.length);
+        response.getOutputStream().write(NOT_LOGIN);
     }
 }
@@ -0,0 +1,99 @@
+package com.ljx.filter;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/*
+* 启动时把路径规则编译成按字符的前缀树，匹配时只沿请求路径走一遍，不分配对象
+* 支持两种规则：
+*   /user/login   完全相同的路径
+*   /backend/**   /backend 本身及其下的所有路径，与AntPathMatcher的含义相同
+* 其他位置的通配符不支持，启动时直接报错*/
+public class PathPatternMatcher {
+
+    private static final String ANY_SUFFIX = "/**";
+
+    private final Node root = new Node();
+
+    public PathPatternMatcher(Collection<String> patterns) {
+        for (String pattern : patterns) {
+            add(pattern.trim());
+        }
+    }
+
+    private void add(String pattern) {
+        boolean subtree = pattern.endsWith(ANY_SUFFIX);
+        String prefix = subtree ? pattern.substring(0, pattern.length() - ANY_SUFFIX.length()) : pattern;
+        if (!pattern.startsWith("/") || prefix.indexOf('*') >= 0 || prefix.indexOf('?') >= 0) {
+            throw new IllegalArgumentException("不支持的路径规则：" + pattern);
+        }
+        Node node = root;
+        for (int i = 0; i < prefix.length(); i++) {
+            node = node.childOrCreate(prefix.charAt(i));
+        }
+        if (subtree) {
+            node.subtree = true;
+        } else {
+            node.exact = true;
+        }
+    }
+
+    /**
+     * 请求路径是否匹配任意一条规则
+     * @param path
+     * @return
+     */
+    public boolean matches(String path) {
+        Node node = root;
+        int length = path.length();
+        for (int i = 0; ; i++) {
+            //前缀规则在路径结束或者遇到下一级分隔符时匹配
+            if (node.subtree && (i == length || path.charAt(i) == '/')) {
+                return true;
+            }
+            if (i == length) {
+                return node.exact;
+            }
+            node = node.child(path.charAt(i));
+            if (node == null) {
+                return false;
+            }
+        }
+    }
+
+    private static final class Node {
+
+        //子节点按字符排序，二分查找
+        private char[] keys = new char[0];
+
+        private Node[] children = new Node[0];
+
+        private boolean exact;
+
+        private boolean subtree;
+
+        private Node child(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        private Node childOrCreate(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insert = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insert);
+            System.arraycopy(children, 0, newChildren, 0, insert);
+            newKeys[insert] = c;
+            newChildren[insert] = new Node();
+            System.arraycopy(keys, insert, newKeys, insert + 1, keys.length - insert);
+            System.arraycopy(children, insert, newChildren, insert + 1, children.length - insert);
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[insert];
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.ljx.image;
+
+/*
+* 估算key最近的访问次数，Count-Min Sketch，4行计数器，每个计数器最大15
+* 累计记录次数达到计数器数量的10倍时所有计数减半，旧的热点会逐渐降温
+* 非线程安全，由调用方加锁*/
+class FrequencySketch {
+
+    private static final int ROWS = 4;
+
+    private static final int MAX_COUNT = 15;
+
+    private static final int[] SEEDS = {0x97cb3127, 0x3c4f5e2b, 0x5b8e8d6f, 0x2c1a7e33};
+
+    private final byte[][] table;
+
+    private final int mask;
+
+    private final int resetSize;
+
+    private int samples;
+
+    /**
+     * @param width 每行计数器数量，会调整为2的幂
+     */
+    FrequencySketch(int width) {
+        int size = Integer.highestOneBit(Math.max(16, width - 1) << 1);
+        this.table = new byte[ROWS][size];
+        this.mask = size - 1;
+        this.resetSize = size * 10;
+    }
+
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int row = 0; row < ROWS; row++) {
+            int index = index(hash, row);
+            if (table[row][index] < MAX_COUNT) {
+                table[row][index]++;
+                added = true;
+            }
+        }
+        if (added && ++samples >= resetSize) {
+            reset();
+        }
+    }
+
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < ROWS; row++) {
+            frequency = Math.min(frequency, table[row][index(hash, row)]);
+        }
+        return frequency;
+    }
+
+    private void reset() {
+        for (byte[] row : table) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] = (byte) (row[i] >>> 1);
+            }
+        }
+        samples /= 2;
+    }
+
+    private int index(int hash, int row) {
+        int h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static int spread(int hash) {
+        hash ^= hash >>> 17;
+        hash *= 0xed5ad4bb;
+        hash ^= hash >>> 11;
+        return hash;
+    }
+}
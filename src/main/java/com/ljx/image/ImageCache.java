@@ -0,0 +1,293 @@
+package com.ljx.image;
+
+import com.ljx.common.MetricsSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+* 热点图片缓存，图片内容保存在堆外的直接内存中，按总字节数限制大小
+* 淘汰策略参考W-TinyLFU：
+*   新图片先进入占1%容量的窗口区（LRU），窗口区淘汰的图片要进入主区时，
+*   与主区试用段最久未访问的图片比较最近访问频率，更高才能替换，偶尔访问一次的大图不会冲掉热点图片
+*   主区分为试用段和保护段（80%），试用段再次被访问的图片进入保护段
+* 访问频率由FrequencySketch估算，少量内存就能记录大量图片的访问情况*/
+@Component
+public class ImageCache implements MetricsSource {
+
+    @Value("${reggie.image.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${reggie.image.cache.max-size-mb:64}")
+    private long maxSizeMb;
+
+    //超过该大小的图片不缓存，直接从文件发送
+    @Value("${reggie.image.cache.max-entry-kb:1024}")
+    private long maxEntryKb;
+
+    private long maxBytes;
+
+    private long windowMaxBytes;
+
+    private long protectedMaxBytes;
+
+    //三个区都按访问顺序排列，最前面的是最久未访问的
+    private final LinkedHashMap<String, Entry> window = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LinkedHashMap<String, Entry> probation = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LinkedHashMap<String, Entry> protect = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long windowBytes;
+
+    private long probationBytes;
+
+    private long protectedBytes;
+
+    private FrequencySketch sketch;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        maxBytes = maxSizeMb * 1024 * 1024;
+        windowMaxBytes = Math.max(maxEntryKb * 1024, maxBytes / 100);
+        protectedMaxBytes = (maxBytes - windowMaxBytes) * 8 / 10;
+        //按平均32KB一张图片估算容量，计数器数量取其4倍
+        sketch = new FrequencySketch((int) Math.min(1 << 22, Math.max(1024, maxBytes / (32 * 1024) * 4)));
+    }
+
+    /**
+     * 是否缓存该大小的文件
+     * @param length
+     * @return
+     */
+    public boolean accepts(long length) {
+        return enabled && length <= maxEntryKb * 1024 && length <= windowMaxBytes;
+    }
+
+    /**
+     * 获取缓存的图片并记录一次访问
+     * @param file
+     * @return 未缓存时返回null
+     */
+    public Entry get(Path file) {
+        if (!enabled) {
+            return null;
+        }
+        String key = file.toString();
+        Entry entry;
+        synchronized (this) {
+            sketch.increment(key);
+            entry = window.get(key);
+            if (entry == null) {
+                entry = protect.get(key);
+            }
+            if (entry == null) {
+                entry = probation.remove(key);
+                if (entry != null) {
+                    //试用段再次访问，升入保护段，保护段超出时最久未访问的降回试用段
+                    probationBytes -= entry.length;
+                    protect.put(key, entry);
+                    protectedBytes += entry.length;
+                    demoteProtected();
+                }
+            }
+        }
+        (entry == null ? misses : hits).incrementAndGet();
+        return entry;
+    }
+
+    /**
+     * 把文件读入直接内存并放入缓存
+     * @param file
+     * @param length 文件长度
+     * @param lastModified 文件修改时间
+     * @return
+     * @throws IOException
+     */
+    public Entry load(Path file, long length, long lastModified) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) length);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("图片文件长度变化：" + file);
+                }
+            }
+        }
+        buffer.flip();
+        Entry entry = new Entry(buffer.asReadOnlyBuffer(), length, lastModified);
+        put(file.toString(), entry);
+        return entry;
+    }
+
+    /**
+     * 删除缓存，文件被替换或删除时调用
+     * @param file
+     */
+    public synchronized void invalidate(Path file) {
+        String key = file.toString();
+        Entry entry;
+        if ((entry = window.remove(key)) != null) {
+            windowBytes -= entry.length;
+        } else if ((entry = probation.remove(key)) != null) {
+            probationBytes -= entry.length;
+        } else if ((entry = protect.remove(key)) != null) {
+            protectedBytes -= entry.length;
+        }
+    }
+
+    /**
+     * 删除图片原图和各个版本的缓存，版本文件名为原图去掉扩展名再加.jpg
+     * @param name 图片文件名
+     */
+    public synchronized void invalidateImage(String name) {
+        String baseName = baseName(name);
+        List<Path> matched = new ArrayList<>();
+        for (Map<String, Entry> segment : Arrays.asList(window, probation, protect)) {
+            for (String key : segment.keySet()) {
+                Path file = Path.of(key);
+                if (baseName.equals(baseName(file.getFileName().toString()))) {
+                    matched.add(file);
+                }
+            }
+        }
+        matched.forEach(this::invalidate);
+    }
+
+    private static String baseName(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? name : name.substring(0, dot);
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        invalidate(Path.of(key));
+        window.put(key, entry);
+        windowBytes += entry.length;
+        while (windowBytes > windowMaxBytes) {
+            Iterator<Map.Entry<String, Entry>> eldest = window.entrySet().iterator();
+            Map.Entry<String, Entry> candidate = eldest.next();
+            eldest.remove();
+            windowBytes -= candidate.getValue().length;
+            admit(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    //窗口区淘汰的图片尝试进入主区
+    private void admit(String key, Entry candidate) {
+        long mainMaxBytes = maxBytes - windowMaxBytes;
+        int candidateFrequency = sketch.frequency(key);
+        while (probationBytes + protectedBytes + candidate.length > mainMaxBytes) {
+            LinkedHashMap<String, Entry> segment = probation.isEmpty() ? protect : probation;
+            if (segment.isEmpty()) {
+                rejected.incrementAndGet();
+                return;
+            }
+            Map.Entry<String, Entry> victim = segment.entrySet().iterator().next();
+            //访问频率不高于被淘汰者时不进入主区
+            if (candidateFrequency <= sketch.frequency(victim.getKey())) {
+                rejected.incrementAndGet();
+                return;
+            }
+            segment.remove(victim.getKey());
+            if (segment == probation) {
+                probationBytes -= victim.getValue().length;
+            } else {
+                protectedBytes -= victim.getValue().length;
+            }
+            evictions.incrementAndGet();
+        }
+        probation.put(key, candidate);
+        probationBytes += candidate.length;
+    }
+
+    private void demoteProtected() {
+        while (protectedBytes > protectedMaxBytes) {
+            Iterator<Map.Entry<String, Entry>> eldest = protect.entrySet().iterator();
+            Map.Entry<String, Entry> demoted = eldest.next();
+            eldest.remove();
+            protectedBytes -= demoted.getValue().length;
+            probation.put(demoted.getKey(), demoted.getValue());
+            probationBytes += demoted.getValue().length;
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "imageCache";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        long hitCount = hits.get();
+        long requests = hitCount + misses.get();
+        metrics.put("hits", hitCount);
+        metrics.put("misses", misses.get());
+        metrics.put("hitRatio", requests == 0 ? 0 : (double) hitCount / requests);
+        synchronized (this) {
+            metrics.put("entries", window.size() + probation.size() + protect.size());
+            metrics.put("residentBytes", windowBytes + probationBytes + protectedBytes);
+        }
+        metrics.put("maxBytes", maxBytes);
+        metrics.put("evictions", evictions.get());
+        metrics.put("rejected", rejected.get());
+        return metrics;
+    }
+
+    /*
+    * 缓存的图片，内容为只读的直接内存，发送时复制一个视图，不影响其他请求*/
+    public static final class Entry {
+
+        private final ByteBuffer content;
+
+        private final long length;
+
+        private final long lastModified;
+
+        private Entry(ByteBuffer content, long length, long lastModified) {
+            this.content = content;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * 指定范围的内容视图
+         * @param start
+         * @param end 包含
+         * @return
+         */
+        public ByteBuffer slice(long start, long end) {
+            ByteBuffer view = content.duplicate();
+            view.position((int) start).limit((int) end + 1);
+            return view;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package com.ljx.image;
+
+import com.ljx.common.CustomException;
+import com.ljx.common.MetricsSource;
+import com.ljx.mapper.ImageReferenceMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+* 清理没有被引用的图片
+* 菜品、套餐换图后旧图片和放弃编辑时上传的图片会一直留在图片目录中，后台定期清理：
+*   流式读取dish、setmeal、order_detail中的图片文件名，旧文件名按别名转换后放入ImageReferences
+*   按objects下的一级目录、各版本目录等拆分成多个任务并行遍历，修改时间早于宽限期且没有被引用的文件被清理
+* 宽限期用于保护刚上传还没有保存到菜品的图片；重复上传已有图片时ImageStore会更新文件修改时间
+* 清理方式：dry-run只生成报告，quarantine移动到隔离目录（保留一段时间后删除），delete直接删除
+* 多个实例共享图片目录时只应在一个实例上开启*/
+@Component
+@Slf4j
+public class ImageCollector implements MetricsSource {
+
+    public static final String DRY_RUN = "dry-run";
+
+    public static final String QUARANTINE = "quarantine";
+
+    public static final String DELETE = "delete";
+
+    public static final String QUARANTINE_DIR = ".quarantine";
+
+    private static final DateTimeFormatter DAY = DateTimeFormatter.BASIC_ISO_DATE;
+
+    //报告中最多列出的文件数
+    private static final int SAMPLE_LIMIT = 100;
+
+    @Autowired
+    private ImageReferenceMapper imageReferenceMapper;
+
+    @Autowired
+    private ImageStore imageStore;
+
+    @Autowired
+    private ImageCache imageCache;
+
+    @Value("${reggie.image.gc.enabled:false}")
+    private boolean enabled;
+
+    @Value("${reggie.image.gc.mode:dry-run}")
+    private String mode;
+
+    @Value("${reggie.image.gc.initial-delay-minutes:60}")
+    private long initialDelayMinutes;
+
+    @Value("${reggie.image.gc.interval-hours:24}")
+    private long intervalHours;
+
+    @Value("${reggie.image.gc.grace-hours:72}")
+    private long graceHours;
+
+    @Value("${reggie.image.gc.parallelism:4}")
+    private int parallelism;
+
+    @Value("${reggie.image.gc.quarantine-retention-days:30}")
+    private long quarantineRetentionDays;
+
+    private ScheduledExecutorService scheduler;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    //当前或最近一次清理的进度
+    private final AtomicLong tasksTotal = new AtomicLong();
+
+    private final AtomicLong tasksDone = new AtomicLong();
+
+    private final AtomicLong scanned = new AtomicLong();
+
+    private final AtomicLong orphans = new AtomicLong();
+
+    private final AtomicLong orphanBytes = new AtomicLong();
+
+    private final AtomicLong removed = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private final AtomicLong runs = new AtomicLong();
+
+    private volatile Map<String, Object> lastReport = Collections.emptyMap();
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        checkMode(mode);
+        scheduler = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "image-gc");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                run(mode);
+            } catch (Exception e) {
+                log.error("图片清理失败", e);
+            }
+        }, initialDelayMinutes, TimeUnit.HOURS.toMinutes(intervalHours), TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 执行一次清理
+     * @param mode dry-run、quarantine或delete
+     * @return 清理报告
+     */
+    public Map<String, Object> run(String mode) {
+        checkMode(mode);
+        if (!running.compareAndSet(false, true)) {
+            throw new CustomException("图片清理正在进行，请稍后再试");
+        }
+        try {
+            Path root = imageStore.getRoot();
+            if (root == null || !Files.isDirectory(root)) {
+                return Collections.emptyMap();
+            }
+            return collect(root, loadReferences(), mode, System.currentTimeMillis());
+        } finally {
+            running.set(false);
+        }
+    }
+
+    //流式读取所有引用，旧文件名同时记录原名和别名指向的内容文件名
+    private ImageReferences loadReferences() {
+        ImageReferences references = new ImageReferences();
+        imageReferenceMapper.streamImages((context) -> {
+            String image = context.getResultObject();
+            if (image == null || image.isEmpty()) {
+                return;
+            }
+            references.add(image);
+            String canonical = imageStore.canonicalName(image);
+            if (canonical != null && !canonical.equals(image)) {
+                references.add(canonical);
+            }
+        });
+        return references.seal();
+    }
+
+    Map<String, Object> collect(Path root, ImageReferences references, String mode, long now) {
+        long startTime = System.currentTimeMillis();
+        long deadline = now - TimeUnit.HOURS.toMillis(graceHours);
+        tasksDone.set(0);
+        scanned.set(0);
+        orphans.set(0);
+        orphanBytes.set(0);
+        removed.set(0);
+        failures.set(0);
+        List<String> samples = Collections.synchronizedList(new ArrayList<>());
+
+        List<Path> directories;
+        try {
+            directories = directories(root);
+        } catch (IOException e) {
+            throw new CustomException("读取图片目录失败");
+        }
+        //数据库中没有任何图片引用而目录中有图片时，多半是连错了库，不清理
+        if (references.size() == 0 && !directories.isEmpty()) {
+            log.warn("没有读取到任何图片引用，跳过本次清理");
+            return Collections.emptyMap();
+        }
+        tasksTotal.set(directories.size() + 1);
+
+        Path quarantine = root.resolve(QUARANTINE_DIR).resolve(LocalDate.now().format(DAY));
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, (runnable) -> {
+            Thread thread = new Thread(runnable, "image-gc-walker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            //图片目录下的旧文件只看第一层，子目录由各自的任务遍历
+            futures.add(executor.submit(() -> scan(root, root, 1, references, mode, deadline, quarantine, samples)));
+            for (Path directory : directories) {
+                futures.add(executor.submit(() -> scan(root, directory, Integer.MAX_VALUE, references, mode, deadline, quarantine, samples)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CustomException("图片清理被中断");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("图片清理失败", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (!DRY_RUN.equals(mode)) {
+            purgeQuarantine(root);
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("mode", mode);
+        report.put("startTime", startTime);
+        report.put("durationMillis", System.currentTimeMillis() - startTime);
+        report.put("references", references.size());
+        report.put("scanned", scanned.get());
+        report.put("orphans", orphans.get());
+        report.put("orphanBytes", orphanBytes.get());
+        report.put("removed", removed.get());
+        report.put("failures", failures.get());
+        synchronized (samples) {
+            report.put("samples", new ArrayList<>(samples));
+        }
+        lastReport = report;
+        runs.incrementAndGet();
+        log.info("图片清理完成，方式：{}，扫描{}个文件，无引用{}个，共{}字节，已处理{}个",
+                mode, scanned.get(), orphans.get(), orphanBytes.get(), removed.get());
+        return report;
+    }
+
+    //拆分并行遍历的任务：objects下的每个一级目录、每个版本目录和临时目录
+    private List<Path> directories(Path root) throws IOException {
+        List<Path> directories = new ArrayList<>();
+        for (Path parent : Arrays.asList(root.resolve(ImageStore.OBJECT_DIR), root.resolve(ImageVariants.VARIANT_DIR))) {
+            if (Files.isDirectory(parent)) {
+                try (Stream<Path> children = Files.list(parent)) {
+                    directories.addAll(children.filter(Files::isDirectory).collect(Collectors.toList()));
+                }
+            }
+        }
+        if (Files.isDirectory(root.resolve(ImageStore.TEMP_DIR))) {
+            directories.add(root.resolve(ImageStore.TEMP_DIR));
+        }
+        return directories;
+    }
+
+    private void scan(Path root, Path directory, int depth, ImageReferences references, String mode,
+                      long deadline, Path quarantine, List<String> samples) {
+        boolean temp = directory.equals(root.resolve(ImageStore.TEMP_DIR));
+        try (Stream<Path> files = Files.walk(directory, depth)) {
+            files.forEach((file) -> {
+                String name = file.getFileName().toString();
+                //图片目录第一层只处理旧图片，别名索引等其他文件跳过
+                if (depth == 1 && (name.equals(ImageStore.ALIAS_INDEX) || imageStore.canonicalName(name) == null)) {
+                    return;
+                }
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    //遍历期间被删除
+                    return;
+                }
+                if (!attributes.isRegularFile()) {
+                    return;
+                }
+                scanned.incrementAndGet();
+                //上传中断留下的临时文件不需要引用
+                if ((!temp && references.contains(name)) || attributes.lastModifiedTime().toMillis() > deadline) {
+                    return;
+                }
+                orphans.incrementAndGet();
+                orphanBytes.addAndGet(attributes.size());
+                String relative = root.relativize(file).toString();
+                if (samples.size() < SAMPLE_LIMIT) {
+                    samples.add(relative);
+                }
+                remove(file, root.relativize(file), mode, quarantine, temp);
+            });
+        } catch (IOException | UncheckedIOException e) {
+            failures.incrementAndGet();
+            log.warn("遍历图片目录失败：{}", directory, e);
+        } finally {
+            tasksDone.incrementAndGet();
+        }
+    }
+
+    private void remove(Path file, Path relative, String mode, Path quarantine, boolean temp) {
+        if (DRY_RUN.equals(mode)) {
+            return;
+        }
+        try {
+            if (DELETE.equals(mode) || temp) {
+                Files.deleteIfExists(file);
+            } else {
+                Path target = quarantine.resolve(relative);
+                Files.createDirectories(target.getParent());
+                Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            imageCache.invalidate(file);
+            removed.incrementAndGet();
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            log.warn("清理图片失败：{}", file, e);
+        }
+    }
+
+    //删除超过保留天数的隔离目录，目录名为隔离日期
+    private void purgeQuarantine(Path root) {
+        Path quarantineRoot = root.resolve(QUARANTINE_DIR);
+        if (!Files.isDirectory(quarantineRoot)) {
+            return;
+        }
+        LocalDate expired = LocalDate.now().minusDays(quarantineRetentionDays);
+        try (Stream<Path> days = Files.list(quarantineRoot)) {
+            for (Path day : days.collect(Collectors.toList())) {
+                LocalDate date;
+                try {
+                    date = LocalDate.parse(day.getFileName().toString(), DAY);
+                } catch (DateTimeParseException e) {
+                    continue;
+                }
+                if (date.isBefore(expired)) {
+                    deleteRecursively(day);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("清理隔离目录失败", e);
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static void checkMode(String mode) {
+        if (!DRY_RUN.equals(mode) && !QUARANTINE.equals(mode) && !DELETE.equals(mode)) {
+            throw new CustomException("不支持的图片清理方式：" + mode);
+        }
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "imageGc";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("running", running.get());
+        metrics.put("runs", runs.get());
+        metrics.put("tasksTotal", tasksTotal.get());
+        metrics.put("tasksDone", tasksDone.get());
+        metrics.put("scanned", scanned.get());
+        metrics.put("orphans", orphans.get());
+        metrics.put("orphanBytes", orphanBytes.get());
+        metrics.put("removed", removed.get());
+        metrics.put("failures", failures.get());
+        Map<String, Object> report = new LinkedHashMap<>(lastReport);
+        report.remove("samples");
+        metrics.put("lastReport", report);
+        return metrics;
+    }
+}
@@ -0,0 +1,75 @@
+package com.ljx.image;
+
+import java.util.Arrays;
+
+/*
+* 被引用的图片集合，只保存文件名（去掉扩展名）的64位哈希，排好序后二分查找
+* 每个文件名占8字节，百万级引用也只需要几MB
+* 哈希冲突只会让无引用的文件被误判为有引用而保留，不会误删*/
+class ImageReferences {
+
+    private long[] hashes = new long[1024];
+
+    private int size;
+
+    private boolean sorted;
+
+    void add(String name) {
+        if (sorted) {
+            throw new IllegalStateException("引用集合已经排序，不能再添加");
+        }
+        if (size == hashes.length) {
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        hashes[size++] = hash(baseName(name));
+    }
+
+    //排序并去重，之后只能查询
+    ImageReferences seal() {
+        Arrays.sort(hashes, 0, size);
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (unique == 0 || hashes[i] != hashes[unique - 1]) {
+                hashes[unique++] = hashes[i];
+            }
+        }
+        size = unique;
+        hashes = Arrays.copyOf(hashes, size);
+        sorted = true;
+        return this;
+    }
+
+    /**
+     * 文件是否被引用，版本文件扩展名与原图不同，只比较去掉扩展名的部分
+     * @param fileName
+     * @return
+     */
+    boolean contains(String fileName) {
+        if (!sorted) {
+            throw new IllegalStateException("引用集合还没有排序");
+        }
+        return Arrays.binarySearch(hashes, 0, size, hash(baseName(fileName))) >= 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    static String baseName(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? name : name.substring(0, dot);
+    }
+
+    //FNV-1a后再混合一次，使哈希值在整个long范围内均匀分布
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
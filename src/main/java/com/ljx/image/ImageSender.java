@@ -0,0 +1,201 @@
+package com.ljx.image;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.catalina.connector.CoyoteOutputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+* 把图片文件写到响应中
+* 支持ETag/Last-Modified条件请求（未修改返回304）、单个字节范围请求（206）和长期缓存头
+* 热点图片从ImageCache的直接内存写出，不经过堆内存，也不访问磁盘
+* 未缓存的图片在Tomcat支持sendfile时由Tomcat在请求结束后直接从文件发送到socket，否则用FileChannel.transferTo写出*/
+@Component
+@Slf4j
+public class ImageSender {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    //图片文件名唯一，内容不会变化，可以长期缓存
+    @Value("${reggie.image.cache-max-age-days:365}")
+    private long cacheMaxAgeDays;
+
+    @Autowired
+    private ImageCache imageCache;
+
+    /**
+     * 发送图片文件
+     * @param request
+     * @param response
+     * @param file 已经确认存在的文件
+     * @throws IOException 客户端断开等写出错误
+     */
+    public void send(HttpServletRequest request, HttpServletResponse response, Path file) throws IOException {
+        send(request, response, file, true);
+    }
+
+    /**
+     * 发送图片文件
+     * @param request
+     * @param response
+     * @param file 已经确认存在的文件
+     * @param immutable 为false时浏览器和代理每次使用前都要验证，用于请求的版本还没有生成、暂时返回原图的情况
+     * @throws IOException 客户端断开等写出错误
+     */
+    public void send(HttpServletRequest request, HttpServletResponse response, Path file, boolean immutable) throws IOException {
+        //命中缓存时使用缓存时的文件长度和修改时间，不再读取文件属性
+        ImageCache.Entry cached = imageCache.get(file);
+        long length;
+        long lastModified;
+        if (cached != null) {
+            length = cached.getLength();
+            lastModified = cached.getLastModified();
+        } else {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            length = attributes.size();
+            lastModified = attributes.lastModifiedTime().toMillis();
+        }
+        String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+
+        writeCacheHeaders(response, contentType(file.getFileName().toString()), immutable);
+        //内容未变化时返回304，由Spring处理If-None-Match和If-Modified-Since
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return;
+        }
+
+        long start = 0;
+        long end = length - 1;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null && ifRangeMatches(request, etag, lastModified)) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(range);
+                //多段范围请求很少见，直接返回完整内容
+                if (ranges.size() == 1) {
+                    start = ranges.get(0).getRangeStart(length);
+                    end = ranges.get(0).getRangeEnd(length);
+                    if (start >= length || start > end) {
+                        throw new IllegalArgumentException("范围超出文件长度：" + range);
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                return;
+            }
+            if (start != 0 || end != length - 1) {
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        long count = end - start + 1;
+        response.setContentLengthLong(count);
+        if ("HEAD".equals(request.getMethod()) || count == 0) {
+            return;
+        }
+
+        if (cached == null && imageCache.accepts(length)) {
+            cached = imageCache.load(file, length, lastModified);
+        }
+        if (cached != null) {
+            write(response.getOutputStream(), cached.slice(start, end));
+            return;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                long written = channel.transferTo(position, remaining, out);
+                if (written <= 0) {
+                    //文件在发送过程中被截断
+                    throw new IOException("图片文件长度变化：" + file);
+                }
+                position += written;
+                remaining -= written;
+            }
+        }
+    }
+
+    //Tomcat的输出流可以直接写入ByteBuffer，直接内存中的内容复制到socket缓冲区，不经过堆数组
+    private void write(OutputStream out, ByteBuffer content) throws IOException {
+        if (out instanceof CoyoteOutputStream) {
+            ((CoyoteOutputStream) out).write(content);
+            return;
+        }
+        WritableByteChannel channel = Channels.newChannel(out);
+        while (content.hasRemaining()) {
+            channel.write(content);
+        }
+    }
+
+    /**
+     * 根据文件名推断图片类型
+     * @param fileName
+     * @return
+     */
+    public static MediaType contentType(String fileName) {
+        return MediaTypeFactory.getMediaType(fileName).orElse(MediaType.APPLICATION_OCTET_STREAM);
+    }
+
+    private void writeCacheHeaders(HttpServletResponse response, MediaType contentType, boolean immutable) {
+        response.setContentType(contentType.toString());
+        response.setHeader("X-Content-Type-Options", "nosniff");
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CACHE_CONTROL, immutable
+                ? "public, max-age=" + TimeUnit.DAYS.toSeconds(cacheMaxAgeDays) + ", immutable" : "no-cache");
+    }
+
+    //If-Range与当前内容不一致时忽略Range，返回完整内容
+    private boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(etag);
+        }
+        try {
+            long date = request.getDateHeader(HttpHeaders.IF_RANGE);
+            return date >= 0 && lastModified / 1000 <= date / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.ljx.image;
+
+import com.ljx.common.MetricsSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+* 按内容寻址的图片存储
+* 文件名为内容的SHA-256加扩展名，按哈希前两级各两个字符分目录：objects/ab/cd/abcd...jpg
+* 同一张图片重复上传只保存一份；上传时边读边计算哈希写入临时文件，写完后原子改名，不会读到写了一半的文件
+* 以前按UUID命名、直接放在图片目录下的文件，启动后在后台迁移到内容存储，旧文件名记录在别名索引中，仍然可以访问*/
+@Component
+@Slf4j
+public class ImageStore implements MetricsSource {
+
+    public static final String OBJECT_DIR = "objects";
+
+    static final String TEMP_DIR = ".tmp";
+
+    static final String ALIAS_INDEX = "aliases.idx";
+
+    //文件名只允许字母、数字、下划线、横线和一个扩展名，不能包含路径
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_-]+(\\.[A-Za-z0-9]{1,8})?");
+
+    private static final Pattern CONTENT_NAME = Pattern.compile("[0-9a-f]{64}(\\.[a-z0-9]{1,8})?");
+
+    @Value("${reggie.path}")
+    private String basePath;
+
+    @Value("${reggie.image.store.migrate-legacy:true}")
+    private boolean migrateLegacy;
+
+    //旧文件名 -> 内容文件名
+    private final Map<String, String> aliases = new ConcurrentHashMap<>();
+
+    private Path root;
+
+    private Path aliasIndex;
+
+    private final AtomicLong stored = new AtomicLong();
+
+    private final AtomicLong deduplicated = new AtomicLong();
+
+    private final AtomicLong migrated = new AtomicLong();
+
+    @PostConstruct
+    public void start() throws IOException {
+        root = Paths.get(basePath).toAbsolutePath().normalize();
+        aliasIndex = root.resolve(ALIAS_INDEX);
+        //图片目录在第一次上传时创建
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        loadAliases();
+        if (migrateLegacy) {
+            Thread thread = new Thread(this::migrate, "image-store-migrate");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * 保存图片，边读边计算哈希，不在内存中缓存整个文件
+     * @param in 调用方负责关闭
+     * @param originalFilename 用于确定扩展名
+     * @return 内容文件名
+     * @throws IOException
+     */
+    public String save(InputStream in, String originalFilename) throws IOException {
+        String extension = extension(originalFilename);
+        MessageDigest digest = sha256();
+        //临时文件与目标在同一个文件系统，才能原子改名
+        Files.createDirectories(root.resolve(TEMP_DIR));
+        Path temp = Files.createTempFile(root.resolve(TEMP_DIR), "upload-", ".tmp");
+        try {
+            Files.copy(new DigestInputStream(in, digest), temp, StandardCopyOption.REPLACE_EXISTING);
+            String name = toHex(digest.digest()) + extension;
+            Path target = path(name);
+            if (Files.exists(target)) {
+                //更新修改时间，清理无引用图片时重新计算宽限期，避免刚上传的已有图片在保存到菜品前被清理
+                touch(target);
+                deduplicated.incrementAndGet();
+                return name;
+            }
+            Files.createDirectories(target.getParent());
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                //同一内容并发上传，另一个请求已经写入
+                touch(target);
+                deduplicated.incrementAndGet();
+                return name;
+            }
+            stored.incrementAndGet();
+            return name;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * 把请求中的文件名转换为内容文件名，旧文件名通过别名索引转换
+     * @param name
+     * @return 文件名不合法时返回null
+     */
+    public String canonicalName(String name) {
+        if (name == null || !NAME.matcher(name).matches()) {
+            return null;
+        }
+        return aliases.getOrDefault(name, name);
+    }
+
+    /**
+     * 查找请求的图片文件
+     * @param name 请求中的文件名，可以是旧文件名
+     * @return 文件名不合法或文件不存在时返回null
+     */
+    public Path locate(String name) {
+        String canonical = canonicalName(name);
+        if (canonical == null) {
+            return null;
+        }
+        Path file = path(canonical);
+        if (Files.isRegularFile(file)) {
+            return file;
+        }
+        //查找期间旧文件刚好被迁移，按新的别名再找一次
+        String migratedName = aliases.get(name);
+        if (migratedName != null && !migratedName.equals(canonical)) {
+            file = path(migratedName);
+            return Files.isRegularFile(file) ? file : null;
+        }
+        return null;
+    }
+
+    /**
+     * 图片目录
+     * @return
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * 文件名对应的文件路径，还没有迁移的旧文件返回图片目录下的原文件
+     * @param name 合法的文件名
+     * @return
+     */
+    public Path path(String name) {
+        if (CONTENT_NAME.matcher(name).matches()) {
+            return root.resolve(OBJECT_DIR).resolve(name.substring(0, 2)).resolve(name.substring(2, 4)).resolve(name);
+        }
+        return root.resolve(name);
+    }
+
+    //把图片目录下的旧文件移入内容存储，已经迁移过的文件重复执行也只会得到相同结果
+    void migrate() {
+        List<Path> legacy;
+        try (Stream<Path> files = Files.list(root)) {
+            legacy = files.filter(Files::isRegularFile)
+                    .filter((file) -> !file.getFileName().toString().equals(ALIAS_INDEX))
+                    .filter((file) -> NAME.matcher(file.getFileName().toString()).matches())
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            log.error("读取图片目录失败，旧图片没有迁移", e);
+            return;
+        }
+        for (Path file : legacy) {
+            String legacyName = file.getFileName().toString();
+            try {
+                String name;
+                try (InputStream in = Files.newInputStream(file)) {
+                    name = save(in, legacyName);
+                }
+                if (!name.equals(legacyName)) {
+                    addAlias(legacyName, name);
+                }
+                //别名写入后再删除旧文件，中途停止时旧文件仍然可以访问
+                Files.deleteIfExists(file);
+                migrated.incrementAndGet();
+            } catch (IOException e) {
+                log.warn("迁移图片失败：{}", legacyName, e);
+            }
+        }
+        if (!legacy.isEmpty()) {
+            log.info("旧图片迁移完成，共{}个", migrated.get());
+        }
+    }
+
+    private static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            log.warn("更新图片修改时间失败：{}", file, e);
+        }
+    }
+
+    private void loadAliases() throws IOException {
+        if (!Files.exists(aliasIndex)) {
+            return;
+        }
+        for (String line : Files.readAllLines(aliasIndex, StandardCharsets.UTF_8)) {
+            String[] parts = line.trim().split(" ");
+            //最后一行可能在写入时中断，不完整的行忽略
+            if (parts.length == 2 && CONTENT_NAME.matcher(parts[1]).matches()) {
+                aliases.put(parts[0], parts[1]);
+            }
+        }
+    }
+
+    //追加写入别名索引并刷盘，再对外可见
+    private synchronized void addAlias(String alias, String name) throws IOException {
+        byte[] line = (alias + " " + name + "\n").getBytes(StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(aliasIndex, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(line);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        aliases.put(alias, name);
+    }
+
+    private static String extension(String filename) {
+        if (filename == null) {
+            return "";
+        }
+        int dot = filename.lastIndexOf('.');
+        if (dot < 0) {
+            return "";
+        }
+        String extension = filename.substring(dot).toLowerCase();
+        return extension.matches("\\.[a-z0-9]{1,8}") ? extension : "";
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "imageStore";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("stored", stored.get());
+        metrics.put("deduplicated", deduplicated.get());
+        metrics.put("aliases", aliases.size());
+        metrics.put("migrated", migrated.get());
+        return metrics;
+    }
+}
@@ -0,0 +1,260 @@
+package com.ljx.image;
+
+import com.ljx.common.MetricsSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+* 图片的固定宽度版本，移动端列表、购物车等小图不再下载原图
+* 上传后在后台线程生成各个宽度的版本，下载时没有对应版本再按需生成，同一版本并发请求只生成一次
+* 生成线程数和等待队列都有上限，队列满时上传后不再预生成，下载直接返回原图
+* ImageIO没有WebP编码器，版本统一保存为压缩质量较低的JPEG*/
+@Component
+@Slf4j
+public class ImageVariants implements MetricsSource {
+
+    //版本文件保存在图片目录下的这个子目录中，按版本名再分一层
+    public static final String VARIANT_DIR = ".variants";
+
+    @Value("${reggie.path}")
+    private String basePath;
+
+    //版本名:宽度，逗号分隔
+    @Value("${reggie.image.variants:thumb:120,list:240,detail:750}")
+    private String variants;
+
+    @Value("${reggie.image.variant-quality:0.8}")
+    private float quality;
+
+    @Value("${reggie.image.variant-workers:2}")
+    private int workers;
+
+    @Value("${reggie.image.variant-queue-capacity:256}")
+    private int queueCapacity;
+
+    //按需生成时请求线程最多等待的时间，超时返回原图
+    @Value("${reggie.image.variant-wait-ms:3000}")
+    private long waitMillis;
+
+    private final Map<String, Integer> widths = new LinkedHashMap<>();
+
+    //正在生成的版本，key为 版本名/文件名
+    private final Map<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor executor;
+
+    private final AtomicLong generated = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        for (String entry : variants.split(",")) {
+            String[] parts = entry.trim().split(":");
+            widths.put(parts[0], Integer.parseInt(parts[1]));
+        }
+        executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), (runnable) -> {
+                    Thread thread = new Thread(runnable, "image-variant");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    public boolean isVariant(String size) {
+        return size != null && widths.containsKey(size);
+    }
+
+    /**
+     * 上传后在后台生成所有版本
+     * @param name 图片文件名
+     * @param original 原图
+     */
+    public void generateAsync(String name, Path original) {
+        for (String size : widths.keySet()) {
+            submit(name, original, size);
+        }
+    }
+
+    /**
+     * 获取指定版本的文件，不存在时生成
+     * @param name 图片文件名
+     * @param original 原图
+     * @param size 版本名
+     * @return 生成失败、队列已满或等待超时时返回null，由调用方发送原图且不能长期缓存
+     */
+    public Path resolve(String name, Path original, String size) {
+        Path variant = variantPath(name, size);
+        if (Files.exists(variant)) {
+            return variant;
+        }
+        CompletableFuture<Path> future = submit(name, original, size);
+        if (future == null) {
+            return null;
+        }
+        try {
+            return future.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 删除图片的所有版本，原图被替换或删除时调用
+     * @param name
+     */
+    public void delete(String name) {
+        for (String size : widths.keySet()) {
+            try {
+                Files.deleteIfExists(variantPath(name, size));
+            } catch (IOException e) {
+                log.warn("删除图片版本失败：{}/{}", size, name, e);
+            }
+        }
+    }
+
+    //同一版本正在生成时返回同一个future，队列满时返回null
+    private CompletableFuture<Path> submit(String name, Path original, String size) {
+        String key = size + "/" + name;
+        CompletableFuture<Path> created = new CompletableFuture<>();
+        CompletableFuture<Path> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return existing;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    created.complete(generate(original, variantPath(name, size), widths.get(size)));
+                } catch (Throwable e) {
+                    failures.incrementAndGet();
+                    log.warn("生成图片版本失败：{}", key, e);
+                    created.completeExceptionally(e);
+                } finally {
+                    inFlight.remove(key, created);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            inFlight.remove(key, created);
+            created.completeExceptionally(e);
+            return null;
+        }
+        return created;
+    }
+
+    private Path generate(Path original, Path target, int width) throws IOException {
+        if (Files.exists(target)) {
+            return target;
+        }
+        BufferedImage source = ImageIO.read(original.toFile());
+        if (source == null) {
+            throw new IOException("无法识别的图片格式：" + original);
+        }
+        //原图不比目标宽时不放大，只按原尺寸重新压缩，之后同样直接使用版本文件
+        BufferedImage scaled = scale(source, Math.min(width, source.getWidth()));
+
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), ".tmp-", ".jpg");
+        try {
+            writeJpeg(scaled, temp);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        generated.incrementAndGet();
+        return target;
+    }
+
+    //每次最多缩小一半，缩小倍数很大时比一次缩放清晰
+    static BufferedImage scale(BufferedImage source, int width) {
+        BufferedImage current = source;
+        int currentWidth = source.getWidth();
+        int currentHeight = source.getHeight();
+        int height = Math.max(1, (int) Math.round((double) source.getHeight() * width / source.getWidth()));
+        do {
+            currentWidth = Math.max(width, currentWidth / 2);
+            currentHeight = currentWidth == width ? height : Math.max(height, currentHeight / 2);
+            //JPEG不支持透明，透明部分填充白色
+            BufferedImage next = new BufferedImage(currentWidth, currentHeight, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, currentWidth, currentHeight);
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (currentWidth > width);
+        return current;
+    }
+
+    private void writeJpeg(BufferedImage image, Path target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(target.toFile())) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private Path variantPath(String name, String size) {
+        int dot = name.lastIndexOf('.');
+        String baseName = dot > 0 ? name.substring(0, dot) : name;
+        return Paths.get(basePath, VARIANT_DIR, size, baseName + ".jpg");
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "imageVariants";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("generated", generated.get());
+        metrics.put("coalesced", coalesced.get());
+        metrics.put("rejected", rejected.get());
+        metrics.put("failures", failures.get());
+        metrics.put("inFlight", inFlight.size());
+        metrics.put("queued", executor.getQueue().size());
+        return metrics;
+    }
+}
@@ -0,0 +1,103 @@
+package com.ljx.loader;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.ljx.dto.DishDto;
+import com.ljx.entity.Dish;
+import com.ljx.entity.DishFlavor;
+import com.ljx.mapper.DishFlavorMapper;
+import com.ljx.service.CategoryService;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/*
+* 批量组装DishDto
+* 先收集所有分类id和菜品id，分类名称从分类快照读取，口味只执行一次 IN (...) 查询，再在内存中拼装，
+* 避免逐条调用categoryService.getById和dishFlavorService.list造成的N+1查询*/
+@Component
+public class DishDtoLoader {
+
+    //分类名称从分类快照中读取，不访问数据库
+    //CategoryServiceImpl依赖DishService，而DishServiceImpl依赖本类，这里延迟注入避免循环依赖
+    @Lazy
+    @Autowired
+    private CategoryService categoryService;
+
+    @Autowired
+    private DishFlavorMapper dishFlavorMapper;
+
+    /**
+     * 将菜品列表批量组装为DishDto列表，顺序与传入列表一致
+     * @param dishes 菜品列表
+     * @param withCategoryName 是否填充分类名称
+     * @param withFlavors 是否填充口味数据
+     * @return
+     */
+    public List<DishDto> load(List<Dish> dishes, boolean withCategoryName, boolean withFlavors) {
+        if (dishes == null || dishes.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<Long, String> categoryNames = withCategoryName
+                ? loadCategoryNames(dishes.stream().map(Dish::getCategoryId).collect(Collectors.toSet()))
+                : Collections.emptyMap();
+
+        Map<Long, List<DishFlavor>> flavors = withFlavors
+                ? loadFlavors(dishes.stream().map(Dish::getId).collect(Collectors.toSet()))
+                : Collections.emptyMap();
+
+        return dishes.stream().map((item) -> {
+            DishDto dishDto = new DishDto();
+            BeanUtils.copyProperties(item, dishDto);
+            if (withCategoryName) {
+                dishDto.setCategoryName(categoryNames.get(item.getCategoryId()));
+            }
+            if (withFlavors) {
+                dishDto.setFlavors(flavors.getOrDefault(item.getId(), new ArrayList<>()));
+            }
+            return dishDto;
+        }).collect(Collectors.toList());
+    }
+
+    /**
+     * 根据分类id批量查询分类名称，读取分类快照
+     * @param categoryIds
+     * @return 分类id -> 分类名称
+     */
+    public Map<Long, String> loadCategoryNames(Collection<Long> categoryIds) {
+        Set<Long> ids = nonNull(categoryIds);
+        if (ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return categoryService.getNameMap(ids);
+    }
+
+    /**
+     * 根据菜品id批量查询口味数据，只执行一次查询
+     * @param dishIds
+     * @return 菜品id -> 口味列表
+     */
+    public Map<Long, List<DishFlavor>> loadFlavors(Collection<Long> dishIds) {
+        Set<Long> ids = nonNull(dishIds);
+        if (ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        //select * from dish_flavor where dish_id in (...)
+        LambdaQueryWrapper<DishFlavor> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.in(DishFlavor::getDishId, ids);
+        List<DishFlavor> dishFlavors = dishFlavorMapper.selectList(queryWrapper);
+        return dishFlavors.stream().collect(Collectors.groupingBy(DishFlavor::getDishId));
+    }
+
+    //去掉null并去重，空集合时不发起查询（IN ()是非法SQL）
+    private Set<Long> nonNull(Collection<Long> ids) {
+        if (ids == null) {
+            return Collections.emptySet();
+        }
+        return ids.stream().filter(Objects::nonNull).collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,24 @@
+package com.ljx.mapper;
+
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.ResultType;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
+
+@Mapper
+public interface ImageReferenceMapper {
+
+    /**
+     * 逐行读取菜品、套餐和订单明细引用的图片文件名，不把整个结果集加载到内存
+     * fetchSize为Integer.MIN_VALUE时MySQL驱动按流式结果集返回
+     * @param handler
+     */
+    @Select("select image from dish where image is not null " +
+            "union all select image from setmeal where image is not null " +
+            "union all select image from order_detail where image is not null")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(String.class)
+    void streamImages(ResultHandler<String> handler);
+}
@@ -2,8 +2,25 @@ package com.ljx.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.ljx.entity.OrderDetail;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 @Mapper
 public interface OrderDetailMapper extends BaseMapper<OrderDetail> {
+
+    /**
+     * 多行插入订单明细，id需要提前设置
+     * @param list
+     * @return
+     */
+    @Insert("<script>" +
+            "insert into order_detail (id, name, order_id, dish_id, setmeal_id, dish_flavor, number, amount, image) values " +
+            "<foreach collection='list' item='d' separator=','>" +
+            "(#{d.id}, #{d.name}, #{d.orderId}, #{d.dishId}, #{d.setmealId}, #{d.dishFlavor}, #{d.number}, #{d.amount}, #{d.image})" +
+            "</foreach>" +
+            "</script>")
+    int insertBatch(@Param("list") List<OrderDetail> list);
 }
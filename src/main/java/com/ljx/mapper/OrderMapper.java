@@ -2,8 +2,25 @@ package com.ljx.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.ljx.entity.Orders;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 @Mapper
 public interface OrderMapper extends BaseMapper<Orders> {
+
+    /**
+     * 多行插入订单，id需要提前设置
+     * @param list
+     * @return
+     */
+    @Insert("<script>" +
+            "insert into orders (id, number, status, user_id, address_book_id, order_time, checkout_time, pay_method, amount, remark, user_name, phone, address, consignee) values " +
+            "<foreach collection='list' item='o' separator=','>" +
+            "(#{o.id}, #{o.number}, #{o.status}, #{o.userId}, #{o.addressBookId}, #{o.orderTime}, #{o.checkoutTime}, #{o.payMethod}, #{o.amount}, #{o.remark}, #{o.userName}, #{o.phone}, #{o.address}, #{o.consignee})" +
+            "</foreach>" +
+            "</script>")
+    int insertBatch(@Param("list") List<Orders> list);
 }
@@ -2,8 +2,41 @@ package com.ljx.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.ljx.entity.ShoppingCart;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.List;
 
 @Mapper
 public interface ShoppingCartMapper extends BaseMapper<ShoppingCart> {
+
+    /**
+     * 多行插入购物车，id需要提前设置
+     * @param list
+     * @return
+     */
+    @Insert("<script>" +
+            "insert into shopping_cart (id, name, image, user_id, dish_id, setmeal_id, dish_flavor, number, amount, create_time) values " +
+            "<foreach collection='list' item='c' separator=','>" +
+            "(#{c.id}, #{c.name}, #{c.image}, #{c.userId}, #{c.dishId}, #{c.setmealId}, #{c.dishFlavor}, #{c.number}, #{c.amount}, #{c.createTime})" +
+            "</foreach>" +
+            "</script>")
+    int insertBatch(@Param("list") List<ShoppingCart> list);
+
+    /**
+     * 在数据库中原子地修改数量，不需要先查询
+     * @param userId
+     * @param dishId 菜品id，为空时按套餐id修改
+     * @param setmealId
+     * @param delta 数量变化
+     * @return 修改的行数，为0表示购物车中没有该菜品或套餐
+     */
+    @Update("<script>" +
+            "update shopping_cart set number = number + #{delta} where user_id = #{userId} and " +
+            "<choose><when test='dishId != null'>dish_id = #{dishId}</when><otherwise>setmeal_id = #{setmealId} and dish_id is null</otherwise></choose>" +
+            "</script>")
+    int incrementNumber(@Param("userId") Long userId, @Param("dishId") Long dishId,
+                        @Param("setmealId") Long setmealId, @Param("delta") int delta);
 }
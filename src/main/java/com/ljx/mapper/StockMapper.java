@@ -0,0 +1,32 @@
+package com.ljx.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.ljx.entity.Stock;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
+
+@Mapper
+public interface StockMapper extends BaseMapper<Stock> {
+
+    /**
+     * 回写已售数量，后台线程调用，不填充更新人
+     * @param id
+     * @param sold
+     * @return
+     */
+    @Update("update stock set sold = #{sold} where id = #{id}")
+    int updateSold(@Param("id") Long id, @Param("sold") int sold);
+
+    /**
+     * 设置当日限量，同一天同一菜品、套餐已有记录时只修改限量，依赖(stock_date, dish_id)和(stock_date, setmeal_id)唯一键
+     * 并发设置时不会插入重复记录
+     * @param stock
+     * @return
+     */
+    @Insert("insert into stock (id, dish_id, setmeal_id, stock_date, total, sold, create_time, update_time, create_user, update_user) " +
+            "values (#{id}, #{dishId}, #{setmealId}, #{stockDate}, #{total}, 0, #{createTime}, #{updateTime}, #{createUser}, #{updateUser}) " +
+            "on duplicate key update total = values(total), update_time = values(update_time), update_user = values(update_user)")
+    int upsertTotal(Stock stock);
+}
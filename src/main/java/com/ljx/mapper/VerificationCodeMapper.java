@@ -0,0 +1,79 @@
+package com.ljx.mapper;
+
+import com.ljx.entity.VerificationCode;
+import org.apache.ibatis.annotations.*;
+
+import java.time.LocalDateTime;
+
+@Mapper
+public interface VerificationCodeMapper {
+
+    /**
+     * 保存验证码，已有的验证码被替换，校验次数清零
+     * @param phone
+     * @param code
+     * @param expireTime
+     * @return
+     */
+    @Insert("insert into verification_code (phone, code, expire_time, attempts) values (#{phone}, #{code}, #{expireTime}, 0) " +
+            "on duplicate key update code = values(code), expire_time = values(expire_time), attempts = 0")
+    int upsert(@Param("phone") String phone, @Param("code") String code, @Param("expireTime") LocalDateTime expireTime);
+
+    /**
+     * 未过期的验证码校验次数加一
+     * @param phone
+     * @param now
+     * @return 没有未过期的验证码时返回0
+     */
+    @Update("update verification_code set attempts = attempts + 1 where phone = #{phone} and expire_time > #{now}")
+    int incrementAttempts(@Param("phone") String phone, @Param("now") LocalDateTime now);
+
+    @Select("select phone, code, expire_time, attempts from verification_code where phone = #{phone}")
+    VerificationCode selectByPhone(@Param("phone") String phone);
+
+    /**
+     * 按验证码删除，同一验证码并发使用时只有一次能删除成功
+     * @param phone
+     * @param code
+     * @return
+     */
+    @Delete("delete from verification_code where phone = #{phone} and code = #{code}")
+    int deleteByCode(@Param("phone") String phone, @Param("code") String code);
+
+    @Delete("delete from verification_code where expire_time <= #{now}")
+    int deleteExpired(@Param("now") LocalDateTime now);
+
+    /**
+     * 新建满令牌的桶，已存在时忽略
+     * @param key
+     * @param capacity
+     * @param now 毫秒
+     * @return
+     */
+    @Insert("insert ignore into rate_limit_bucket (bucket_key, tokens, refill_time) values (#{key}, #{capacity}, #{now})")
+    int insertBucket(@Param("key") String key, @Param("capacity") int capacity, @Param("now") long now);
+
+    /**
+     * 按经过的时间补充令牌后取一个令牌，补充和扣减在一条语句中完成
+     * @param key
+     * @param capacity
+     * @param millisPerToken
+     * @param now 毫秒
+     * @return 没有可用令牌时返回0
+     */
+    @Update("update rate_limit_bucket set " +
+            "tokens = least(#{capacity}, tokens + greatest(#{now} - refill_time, 0) / #{millisPerToken}) - 1, " +
+            "refill_time = greatest(refill_time, #{now}) " +
+            "where bucket_key = #{key} " +
+            "and least(#{capacity}, tokens + greatest(#{now} - refill_time, 0) / #{millisPerToken}) >= 1")
+    int consume(@Param("key") String key, @Param("capacity") int capacity,
+                @Param("millisPerToken") long millisPerToken, @Param("now") long now);
+
+    /**
+     * 删除最后一次使用早于指定时间的桶，这些桶已经补满
+     * @param before 毫秒
+     * @return
+     */
+    @Delete("delete from rate_limit_bucket where refill_time < #{before}")
+    int deleteIdleBuckets(@Param("before") long before);
+}
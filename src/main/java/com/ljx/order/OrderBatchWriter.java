@@ -0,0 +1,76 @@
+package com.ljx.order;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.ljx.entity.OrderDetail;
+import com.ljx.entity.Orders;
+import com.ljx.mapper.OrderDetailMapper;
+import com.ljx.mapper.OrderMapper;
+import com.ljx.mapper.ShoppingCartMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/*
+* 批量写入订单
+* 订单和明细使用多行insert，购物车按id删除，调用方负责开启事务*/
+@Component
+public class OrderBatchWriter {
+
+    @Autowired
+    private OrderMapper orderMapper;
+
+    @Autowired
+    private OrderDetailMapper orderDetailMapper;
+
+    @Autowired
+    private ShoppingCartMapper shoppingCartMapper;
+
+    /**
+     * 写入订单、订单明细并删除购物车记录
+     * @param pendingOrders
+     */
+    public void write(List<PendingOrder> pendingOrders) {
+        List<Orders> orders = new ArrayList<>(pendingOrders.size());
+        List<OrderDetail> orderDetails = new ArrayList<>();
+        List<Long> shoppingCartIds = new ArrayList<>();
+        for (PendingOrder pendingOrder : pendingOrders) {
+            orders.add(pendingOrder.getOrders());
+            orderDetails.addAll(pendingOrder.getOrderDetails());
+            shoppingCartIds.addAll(pendingOrder.getShoppingCartIds());
+        }
+        if (orders.isEmpty()) {
+            return;
+        }
+        orderMapper.insertBatch(orders);
+        if (!orderDetails.isEmpty()) {
+            orderDetailMapper.insertBatch(orderDetails);
+        }
+        if (!shoppingCartIds.isEmpty()) {
+            shoppingCartMapper.deleteBatchIds(shoppingCartIds);
+        }
+    }
+
+    /**
+     * 跳过已经存在的订单后再写入，用于重放时可能已经写过的订单
+     * @param pendingOrders
+     * @return 实际写入的订单数
+     */
+    public int writeIfAbsent(List<PendingOrder> pendingOrders) {
+        if (pendingOrders.isEmpty()) {
+            return 0;
+        }
+        List<Long> ids = pendingOrders.stream().map((item) -> item.getOrders().getId()).collect(Collectors.toList());
+        //select id from orders where id in (...)
+        LambdaQueryWrapper<Orders> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.select(Orders::getId).in(Orders::getId, ids);
+        Set<Long> existing = orderMapper.selectList(queryWrapper).stream().map(Orders::getId).collect(Collectors.toSet());
+
+        List<PendingOrder> absent = pendingOrders.stream()
+                .filter((item) -> !existing.contains(item.getOrders().getId()))
+                .collect(Collectors.toList());
+        write(absent);
+        return absent.size();
+    }
+}
@@ -0,0 +1,254 @@
+package com.ljx.order;
+
+import com.ljx.common.CustomException;
+import com.ljx.common.MetricsSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+* 订单组提交
+* 并发提交的订单先进入队列，由单独的提交线程在一个时间窗口内或凑够一批后，
+* 用一个事务、多行insert写入orders和order_detail，再按id删除对应的购物车记录
+* 整批失败时退回为逐个订单单独提交，每个调用方只会收到自己订单的结果
+* 调用方最多等待wait-timeout-ms，提交线程出现任何异常时本批所有订单都会得到结果，不会一直阻塞请求线程*/
+@Component
+@Slf4j
+public class OrderGroupCommitter implements MetricsSource {
+
+    @Autowired
+    private OrderBatchWriter orderBatchWriter;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${reggie.order.group-commit.enabled:false}")
+    private boolean enabled;
+
+    @Value("${reggie.order.group-commit.window-ms:5}")
+    private long windowMs;
+
+    @Value("${reggie.order.group-commit.batch-size:64}")
+    private int batchSize;
+
+    @Value("${reggie.order.group-commit.queue-capacity:4096}")
+    private int queueCapacity;
+
+    @Value("${reggie.order.group-commit.wait-timeout-ms:10000}")
+    private long waitTimeoutMs;
+
+    private BlockingQueue<PendingOrder> queue;
+
+    private Thread worker;
+
+    private volatile boolean running;
+
+    private final AtomicLong batches = new AtomicLong();
+
+    private final AtomicLong committedOrders = new AtomicLong();
+
+    private final AtomicLong failedOrders = new AtomicLong();
+
+    private final AtomicLong fallbackBatches = new AtomicLong();
+
+    private final AtomicLong timedOutOrders = new AtomicLong();
+
+    private volatile int maxBatch;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+        running = true;
+        worker = new Thread(this::run, "order-group-commit");
+        worker.setDaemon(true);
+        worker.start();
+        log.info("订单组提交已开启，窗口{}ms，每批最多{}单", windowMs, batchSize);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (worker == null) {
+            return;
+        }
+        running = false;
+        worker.interrupt();
+        worker.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 提交订单，返回该订单的写入结果
+     * @param pendingOrder
+     * @return
+     */
+    public CompletableFuture<Void> submit(PendingOrder pendingOrder) {
+        if (!running || !queue.offer(pendingOrder)) {
+            throw new CustomException("下单人数过多，请稍后再试");
+        }
+        return pendingOrder.getFuture();
+    }
+
+    /**
+     * 提交订单并等待写入完成，失败时抛出该订单自己的异常
+     * @param pendingOrder
+     */
+    public void submitAndWait(PendingOrder pendingOrder) {
+        CompletableFuture<Void> future = submit(pendingOrder);
+        try {
+            future.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new CustomException("下单失败，请稍后再试");
+        } catch (TimeoutException e) {
+            throw timeout(pendingOrder);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw timeout(pendingOrder);
+        }
+    }
+
+    private CustomException timeout(PendingOrder pendingOrder) {
+        timedOutOrders.incrementAndGet();
+        if (pendingOrder.abandon()) {
+            //还在队列中，提交线程取到后会跳过，订单不会写入
+            return new CustomException("下单人数过多，请稍后再试");
+        }
+        log.error("订单{}等待提交超时，提交线程正在写入，结果未知", pendingOrder.getOrders().getId());
+        return new CustomException("订单提交超时，请稍后在订单列表中查看");
+    }
+
+    private void run() {
+        List<PendingOrder> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingOrder first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                //窗口从第一单到达开始计算，凑够一批立即提交
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMs);
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingOrder next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                //停止时把队列中剩余的订单取出来提交完
+                queue.drainTo(batch, batchSize - batch.size());
+            }
+            if (!batch.isEmpty()) {
+                try {
+                    flush(batch);
+                } catch (Throwable e) {
+                    //任何异常都要让本批的调用方得到结果，提交线程继续处理后面的订单
+                    log.error("订单组提交异常，本批未完成的订单全部失败，共{}单", batch.size(), e);
+                    for (PendingOrder pendingOrder : batch) {
+                        if (!pendingOrder.getFuture().isDone()) {
+                            fail(pendingOrder, new CustomException("下单失败，请稍后再试"));
+                        }
+                    }
+                }
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+    }
+
+    private void flush(List<PendingOrder> batch) {
+        //同一用户在一批里只保留第一单，后面的订单使用的是同一份购物车，不能重复下单
+        Set<Long> userIds = new HashSet<>();
+        List<PendingOrder> accepted = new ArrayList<>(batch.size());
+        for (PendingOrder pendingOrder : batch) {
+            //调用方已经等待超时放弃的订单不再写入
+            if (!pendingOrder.claim()) {
+                continue;
+            }
+            if (userIds.add(pendingOrder.getOrders().getUserId())) {
+                accepted.add(pendingOrder);
+            } else {
+                fail(pendingOrder, new CustomException("订单正在提交，请勿重复下单"));
+            }
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult((status) -> orderBatchWriter.write(accepted));
+        } catch (RuntimeException e) {
+            //整批失败时逐个重新提交，找出出错的订单，其他订单不受影响
+            log.warn("订单组提交失败，改为逐单提交，共{}单：{}", accepted.size(), e.getMessage());
+            fallbackBatches.incrementAndGet();
+            for (PendingOrder pendingOrder : accepted) {
+                try {
+                    transactionTemplate.executeWithoutResult((status) -> orderBatchWriter.write(Collections.singletonList(pendingOrder)));
+                    complete(pendingOrder);
+                } catch (RuntimeException single) {
+                    log.error("订单{}提交失败", pendingOrder.getOrders().getId(), single);
+                    fail(pendingOrder, new CustomException("下单失败，请稍后再试"));
+                }
+            }
+            batches.incrementAndGet();
+            return;
+        }
+        accepted.forEach(this::complete);
+        batches.incrementAndGet();
+        if (accepted.size() > maxBatch) {
+            maxBatch = accepted.size();
+        }
+    }
+
+    private void complete(PendingOrder pendingOrder) {
+        committedOrders.incrementAndGet();
+        pendingOrder.getFuture().complete(null);
+    }
+
+    private void fail(PendingOrder pendingOrder, RuntimeException e) {
+        failedOrders.incrementAndGet();
+        pendingOrder.getFuture().completeExceptionally(e);
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "orderGroupCommit";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        long batchCount = batches.get();
+        long orderCount = committedOrders.get();
+        metrics.put("enabled", enabled);
+        metrics.put("queued", queue == null ? 0 : queue.size());
+        metrics.put("batches", batchCount);
+        metrics.put("orders", orderCount);
+        metrics.put("failedOrders", failedOrders.get());
+        metrics.put("fallbackBatches", fallbackBatches.get());
+        metrics.put("timedOutOrders", timedOutOrders.get());
+        metrics.put("avgBatchSize", batchCount == 0 ? 0 : (double) orderCount / batchCount);
+        metrics.put("maxBatchSize", maxBatch);
+        return metrics;
+    }
+}
@@ -0,0 +1,514 @@
+package com.ljx.order;
+
+import com.ljx.common.CustomException;
+import com.ljx.common.JacksonObjectMapper;
+import com.ljx.common.MetricsSource;
+import com.ljx.entity.OrderDetail;
+import com.ljx.entity.Orders;
+import com.ljx.service.StockService;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/*
+* 订单日志
+* 下单时把组装好的订单追加到本地内存映射的日志段文件并刷盘，刷盘成功即返回下单成功，
+* 后台线程再把日志中的订单批量写入orders和order_detail，写入后推进检查点并删除已经写完的日志段
+* 启动时从检查点开始重放还没有写入数据库的订单，数据库中已存在的订单会被跳过
+* 一批连续失败多次后改为逐单写入：数据库不可用等暂时性错误继续重试；
+* 违反约束、数据过长等其他错误说明订单本身有问题，写入死信文件并归还库存，不再阻塞后面的订单
+*
+* 日志记录格式：长度(int) + CRC32(int) + 追加时间(long) + 订单JSON，长度为0表示段内没有更多记录*/
+@Component
+@Slf4j
+public class OrderJournal implements MetricsSource {
+
+    private static final int HEADER_BYTES = 16;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    private static final String DEAD_LETTER_FILE = "dead-letter.log";
+
+    private static final long MAX_RETRY_DELAY_MS = 5000;
+
+    @Autowired
+    private OrderBatchWriter orderBatchWriter;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private StockService stockService;
+
+    @Value("${reggie.order.journal.enabled:false}")
+    private boolean enabled;
+
+    @Value("${reggie.order.journal.path:journal}")
+    private String path;
+
+    @Value("${reggie.order.journal.segment-size-mb:64}")
+    private int segmentSizeMb;
+
+    @Value("${reggie.order.journal.batch-size:200}")
+    private int batchSize;
+
+    @Value("${reggie.order.journal.poll-interval-ms:50}")
+    private long pollIntervalMs;
+
+    //一批连续失败该次数后逐单写入，找出有问题的订单
+    @Value("${reggie.order.journal.max-attempts:5}")
+    private int maxAttempts;
+
+    private final JacksonObjectMapper objectMapper = new JacksonObjectMapper();
+
+    private Path directory;
+
+    //段序号 -> 日志段，追加和滚动时加锁
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+    private Segment active;
+
+    //已经刷盘、还没有写入数据库的订单
+    private final ConcurrentLinkedQueue<Entry> pending = new ConcurrentLinkedQueue<>();
+
+    //有订单还没有写入数据库的用户，同一用户在写入前不能重复下单
+    private final Map<Long, Integer> pendingUsers = new ConcurrentHashMap<>();
+
+    private Thread drainer;
+
+    private volatile boolean running;
+
+    //正在写入数据库的一批中最早的订单，用于计算延迟
+    private volatile Entry drainingHead;
+
+    private volatile int drainingSize;
+
+    private volatile String lastError;
+
+    private final AtomicLong appended = new AtomicLong();
+
+    private final AtomicLong drained = new AtomicLong();
+
+    private final AtomicLong replayed = new AtomicLong();
+
+    private final AtomicLong drainErrors = new AtomicLong();
+
+    private final AtomicLong skipped = new AtomicLong();
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        directory = Paths.get(path).toAbsolutePath();
+        Files.createDirectories(directory);
+        replay();
+        running = true;
+        drainer = new Thread(this::drain, "order-journal-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+        log.info("订单日志已开启，目录{}，重放{}单", directory, replayed.get());
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (drainer == null) {
+            return;
+        }
+        //日志已经落盘，停止时不需要等待全部写入数据库，下次启动会重放
+        running = false;
+        drainer.interrupt();
+        drainer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 追加订单到日志并刷盘，返回时订单已经持久化
+     * @param pendingOrder
+     */
+    public void append(PendingOrder pendingOrder) {
+        byte[] payload;
+        try {
+            payload = objectMapper.writeValueAsBytes(JournalRecord.of(pendingOrder));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Long userId = pendingOrder.getOrders().getUserId();
+        long timestamp = System.currentTimeMillis();
+        synchronized (this) {
+            if (pendingUsers.containsKey(userId)) {
+                throw new CustomException("订单正在提交，请勿重复下单");
+            }
+            int length = HEADER_BYTES + payload.length;
+            if (active.buffer.remaining() < length) {
+                if (length > segmentBytes()) {
+                    throw new IllegalStateException("订单过大，无法写入日志：" + length + "字节");
+                }
+                roll();
+            }
+            MappedByteBuffer buffer = active.buffer;
+            int start = buffer.position();
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            //先写内容再写长度，刷盘前崩溃只会留下长度为0或校验失败的记录
+            buffer.putInt(start + 4, (int) crc.getValue());
+            buffer.putLong(start + 8, timestamp);
+            buffer.put(start + HEADER_BYTES, payload);
+            buffer.putInt(start, payload.length);
+            buffer.position(start + length);
+            buffer.force(start, length);
+
+            pending.add(new Entry(pendingOrder, active.index, start + length, timestamp));
+            pendingUsers.merge(userId, 1, Integer::sum);
+            appended.incrementAndGet();
+        }
+    }
+
+    private int segmentBytes() {
+        return segmentSizeMb * 1024 * 1024;
+    }
+
+    private void roll() {
+        long index = active == null ? 0 : active.index + 1;
+        active = openSegment(index);
+        segments.put(index, active);
+    }
+
+    private Segment openSegment(long index) {
+        Path file = directory.resolve(String.format("%020d%s", index, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            //映射建立后关闭channel不影响映射
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes());
+            return new Segment(index, file, buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*
+    * 从检查点开始读取全部日志段，未写入数据库的订单放回待写入队列*/
+    private synchronized void replay() throws IOException {
+        long[] checkpoint = readCheckpoint();
+        List<Long> indexes = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map((file) -> file.getFileName().toString())
+                    .filter((name) -> name.endsWith(SEGMENT_SUFFIX))
+                    .forEach((name) -> indexes.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()))));
+        }
+        Collections.sort(indexes);
+
+        for (Long index : indexes) {
+            if (index < checkpoint[0]) {
+                //检查点之前的日志段已经全部写入数据库
+                Files.deleteIfExists(directory.resolve(String.format("%020d%s", index, SEGMENT_SUFFIX)));
+                continue;
+            }
+            Segment segment = openSegment(index);
+            segments.put(index, segment);
+            int position = index == checkpoint[0] ? (int) checkpoint[1] : 0;
+            segment.buffer.position(scan(segment, position));
+            active = segment;
+        }
+        if (active == null) {
+            roll();
+        }
+    }
+
+    //读取日志段中从position开始的记录，返回最后一条完整记录的结束位置
+    private int scan(Segment segment, int position) {
+        MappedByteBuffer buffer = segment.buffer;
+        while (position + HEADER_BYTES <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            if (length < 0 || position + HEADER_BYTES + length > buffer.capacity()) {
+                log.warn("订单日志{}在{}处长度异常，忽略之后的内容", segment.file.getFileName(), position);
+                truncate(buffer, position);
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(position + HEADER_BYTES, payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                log.warn("订单日志{}在{}处校验失败，忽略之后的内容", segment.file.getFileName(), position);
+                truncate(buffer, position);
+                break;
+            }
+            long timestamp = buffer.getLong(position + 8);
+            position += HEADER_BYTES + length;
+            try {
+                PendingOrder pendingOrder = objectMapper.readValue(payload, JournalRecord.class).toPendingOrder();
+                pending.add(new Entry(pendingOrder, segment.index, position, timestamp));
+                pendingUsers.merge(pendingOrder.getOrders().getUserId(), 1, Integer::sum);
+                replayed.incrementAndGet();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return position;
+    }
+
+    //清空写了一半的记录，后续追加从这里开始
+    private void truncate(MappedByteBuffer buffer, int position) {
+        for (int i = position; i < buffer.capacity(); i++) {
+            buffer.put(i, (byte) 0);
+        }
+        buffer.force();
+    }
+
+    private void drain() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        long retryDelay = pollIntervalMs;
+        int attempts = 0;
+        while (running) {
+            //上一批写入失败时原样重试，保证按日志顺序推进检查点
+            while (batch.size() < batchSize) {
+                Entry entry = pending.poll();
+                if (entry == null) {
+                    break;
+                }
+                batch.add(entry);
+            }
+            try {
+                if (batch.isEmpty()) {
+                    Thread.sleep(pollIntervalMs);
+                    continue;
+                }
+                drainingHead = batch.get(0);
+                drainingSize = batch.size();
+                if (attempts < maxAttempts) {
+                    List<PendingOrder> orders = new ArrayList<>(batch.size());
+                    batch.stream().filter((entry) -> !entry.deadLettered).forEach((entry) -> orders.add(entry.order));
+                    transactionTemplate.executeWithoutResult((status) -> orderBatchWriter.writeIfAbsent(orders));
+                } else {
+                    writeOneByOne(batch);
+                }
+
+                Entry last = batch.get(batch.size() - 1);
+                writeCheckpoint(last.segmentIndex, last.end);
+                //检查点落盘后这一批就完成了，之后的步骤出错也不能再重试这一批
+                List<Entry> done = new ArrayList<>(batch);
+                batch.clear();
+                drainingHead = null;
+                drainingSize = 0;
+                retryDelay = pollIntervalMs;
+                attempts = 0;
+                for (Entry entry : done) {
+                    pendingUsers.computeIfPresent(entry.order.getOrders().getUserId(), (key, count) -> count == 1 ? null : count - 1);
+                }
+                drained.addAndGet(done.stream().filter((entry) -> !entry.deadLettered).count());
+                deleteSegmentsBefore(last.segmentIndex);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException | IOException e) {
+                attempts++;
+                drainErrors.incrementAndGet();
+                lastError = e.getMessage();
+                log.error("订单日志写入数据库失败，{}ms后重试", retryDelay, e);
+                try {
+                    Thread.sleep(retryDelay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MS);
+            }
+        }
+    }
+
+    //逐单写入，暂时性错误直接抛出，整批稍后重试；其他错误的订单写入死信文件
+    private void writeOneByOne(List<Entry> batch) throws IOException {
+        for (Entry entry : batch) {
+            if (entry.deadLettered) {
+                continue;
+            }
+            try {
+                transactionTemplate.executeWithoutResult((status) ->
+                        orderBatchWriter.writeIfAbsent(Collections.singletonList(entry.order)));
+            } catch (RuntimeException e) {
+                if (isTransient(e)) {
+                    throw e;
+                }
+                deadLetter(entry, e);
+            }
+        }
+    }
+
+    static boolean isTransient(Throwable e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof TransactionException;
+    }
+
+    //追加到死信文件并刷盘后归还库存，订单内容保留在死信文件中供人工处理
+    private void deadLetter(Entry entry, RuntimeException error) throws IOException {
+        Map<String, Object> letter = new LinkedHashMap<>();
+        letter.put("time", System.currentTimeMillis());
+        letter.put("error", String.valueOf(error.getMessage()));
+        letter.put("record", JournalRecord.of(entry.order));
+        byte[] line = (objectMapper.writeValueAsString(letter) + "\n").getBytes(StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(directory.resolve(DEAD_LETTER_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(line);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        entry.deadLettered = true;
+        skipped.incrementAndGet();
+        Orders orders = entry.order.getOrders();
+        log.error("订单{}无法写入数据库，已移入死信文件", orders.getId(), error);
+        try {
+            LocalDate stockDate = orders.getOrderTime() == null ? LocalDate.now() : orders.getOrderTime().toLocalDate();
+            stockService.release(stockDate, entry.order.getOrderDetails());
+        } catch (RuntimeException e) {
+            log.error("订单{}归还库存失败", orders.getId(), e);
+        }
+    }
+
+    private long[] readCheckpoint() throws IOException {
+        Path file = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(file)) {
+            return new long[]{0, 0};
+        }
+        String[] parts = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim().split(" ");
+        return new long[]{Long.parseLong(parts[0]), Long.parseLong(parts[1])};
+    }
+
+    //先写临时文件并刷盘，再原子替换检查点
+    private void writeCheckpoint(long segmentIndex, int offset) throws IOException {
+        Path temp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap((segmentIndex + " " + offset).getBytes(StandardCharsets.UTF_8)));
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    //删除失败只记录日志，检查点之前的日志段下次启动时会再次删除
+    private void deleteSegmentsBefore(long segmentIndex) {
+        List<Segment> drainedSegments;
+        synchronized (this) {
+            Map<Long, Segment> head = segments.headMap(segmentIndex);
+            drainedSegments = new ArrayList<>(head.values());
+            head.clear();
+        }
+        for (Segment segment : drainedSegments) {
+            try {
+                Files.deleteIfExists(segment.file);
+            } catch (IOException e) {
+                //Windows上还在映射中的文件不能删除
+                log.warn("删除订单日志段{}失败，下次启动时删除", segment.file.getFileName(), e);
+            }
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "orderJournal";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        Entry oldest = drainingHead != null ? drainingHead : pending.peek();
+        metrics.put("enabled", enabled);
+        metrics.put("appended", appended.get());
+        metrics.put("replayed", replayed.get());
+        metrics.put("drained", drained.get());
+        metrics.put("pendingOrders", pending.size() + drainingSize);
+        metrics.put("lagMillis", oldest == null ? 0 : System.currentTimeMillis() - oldest.timestamp);
+        synchronized (this) {
+            metrics.put("segments", segments.size());
+        }
+        metrics.put("drainErrors", drainErrors.get());
+        metrics.put("skipped", skipped.get());
+        metrics.put("lastError", lastError);
+        return metrics;
+    }
+
+    private static final class Segment {
+        private final long index;
+        private final Path file;
+        private final MappedByteBuffer buffer;
+
+        private Segment(long index, Path file, MappedByteBuffer buffer) {
+            this.index = index;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    private static final class Entry {
+        private final PendingOrder order;
+        private final long segmentIndex;
+        //该记录在日志段中的结束位置，写入数据库后作为检查点
+        private final int end;
+        private final long timestamp;
+        //已经移入死信文件，整批重试时跳过，只由写入线程访问
+        private boolean deadLettered;
+
+        private Entry(PendingOrder order, long segmentIndex, int end, long timestamp) {
+            this.order = order;
+            this.segmentIndex = segmentIndex;
+            this.end = end;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /*
+    * 日志中保存的订单内容*/
+    @Data
+    static class JournalRecord {
+        private Orders orders;
+        private List<OrderDetail> orderDetails;
+        private List<Long> shoppingCartIds;
+
+        static JournalRecord of(PendingOrder pendingOrder) {
+            JournalRecord record = new JournalRecord();
+            record.setOrders(pendingOrder.getOrders());
+            record.setOrderDetails(pendingOrder.getOrderDetails());
+            record.setShoppingCartIds(pendingOrder.getShoppingCartIds());
+            return record;
+        }
+
+        PendingOrder toPendingOrder() {
+            return new PendingOrder(orders, orderDetails, shoppingCartIds);
+        }
+    }
+}
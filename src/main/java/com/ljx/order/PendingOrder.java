@@ -0,0 +1,46 @@
+package com.ljx.order;
+
+import com.ljx.entity.OrderDetail;
+import com.ljx.entity.Orders;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+* 已经组装好、等待写入数据库的订单
+* 包含订单、订单明细以及下单后要删除的购物车记录id*/
+@Getter
+public class PendingOrder {
+
+    private final Orders orders;
+
+    private final List<OrderDetail> orderDetails;
+
+    private final List<Long> shoppingCartIds;
+
+    //写入完成后由提交线程完成，失败时携带该订单自己的异常
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    //0等待提交，1已被提交线程取走，2调用方等待超时后放弃，提交线程不再写入
+    @Getter(AccessLevel.NONE)
+    private final AtomicInteger state = new AtomicInteger();
+
+    public PendingOrder(Orders orders, List<OrderDetail> orderDetails, List<Long> shoppingCartIds) {
+        this.orders = orders;
+        this.orderDetails = orderDetails;
+        this.shoppingCartIds = shoppingCartIds;
+    }
+
+    //提交线程写入前调用，调用方已经放弃时返回false
+    boolean claim() {
+        return state.compareAndSet(0, 1);
+    }
+
+    //调用方等待超时时调用，提交线程已经取走时返回false，写入结果未知
+    boolean abandon() {
+        return state.compareAndSet(0, 2);
+    }
+}
@@ -0,0 +1,186 @@
+package com.ljx.search;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.ljx.common.MetricsSource;
+import com.ljx.entity.Dish;
+import com.ljx.entity.Setmeal;
+import com.ljx.mapper.DishMapper;
+import com.ljx.mapper.SetmealMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/*
+* 菜品和套餐名称的内存搜索索引，以及输入提示使用的前缀树
+* 第一次搜索时从数据库加载全部名称，之后由service在事务提交后增量更新
+* 后台管理要能搜到停售的菜品，所以停售的也加入索引，提示结果中带上售卖状态，移动端提示时过滤*/
+@Component
+@Slf4j
+public class MenuSearchIndex implements MetricsSource {
+
+    //这里直接使用mapper，避免和DishServiceImpl、SetmealServiceImpl形成循环依赖
+    @Autowired
+    private DishMapper dishMapper;
+
+    @Autowired
+    private SetmealMapper setmealMapper;
+
+    private final NgramIndex dishIndex = new NgramIndex();
+
+    private final NgramIndex setmealIndex = new NgramIndex();
+
+    //菜品名称、菜品商品码、套餐名称的前缀树
+    private final PrefixTrie suggestTrie = new PrefixTrie();
+
+    private volatile boolean dishLoaded;
+
+    private volatile boolean setmealLoaded;
+
+    /**
+     * 根据名称搜索菜品
+     * @param name
+     * @return 按相关度排序的菜品id
+     */
+    public List<Long> searchDishes(String name) {
+        if (!dishLoaded) {
+            loadDishes();
+        }
+        return dishIndex.search(name);
+    }
+
+    /**
+     * 根据名称搜索套餐
+     * @param name
+     * @return 按相关度排序的套餐id
+     */
+    public List<Long> searchSetmeals(String name) {
+        if (!setmealLoaded) {
+            loadSetmeals();
+        }
+        return setmealIndex.search(name);
+    }
+
+    /**
+     * 输入提示，根据前缀匹配菜品名称、菜品商品码和套餐名称
+     * @param prefix
+     * @param limit 最多返回条数
+     * @param onSaleOnly 只返回起售的菜品和套餐
+     * @return
+     */
+    public List<Suggestion> suggest(String prefix, int limit, boolean onSaleOnly) {
+        if (!dishLoaded) {
+            loadDishes();
+        }
+        if (!setmealLoaded) {
+            loadSetmeals();
+        }
+        return onSaleOnly ? suggestTrie.suggest(prefix, limit, Suggestion::isOnSale) : suggestTrie.suggest(prefix, limit);
+    }
+
+    //以下更新方法与加载使用同一把锁：加载期间提交的修改会等加载完成后再应用，不会被加载结果覆盖
+    //索引还没有加载时直接忽略，加载时会从数据库读到最新数据
+
+    public synchronized void putDish(Long id, String name, String code, Integer status) {
+        if (dishLoaded) {
+            dishIndex.put(id, name);
+            suggestTrie.put(dishKey(id), dishTerms(id, name, code, status));
+        }
+    }
+
+    public synchronized void putSetmeal(Long id, String name, Integer status) {
+        if (setmealLoaded) {
+            setmealIndex.put(id, name);
+            suggestTrie.put(setmealKey(id), setmealTerms(id, name, status));
+        }
+    }
+
+    public synchronized void removeSetmeals(Collection<Long> ids) {
+        if (setmealLoaded) {
+            for (Long id : ids) {
+                setmealIndex.remove(id);
+                suggestTrie.remove(setmealKey(id));
+            }
+        }
+    }
+
+    private synchronized void loadDishes() {
+        if (dishLoaded) {
+            return;
+        }
+        //select id,name,code,status from dish
+        LambdaQueryWrapper<Dish> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.select(Dish::getId, Dish::getName, Dish::getCode, Dish::getStatus);
+        Map<Long, String> names = new HashMap<>();
+        for (Dish dish : dishMapper.selectList(queryWrapper)) {
+            names.put(dish.getId(), dish.getName());
+            suggestTrie.put(dishKey(dish.getId()), dishTerms(dish.getId(), dish.getName(), dish.getCode(), dish.getStatus()));
+        }
+        dishIndex.rebuild(names);
+        dishLoaded = true;
+        log.info("菜品名称索引加载完成，共{}条", names.size());
+    }
+
+    private synchronized void loadSetmeals() {
+        if (setmealLoaded) {
+            return;
+        }
+        //select id,name,status from setmeal
+        LambdaQueryWrapper<Setmeal> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.select(Setmeal::getId, Setmeal::getName, Setmeal::getStatus);
+        Map<Long, String> names = new HashMap<>();
+        for (Setmeal setmeal : setmealMapper.selectList(queryWrapper)) {
+            names.put(setmeal.getId(), setmeal.getName());
+            suggestTrie.put(setmealKey(setmeal.getId()), setmealTerms(setmeal.getId(), setmeal.getName(), setmeal.getStatus()));
+        }
+        setmealIndex.rebuild(names);
+        setmealLoaded = true;
+        log.info("套餐名称索引加载完成，共{}条", names.size());
+    }
+
+    private static String dishKey(Long id) {
+        return Suggestion.TYPE_DISH + ":" + id;
+    }
+
+    private static String setmealKey(Long id) {
+        return Suggestion.TYPE_SETMEAL + ":" + id;
+    }
+
+    private static Map<String, Suggestion> dishTerms(Long id, String name, String code, Integer status) {
+        Map<String, Suggestion> terms = new HashMap<>();
+        if (name != null) {
+            terms.put(name, new Suggestion(id, Suggestion.TYPE_DISH, name, null, status));
+        }
+        if (code != null && !code.isEmpty()) {
+            terms.put(code, new Suggestion(id, Suggestion.TYPE_DISH, name, code, status));
+        }
+        return terms;
+    }
+
+    private static Map<String, Suggestion> setmealTerms(Long id, String name, Integer status) {
+        if (name == null) {
+            return Collections.emptyMap();
+        }
+        return Collections.singletonMap(name, new Suggestion(id, Suggestion.TYPE_SETMEAL, name, null, status));
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "menuSearchIndex";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("dishLoaded", dishLoaded);
+        metrics.put("dishes", dishIndex.size());
+        metrics.put("dishGrams", dishIndex.gramCount());
+        metrics.put("setmealLoaded", setmealLoaded);
+        metrics.put("setmeals", setmealIndex.size());
+        metrics.put("setmealGrams", setmealIndex.gramCount());
+        metrics.put("suggestEntries", suggestTrie.size());
+        metrics.put("suggestNodes", suggestTrie.nodeCount());
+        return metrics;
+    }
+}
@@ -0,0 +1,209 @@
+package com.ljx.search;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+* 基于n-gram的倒排索引，用于名称的模糊搜索（相当于 LIKE '%x%'）
+* 按字符（码点）切分，单字和相邻两个字都建立索引，中文不需要分词
+* 查询时用二元组求交集得到候选，再用contains校验，结果与LIKE一致，并按相关度排序*/
+public class NgramIndex {
+
+    //gram -> 包含该gram的文档id
+    private final Map<String, Set<Long>> postings = new HashMap<>();
+
+    //文档id -> 规范化后的名称
+    private final Map<Long, String> documents = new HashMap<>();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 新增或更新文档
+     * @param id
+     * @param text 名称
+     */
+    public void put(Long id, String text) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(id);
+            if (text == null) {
+                return;
+            }
+            String normalized = normalize(text);
+            documents.put(id, normalized);
+            for (String gram : grams(normalized)) {
+                postings.computeIfAbsent(gram, (k) -> new HashSet<>()).add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //用全量数据重建索引
+    public void rebuild(Map<Long, String> texts) {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            documents.clear();
+            texts.forEach(this::put);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 搜索名称中包含query的文档，按相关度排序：
+     * 完全相同 > 以query开头 > 匹配位置靠前 > 名称较短
+     * @param query 搜索词
+     * @return 排好序的文档id
+     */
+    public List<Long> search(String query) {
+        String normalized = normalize(query);
+        if (normalized.isEmpty()) {
+            return new ArrayList<>();
+        }
+        lock.readLock().lock();
+        try {
+            Set<Long> candidates = candidates(normalized);
+            List<Match> matches = new ArrayList<>();
+            for (Long id : candidates) {
+                String text = documents.get(id);
+                int position = text.indexOf(normalized);
+                if (position >= 0) {
+                    matches.add(new Match(id, text, normalized, position));
+                }
+            }
+            Collections.sort(matches);
+            List<Long> ids = new ArrayList<>(matches.size());
+            for (Match match : matches) {
+                ids.add(match.id);
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int gramCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //从最短的倒排列表开始求交集
+    private Set<Long> candidates(String query) {
+        List<String> queryGrams = queryGrams(query);
+        List<Set<Long>> lists = new ArrayList<>(queryGrams.size());
+        for (String gram : queryGrams) {
+            Set<Long> ids = postings.get(gram);
+            if (ids == null) {
+                return Collections.emptySet();
+            }
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+        Set<Long> result = new HashSet<>(lists.get(0));
+        for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+            result.retainAll(lists.get(i));
+        }
+        return result;
+    }
+
+    private void removeInternal(Long id) {
+        String old = documents.remove(id);
+        if (old == null) {
+            return;
+        }
+        for (String gram : grams(old)) {
+            Set<Long> ids = postings.get(gram);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    //建索引：所有单字和相邻两个字
+    static Set<String> grams(String text) {
+        int[] codePoints = text.codePoints().toArray();
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i < codePoints.length; i++) {
+            grams.add(new String(codePoints, i, 1));
+            if (i + 1 < codePoints.length) {
+                grams.add(new String(codePoints, i, 2));
+            }
+        }
+        return grams;
+    }
+
+    //查询：只有一个字时用单字，否则只用二元组，选择性更好
+    static List<String> queryGrams(String query) {
+        int[] codePoints = query.codePoints().toArray();
+        List<String> grams = new ArrayList<>();
+        if (codePoints.length == 1) {
+            grams.add(query);
+            return grams;
+        }
+        for (int i = 0; i + 1 < codePoints.length; i++) {
+            grams.add(new String(codePoints, i, 2));
+        }
+        return grams;
+    }
+
+    //只忽略大小写，与MySQL默认排序规则下的LIKE一致，空白是名称的一部分，不去掉
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder builder = new StringBuilder(text.length());
+        text.codePoints()
+                .map(Character::toLowerCase)
+                .forEach(builder::appendCodePoint);
+        return builder.toString();
+    }
+
+    private static final class Match implements Comparable<Match> {
+        private final Long id;
+        private final int rank;
+        private final int position;
+        private final int length;
+
+        private Match(Long id, String text, String query, int position) {
+            this.id = id;
+            this.rank = text.equals(query) ? 0 : (position == 0 ? 1 : 2);
+            this.position = position;
+            this.length = text.length();
+        }
+
+        @Override
+        public int compareTo(Match other) {
+            if (rank != other.rank) return Integer.compare(rank, other.rank);
+            if (position != other.position) return Integer.compare(position, other.position);
+            if (length != other.length) return Integer.compare(length, other.length);
+            return id.compareTo(other.id);
+        }
+    }
+}
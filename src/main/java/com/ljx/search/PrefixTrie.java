@@ -0,0 +1,238 @@
+package com.ljx.search;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/*
+* 前缀树，用于输入提示
+* 每个节点的子节点用有序char数组 + 二分查找保存，比每个节点一个HashMap占用内存小得多
+* 同一个文档可以有多个词条（例如菜品名称和商品码），更新文档时先删除旧词条再插入新词条*/
+public class PrefixTrie {
+
+    private static final char[] NO_KEYS = new char[0];
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private final Node root = new Node();
+
+    //文档key（类型:id） -> 该文档插入的词条，用于增量更新
+    private final Map<String, List<Entry>> documents = new HashMap<>();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int nodeCount = 1;
+
+    /**
+     * 新增或替换文档的全部词条
+     * @param documentKey 文档key
+     * @param terms 词条 -> 提示结果
+     */
+    public void put(String documentKey, Map<String, Suggestion> terms) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(documentKey);
+            List<Entry> entries = new ArrayList<>(terms.size());
+            terms.forEach((term, suggestion) -> {
+                String normalized = NgramIndex.normalize(term);
+                if (normalized.isEmpty()) {
+                    return;
+                }
+                Node node = root;
+                for (int i = 0; i < normalized.length(); i++) {
+                    node = node.childOrCreate(normalized.charAt(i));
+                }
+                if (node.suggestions.isEmpty()) {
+                    node.suggestions = new ArrayList<>(1);
+                }
+                node.suggestions.add(suggestion);
+                entries.add(new Entry(normalized, suggestion));
+            });
+            documents.put(documentKey, entries);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String documentKey) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(documentKey);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            root.keys = NO_KEYS;
+            root.children = NO_CHILDREN;
+            root.suggestions = Collections.emptyList();
+            documents.clear();
+            nodeCount = 1;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 查询以prefix开头的词条，较短的词条优先，同一文档只返回一次
+     * @param prefix
+     * @param limit 最多返回条数
+     * @return
+     */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        return suggest(prefix, limit, suggestion -> true);
+    }
+
+    /**
+     * 查询以prefix开头的词条，只返回满足条件的结果
+     * 在遍历时过滤，过滤掉的词条不占用返回条数
+     * @param prefix
+     * @param limit 最多返回条数
+     * @param filter
+     * @return
+     */
+    public List<Suggestion> suggest(String prefix, int limit, Predicate<Suggestion> filter) {
+        String normalized = NgramIndex.normalize(prefix);
+        List<Suggestion> result = new ArrayList<>();
+        if (normalized.isEmpty() || limit <= 0) {
+            return result;
+        }
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            for (int i = 0; i < normalized.length() && node != null; i++) {
+                node = node.child(normalized.charAt(i));
+            }
+            if (node == null) {
+                return result;
+            }
+            //按层遍历，保证短词条排在前面
+            Set<String> seen = new HashSet<>();
+            Deque<Node> queue = new ArrayDeque<>();
+            queue.add(node);
+            while (!queue.isEmpty() && result.size() < limit) {
+                Node current = queue.poll();
+                for (Suggestion suggestion : current.suggestions) {
+                    if (filter.test(suggestion) && seen.add(suggestion.getType() + ":" + suggestion.getId())) {
+                        result.add(suggestion);
+                        if (result.size() >= limit) {
+                            break;
+                        }
+                    }
+                }
+                Collections.addAll(queue, current.children);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int nodeCount() {
+        lock.readLock().lock();
+        try {
+            return nodeCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removeInternal(String documentKey) {
+        List<Entry> entries = documents.remove(documentKey);
+        if (entries == null) {
+            return;
+        }
+        for (Entry entry : entries) {
+            removeEntry(root, entry, 0);
+        }
+    }
+
+    //删除词条，返回该节点是否已经为空可以被父节点删除
+    private boolean removeEntry(Node node, Entry entry, int depth) {
+        if (depth == entry.term.length()) {
+            node.suggestions.remove(entry.suggestion);
+        } else {
+            char c = entry.term.charAt(depth);
+            Node child = node.child(c);
+            if (child != null && removeEntry(child, entry, depth + 1)) {
+                node.removeChild(c);
+                nodeCount--;
+            }
+        }
+        return node != root && node.suggestions.isEmpty() && node.keys.length == 0;
+    }
+
+    private final class Node {
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        private List<Suggestion> suggestions = Collections.emptyList();
+
+        private Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        private Node childOrCreate(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0) {
+                return children[i];
+            }
+            int insertAt = -i - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            newKeys[insertAt] = c;
+            Node child = new Node();
+            newChildren[insertAt] = child;
+            System.arraycopy(keys, insertAt, newKeys, insertAt + 1, keys.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+            keys = newKeys;
+            children = newChildren;
+            nodeCount++;
+            return child;
+        }
+
+        private void removeChild(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i < 0) {
+                return;
+            }
+            if (keys.length == 1) {
+                keys = NO_KEYS;
+                children = NO_CHILDREN;
+                return;
+            }
+            char[] newKeys = new char[keys.length - 1];
+            Node[] newChildren = new Node[children.length - 1];
+            System.arraycopy(keys, 0, newKeys, 0, i);
+            System.arraycopy(children, 0, newChildren, 0, i);
+            System.arraycopy(keys, i + 1, newKeys, i, keys.length - i - 1);
+            System.arraycopy(children, i + 1, newChildren, i, children.length - i - 1);
+            keys = newKeys;
+            children = newChildren;
+        }
+    }
+
+    private static final class Entry {
+        private final String term;
+        private final Suggestion suggestion;
+
+        private Entry(String term, Suggestion suggestion) {
+            this.term = term;
+            this.suggestion = suggestion;
+        }
+    }
+}
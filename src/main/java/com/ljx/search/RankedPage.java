@@ -0,0 +1,48 @@
+package com.ljx.search;
+
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.baomidou.mybatisplus.extension.service.IService;
+
+import java.util.*;
+import java.util.function.Function;
+
+/*
+* 根据搜索索引返回的有序id进行分页，只按主键查询当前页的数据*/
+public class RankedPage {
+
+    /**
+     * @param service 对应表的service
+     * @param rankedIds 按相关度排好序的id
+     * @param idGetter 实体的id
+     * @param current 页码
+     * @param size 每页条数
+     * @return 分页结果，记录顺序与rankedIds一致
+     */
+    public static <T> Page<T> of(IService<T> service, List<Long> rankedIds, Function<T, Long> idGetter,
+                                 long current, long size) {
+        Page<T> page = new Page<>(current, size);
+        page.setTotal(rankedIds.size());
+
+        int from = (int) Math.min(page.offset(), rankedIds.size());
+        int to = (int) Math.min(from + size, rankedIds.size());
+        List<Long> pageIds = rankedIds.subList(from, to);
+        if (pageIds.isEmpty()) {
+            return page;
+        }
+
+        //select * from xxx where id in (...)，再按相关度顺序排列
+        Map<Long, T> byId = new HashMap<>();
+        for (T record : service.listByIds(pageIds)) {
+            byId.put(idGetter.apply(record), record);
+        }
+        List<T> records = new ArrayList<>(pageIds.size());
+        for (Long id : pageIds) {
+            T record = byId.get(id);
+            if (record != null) {
+                records.add(record);
+            }
+        }
+        page.setRecords(records);
+        return page;
+    }
+}
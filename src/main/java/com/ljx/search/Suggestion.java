@@ -0,0 +1,47 @@
+package com.ljx.search;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+/*
+* 搜索提示结果*/
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class Suggestion {
+
+    public static final String TYPE_DISH = "dish";
+
+    public static final String TYPE_SETMEAL = "setmeal";
+
+    private Long id;
+
+    //dish 或 setmeal
+    private String type;
+
+    private String name;
+
+    //通过商品码匹配时返回商品码
+    private String code;
+
+    //0 停售 1 起售，移动端只提示起售的菜品和套餐，不返回给前端
+    @JsonIgnore
+    private Integer status;
+
+    public Suggestion(Long id, String type, String name, String code) {
+        this(id, type, name, code, null);
+    }
+
+    public Suggestion(Long id, String type, String name, String code, Integer status) {
+        this.id = id;
+        this.type = type;
+        this.name = name;
+        this.code = code;
+        this.status = status;
+    }
+
+    @JsonIgnore
+    public boolean isOnSale() {
+        return Integer.valueOf(1).equals(status);
+    }
+}
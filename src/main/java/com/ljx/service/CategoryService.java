@@ -3,6 +3,16 @@ package com.ljx.service;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.ljx.entity.Category;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 public interface CategoryService extends IService<Category> {
     public void remove(Long id);
+
+    //根据类型查询分类，数据来自内存快照，type为null时返回全部
+    public List<Category> listFromCache(Integer type);
+
+    //根据id批量查询分类名称，数据来自内存快照
+    public Map<Long, String> getNameMap(Collection<Long> ids);
 }
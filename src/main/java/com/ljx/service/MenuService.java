@@ -0,0 +1,9 @@
+package com.ljx.service;
+
+import com.ljx.cache.MenuSnapshot;
+
+public interface MenuService {
+
+    //获取当前版本的完整菜单快照，菜单变化后第一次调用时重新构建
+    public MenuSnapshot getSnapshot();
+}
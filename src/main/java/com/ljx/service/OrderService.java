@@ -6,4 +6,6 @@ import com.ljx.entity.Orders;
 public interface OrderService extends IService<Orders> {
 
     public void submit(Orders orders);
+
+    public void cancel(Long id, Long userId);
 }
@@ -1,7 +1,23 @@
 package com.ljx.service;
 
 import com.baomidou.mybatisplus.extension.service.IService;
+import com.ljx.dto.CartOperation;
 import com.ljx.entity.ShoppingCart;
 
+import java.util.Collection;
+import java.util.List;
+
 public interface ShoppingCartService extends IService<ShoppingCart> {
+
+    //以下方法通过购物车存储读写，不直接访问shopping_cart表
+
+    public List<ShoppingCart> listCart(Long userId);
+
+    public ShoppingCart changeNumber(Long userId, ShoppingCart shoppingCart, int delta);
+
+    public List<ShoppingCart> applyOperations(Long userId, List<CartOperation> operations);
+
+    public void cleanCart(Long userId);
+
+    public void removeCartItems(Long userId, Collection<Long> ids);
 }
@@ -0,0 +1,31 @@
+package com.ljx.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.ljx.entity.Dish;
+import com.ljx.entity.OrderDetail;
+import com.ljx.entity.Setmeal;
+import com.ljx.entity.Stock;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+public interface StockService extends IService<Stock> {
+
+    //下单时扣减当日库存，任意一项不足时全部不扣减并抛出异常，返回扣减的库存日期
+    public LocalDate reserve(List<OrderDetail> orderDetails);
+
+    //订单写入失败或取消时归还指定日期的库存，跨过零点也归还到扣减时的那一天
+    public void release(LocalDate stockDate, List<OrderDetail> orderDetails);
+
+    public Stock setDailyStock(Stock stock);
+
+    public void removeDailyStock(Long id);
+
+    public List<Stock> listToday();
+
+    //填充菜品、套餐的售罄状态
+    public void markSoldOut(Collection<? extends Dish> dishes);
+
+    public void markSetmealSoldOut(Collection<? extends Setmeal> setmeals);
+}
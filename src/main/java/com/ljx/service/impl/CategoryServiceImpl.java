@@ -2,6 +2,8 @@ package com.ljx.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.ljx.cache.CategorySnapshot;
+import com.ljx.cache.MenuCache;
 import com.ljx.common.CustomException;
 import com.ljx.entity.Category;
 import com.ljx.entity.Dish;
@@ -10,16 +12,31 @@ import com.ljx.mapper.CategoryMapper;
 import com.ljx.service.CategoryService;
 import com.ljx.service.DishService;
 import com.ljx.service.SetmealService;
+import com.ljx.utils.TransactionUtils;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 @Service
+@Slf4j
 public class CategoryServiceImpl extends ServiceImpl<CategoryMapper, Category> implements CategoryService {
     @Autowired
     private DishService dishService;
 
     @Autowired
     private SetmealService setmealService;
+
+    @Autowired
+    private MenuCache menuCache;
+
+    //分类数据的内存快照，修改时整体替换
+    private volatile CategorySnapshot snapshot;
+
     /*
     * 根据id删除分类*/
     public void remove(Long id){
@@ -50,6 +67,82 @@ public class CategoryServiceImpl extends ServiceImpl<CategoryMapper, Category> i
         // 但是由于这个类也继承了ServiceImpl，同时也继承IService，所以直接调用父类IService中的方法也可以
         // 实际上categoryService也是同理
         super.removeById(id);
+
+        TransactionUtils.afterCommit(()->{
+            reloadSnapshot();
+            menuCache.evictCategory(id);
+        });
+    }
+
+    /*
+    * 新增分类，提交后重建分类快照，并更新菜单版本*/
+    @Override
+    public boolean save(Category category) {
+        boolean saved = super.save(category);
+        Long id = category.getId();
+        TransactionUtils.afterCommit(()->{
+            reloadSnapshot();
+            menuCache.evictCategory(id);
+        });
+        return saved;
+    }
+
+    /*
+    * 根据id修改分类，分类名称会出现在菜单数据中，修改后重建分类快照并失效对应的菜单缓存*/
+    @Override
+    public boolean updateById(Category category) {
+        boolean updated = super.updateById(category);
+        Long id = category.getId();
+        TransactionUtils.afterCommit(()->{
+            reloadSnapshot();
+            menuCache.evictCategory(id);
+        });
+        return updated;
+    }
+
+    /*
+    * 根据类型查询分类，读取内存快照，不访问数据库*/
+    @Override
+    public List<Category> listFromCache(Integer type) {
+        return getSnapshot().listByType(type);
+    }
+
+    /*
+    * 根据id批量查询分类名称，读取内存快照，不访问数据库*/
+    @Override
+    public Map<Long, String> getNameMap(Collection<Long> ids) {
+        CategorySnapshot current = getSnapshot();
+        Map<Long, String> names = new HashMap<>();
+        for (Long id : ids) {
+            Category category = current.getById(id);
+            if(category != null){
+                names.put(id, category.getName());
+            }
+        }
+        return names;
+    }
+
+    //读取不加锁，只有第一次使用时才会从数据库加载
+    private CategorySnapshot getSnapshot() {
+        CategorySnapshot current = snapshot;
+        if(current == null){
+            current = loadSnapshot();
+        }
+        return current;
+    }
+
+    private synchronized CategorySnapshot loadSnapshot() {
+        if(snapshot == null){
+            reloadSnapshot();
+        }
+        return snapshot;
+    }
+
+    //查询全部分类构建新快照后整体替换，加锁保证多次重建按顺序进行，不会用旧数据覆盖新数据
+    private synchronized void reloadSnapshot() {
+        CategorySnapshot rebuilt = new CategorySnapshot(super.list());
+        snapshot = rebuilt;
+        log.info("分类快照已重建，共{}条", rebuilt.size());
     }
 
 }
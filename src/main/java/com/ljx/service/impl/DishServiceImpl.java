@@ -2,19 +2,25 @@ package com.ljx.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.ljx.cache.MenuCache;
 import com.ljx.dto.DishDto;
 import com.ljx.entity.Dish;
 import com.ljx.entity.DishFlavor;
+import com.ljx.loader.DishDtoLoader;
 import com.ljx.mapper.DishMapper;
+import com.ljx.search.MenuSearchIndex;
 import com.ljx.service.DishFlavorService;
 import com.ljx.service.DishService;
+import com.ljx.utils.TransactionUtils;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -24,6 +30,15 @@ public class DishServiceImpl extends ServiceImpl<DishMapper, Dish> implements Di
     @Autowired
     private DishFlavorService dishFlavorService;
 
+    @Autowired
+    private DishDtoLoader dishDtoLoader;
+
+    @Autowired
+    private MenuCache menuCache;
+
+    @Autowired
+    private MenuSearchIndex menuSearchIndex;
+
     /**
      * 新增菜品，同时保存对应的口味数据
      * @param dishDto
@@ -45,6 +60,17 @@ public class DishServiceImpl extends ServiceImpl<DishMapper, Dish> implements Di
 
         //保存菜品口味数据到菜品口味表dish_flavor
         dishFlavorService.saveBatch(flavors);
+
+        //事务提交后失效该分类的菜单缓存，并更新名称索引
+        Long categoryId = dishDto.getCategoryId();
+        String name = dishDto.getName();
+        String code = dishDto.getCode();
+        //没有传售卖状态时使用表的默认值1
+        Integer status = dishDto.getStatus() != null ? dishDto.getStatus() : Integer.valueOf(1);
+        TransactionUtils.afterCommit(()->{
+            menuCache.evictDishCategories(Collections.singletonList(categoryId));
+            menuSearchIndex.putDish(dishId,name,code,status);
+        });
     }
 
     /**
@@ -57,14 +83,8 @@ public class DishServiceImpl extends ServiceImpl<DishMapper, Dish> implements Di
         //查询菜品基本信息，从dish查询
         Dish dish = this.getById(id);
 
-        DishDto dishDto = new DishDto();
-        BeanUtils.copyProperties(dish,dishDto);
-
         //查询当前菜品对应口味信息，从dish_flavor表查询
-        LambdaQueryWrapper<DishFlavor> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(DishFlavor::getDishId,dish.getId());
-        List<DishFlavor> flavors = dishFlavorService.list(queryWrapper);
-        dishDto.setFlavors(flavors);
+        DishDto dishDto = dishDtoLoader.load(Collections.singletonList(dish),false,true).get(0);
 
         return dishDto;
     }
@@ -72,6 +92,14 @@ public class DishServiceImpl extends ServiceImpl<DishMapper, Dish> implements Di
     @Override
     @Transactional
     public void updateWithFlavor(DishDto dishDto) {
+        //修改前的分类，菜品可能被移动到其他分类，新旧分类的菜单缓存都要失效
+        Dish old = this.getById(dishDto.getId());
+        Set<Long> categoryIds = new HashSet<>();
+        categoryIds.add(dishDto.getCategoryId());
+        if(old != null){
+            categoryIds.add(old.getCategoryId());
+        }
+
         //更新dish表基本信息
         this.updateById(dishDto);
 
@@ -89,5 +117,15 @@ public class DishServiceImpl extends ServiceImpl<DishMapper, Dish> implements Di
         }).collect(Collectors.toList());
 
         dishFlavorService.saveBatch(flavors);
+
+        //事务提交后失效菜单缓存，并更新名称索引
+        Long dishId = dishDto.getId();
+        String name = dishDto.getName() != null ? dishDto.getName() : (old != null ? old.getName() : null);
+        String code = dishDto.getCode() != null ? dishDto.getCode() : (old != null ? old.getCode() : null);
+        Integer status = dishDto.getStatus() != null ? dishDto.getStatus() : (old != null ? old.getStatus() : null);
+        TransactionUtils.afterCommit(()->{
+            menuCache.evictDishCategories(categoryIds);
+            menuSearchIndex.putDish(dishId,name,code,status);
+        });
     }
 }
@@ -0,0 +1,147 @@
+package com.ljx.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.ljx.cache.MenuCache;
+import com.ljx.cache.MenuSnapshot;
+import com.ljx.common.CustomException;
+import com.ljx.common.JacksonObjectMapper;
+import com.ljx.dto.DishDto;
+import com.ljx.dto.SetmealDto;
+import com.ljx.entity.Category;
+import com.ljx.entity.Dish;
+import com.ljx.entity.Setmeal;
+import com.ljx.entity.SetmealDish;
+import com.ljx.loader.DishDtoLoader;
+import com.ljx.service.*;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+@Service
+@Slf4j
+public class MenuServiceImpl implements MenuService {
+
+    @Autowired
+    private CategoryService categoryService;
+
+    @Autowired
+    private DishService dishService;
+
+    @Autowired
+    private SetmealService setmealService;
+
+    @Autowired
+    private SetmealDishService setmealDishService;
+
+    @Autowired
+    private DishDtoLoader dishDtoLoader;
+
+    @Autowired
+    private MenuCache menuCache;
+
+    @Autowired
+    private StockService stockService;
+
+    //只用于计算ETag，与响应使用相同的序列化规则
+    private final JacksonObjectMapper objectMapper = new JacksonObjectMapper();
+
+    private volatile MenuSnapshot snapshot;
+
+    /**
+     * 获取当前版本的菜单快照，版本未变化时直接返回，不访问数据库
+     * @return
+     */
+    @Override
+    public MenuSnapshot getSnapshot() {
+        MenuSnapshot current = snapshot;
+        if(current != null && current.getVersion() == menuCache.getVersion()){
+            return current;
+        }
+        return rebuild();
+    }
+
+    //同一时间只有一个线程构建快照，其他线程等待后直接使用构建结果
+    private synchronized MenuSnapshot rebuild() {
+        long version = menuCache.getVersion();
+        MenuSnapshot current = snapshot;
+        if(current != null && current.getVersion() == version){
+            return current;
+        }
+
+        MenuSnapshot built = build(version);
+        //构建期间菜单又发生了变化，本次结果可能不是最新的，只返回不保存
+        if(menuCache.getVersion() == version){
+            snapshot = built;
+        }
+        log.info("菜单快照已构建，版本：{}，ETag：{}", version, built.getEtag());
+        return built;
+    }
+
+    private MenuSnapshot build(long version) {
+        //分类
+        List<Category> categories = categoryService.listFromCache(null);
+
+        //起售菜品，分类名称和口味批量组装
+        LambdaQueryWrapper<Dish> dishQueryWrapper = new LambdaQueryWrapper<>();
+        dishQueryWrapper.eq(Dish::getStatus,1);
+        dishQueryWrapper.orderByAsc(Dish::getSort).orderByDesc(Dish::getUpdateTime);
+        List<DishDto> dishes = dishDtoLoader.load(dishService.list(dishQueryWrapper),true,true);
+        //售罄状态变化时会失效菜单缓存，快照随菜单版本重建
+        stockService.markSoldOut(dishes);
+
+        //起售套餐
+        LambdaQueryWrapper<Setmeal> setmealQueryWrapper = new LambdaQueryWrapper<>();
+        setmealQueryWrapper.eq(Setmeal::getStatus,1);
+        setmealQueryWrapper.orderByDesc(Setmeal::getUpdateTime);
+        List<Setmeal> setmeals = setmealService.list(setmealQueryWrapper);
+
+        List<SetmealDto> setmealDtos = toSetmealDtos(setmeals);
+        stockService.markSetmealSoldOut(setmealDtos);
+
+        String etag = computeEtag(categories, dishes, setmealDtos);
+        return new MenuSnapshot(version, categories, dishes, setmealDtos, etag);
+    }
+
+    //套餐菜品关系一次IN查询后按套餐分组
+    private List<SetmealDto> toSetmealDtos(List<Setmeal> setmeals) {
+        if(setmeals.isEmpty()){
+            return new ArrayList<>();
+        }
+        Set<Long> setmealIds = setmeals.stream().map(Setmeal::getId).collect(Collectors.toSet());
+        LambdaQueryWrapper<SetmealDish> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.in(SetmealDish::getSetmealId,setmealIds);
+        queryWrapper.orderByAsc(SetmealDish::getSort);
+        Map<Long, List<SetmealDish>> setmealDishes = setmealDishService.list(queryWrapper).stream()
+                .collect(Collectors.groupingBy(SetmealDish::getSetmealId));
+
+        Map<Long, String> categoryNames = dishDtoLoader.loadCategoryNames(
+                setmeals.stream().map(Setmeal::getCategoryId).collect(Collectors.toSet()));
+
+        return setmeals.stream().map((item)->{
+            SetmealDto setmealDto = new SetmealDto();
+            BeanUtils.copyProperties(item,setmealDto);
+            setmealDto.setCategoryName(categoryNames.get(item.getCategoryId()));
+            setmealDto.setSetmealDishes(setmealDishes.getOrDefault(item.getId(),new ArrayList<>()));
+            return setmealDto;
+        }).collect(Collectors.toList());
+    }
+
+    //根据菜单内容计算强ETag，内容相同则ETag相同，与进程重启和节点无关
+    private String computeEtag(List<Category> categories, List<DishDto> dishes, List<SetmealDto> setmeals) {
+        Map<String, Object> content = new LinkedHashMap<>();
+        content.put("categories", categories);
+        content.put("dishes", dishes);
+        content.put("setmeals", setmeals);
+        try {
+            return "\"" + DigestUtils.md5DigestAsHex(objectMapper.writeValueAsBytes(content)) + "\"";
+        } catch (JsonProcessingException e) {
+            throw new CustomException("菜单数据序列化失败");
+        }
+    }
+}
@@ -1,19 +1,25 @@
 package com.ljx.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.ljx.common.BaseContext;
 import com.ljx.common.CustomException;
 import com.ljx.entity.*;
 import com.ljx.mapper.OrderMapper;
+import com.ljx.order.OrderGroupCommitter;
+import com.ljx.order.OrderJournal;
+import com.ljx.order.PendingOrder;
 import com.ljx.service.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
@@ -33,20 +39,107 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Orders> implement
     @Autowired
     private OrderDetailService orderDetailService;
 
+    @Autowired
+    private OrderGroupCommitter orderGroupCommitter;
+
+    @Autowired
+    private OrderJournal orderJournal;
+
+    @Autowired
+    private StockService stockService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
     /**
      * 用户下单
+     * 先在内存中扣减限量菜品、套餐的当日库存，订单写入失败时归还
+     * 开启订单日志时，组装好的订单写入本地日志并刷盘后即返回，由后台线程异步写入数据库
+     * 开启组提交时，在当前线程查询购物车、组装订单，然后交给组提交线程和其他订单一起写入，
+     * 当前线程不持有事务和数据库连接，只等待自己订单的结果
      * @param orders
      */
     @Override
-    @Transactional
     public void submit(Orders orders) {
         //获取当前用户id
         Long userId = BaseContext.getCurrentId();
 
-        //查询当前用户购物车的数据
-        LambdaQueryWrapper<ShoppingCart> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(ShoppingCart::getUserId,userId);
-        List<ShoppingCart> shoppingCarts = shoppingCartService.list(queryWrapper);
+        PendingOrder pendingOrder = prepare(orders,userId);
+        List<OrderDetail> orderDetails = pendingOrder.getOrderDetails();
+        LocalDate stockDate = stockService.reserve(orderDetails);
+        try {
+            write(pendingOrder);
+        } catch (RuntimeException e) {
+            //归还到扣减时的日期，跨过零点时不会加到第二天的库存上
+            stockService.release(stockDate,orderDetails);
+            throw e;
+        }
+
+        //订单写入时会按id删除shopping_cart中的记录，写入成功后再从购物车存储中删除已下单的记录
+        shoppingCartService.removeCartItems(userId,pendingOrder.getShoppingCartIds());
+    }
+
+    private void write(PendingOrder pendingOrder) {
+        if(orderJournal.isEnabled()){
+            orderJournal.append(pendingOrder);
+            return;
+        }
+
+        if(orderGroupCommitter.isEnabled()){
+            orderGroupCommitter.submitAndWait(pendingOrder);
+            return;
+        }
+
+        transactionTemplate.executeWithoutResult((status)->{
+            this.save(pendingOrder.getOrders());
+
+            //向明细表插入数据，多条数据
+            orderDetailService.saveBatch(pendingOrder.getOrderDetails());
+
+            //清空购物车数据
+            shoppingCartService.removeByIds(pendingOrder.getShoppingCartIds());
+        });
+    }
+
+    /**
+     * 取消订单，待付款和待派送的订单可以取消，当天的订单取消后归还库存
+     * @param id 订单id
+     * @param userId 只能取消该用户的订单，为null时不限制
+     */
+    @Override
+    public void cancel(Long id, Long userId) {
+        LocalDate today = LocalDate.now();
+        List<OrderDetail> orderDetails = transactionTemplate.execute((status)->{
+            //按状态条件更新，同一订单并发取消时只有一次能成功
+            LambdaUpdateWrapper<Orders> updateWrapper = new LambdaUpdateWrapper<>();
+            updateWrapper.set(Orders::getStatus,5);
+            updateWrapper.eq(Orders::getId,id);
+            updateWrapper.in(Orders::getStatus,1,2);
+            updateWrapper.eq(userId != null,Orders::getUserId,userId);
+            if(!this.update(updateWrapper)){
+                throw new CustomException("订单不存在或不能取消");
+            }
+
+            Orders orders = this.getById(id);
+            if(orders.getOrderTime() == null || !orders.getOrderTime().toLocalDate().equals(today)){
+                return Collections.<OrderDetail>emptyList();
+            }
+            LambdaQueryWrapper<OrderDetail> queryWrapper = new LambdaQueryWrapper<>();
+            queryWrapper.eq(OrderDetail::getOrderId,id);
+            return orderDetailService.list(queryWrapper);
+        });
+        stockService.release(today,orderDetails);
+    }
+
+    /**
+     * 查询购物车、用户和地址，组装订单和订单明细
+     * @param orders
+     * @param userId
+     * @return
+     */
+    private PendingOrder prepare(Orders orders,Long userId) {
+        //查询当前用户购物车的数据，从购物车存储读取
+        List<ShoppingCart> shoppingCarts = shoppingCartService.listCart(userId);
 
         if(shoppingCarts==null||shoppingCarts.size()==0){
             throw new CustomException("购物车为空，不能下单");
@@ -68,6 +161,8 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Orders> implement
 
         List<OrderDetail> orderDetails=shoppingCarts.stream().map((item)->{
             OrderDetail orderDetail = new OrderDetail();
+            //组提交使用多行insert，明细id需要提前生成
+            orderDetail.setId(IdWorker.getId());
             orderDetail.setOrderId(orderId);
             orderDetail.setNumber(item.getNumber());
             orderDetail.setDishFlavor(item.getDishFlavor());
@@ -81,7 +176,7 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Orders> implement
             return orderDetail;
         }).collect(Collectors.toList());//计算总金额，遍历出订单明细表
 
-        //向订单表插入数据，一条数据
+        //订单数据，一条数据
         orders.setUserId(userId);
         orders.setNumber(String.valueOf(orderId));//订单号
         orders.setId(orderId);
@@ -97,12 +192,7 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Orders> implement
                 + (addressBook.getDistrictName() == null ? "" : addressBook.getDistrictName())
                 + (addressBook.getDetail() == null ? "" : addressBook.getDetail()));
 
-        this.save(orders);
-
-        //向明细表插入数据，多条数据
-        orderDetailService.saveBatch(orderDetails);
-
-        //清空购物车数据
-        shoppingCartService.remove(queryWrapper);
+        List<Long> shoppingCartIds = shoppingCarts.stream().map(ShoppingCart::getId).collect(Collectors.toList());
+        return new PendingOrder(orders,orderDetails,shoppingCartIds);
     }
 }
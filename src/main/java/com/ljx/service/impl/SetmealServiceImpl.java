@@ -2,19 +2,24 @@ package com.ljx.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.ljx.cache.MenuCache;
 import com.ljx.common.CustomException;
 import com.ljx.dto.SetmealDto;
 import com.ljx.entity.Setmeal;
 import com.ljx.entity.SetmealDish;
 import com.ljx.mapper.SetmealMapper;
+import com.ljx.search.MenuSearchIndex;
 import com.ljx.service.SetmealDishService;
 import com.ljx.service.SetmealService;
+import com.ljx.utils.TransactionUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -24,6 +29,12 @@ public class SetmealServiceImpl extends ServiceImpl<SetmealMapper, Setmeal> impl
     @Autowired
     private SetmealDishService setmealDishService;
 
+    @Autowired
+    private MenuCache menuCache;
+
+    @Autowired
+    private MenuSearchIndex menuSearchIndex;
+
     /**
      * 新增套餐
      * @param setmealDto
@@ -43,6 +54,17 @@ public class SetmealServiceImpl extends ServiceImpl<SetmealMapper, Setmeal> impl
 
         //保存套餐和菜品关联信息，操作setmeal_dish，执行insert操作
         setmealDishService.saveBatch(setmealDishes);
+
+        //事务提交后失效该分类的套餐缓存，并更新名称索引
+        Long categoryId = setmealDto.getCategoryId();
+        Long setmealId = setmealDto.getId();
+        String name = setmealDto.getName();
+        //没有传售卖状态时使用表的默认值1
+        Integer status = setmealDto.getStatus() != null ? setmealDto.getStatus() : Integer.valueOf(1);
+        TransactionUtils.afterCommit(()->{
+            menuCache.evictSetmealCategories(Collections.singletonList(categoryId));
+            menuSearchIndex.putSetmeal(setmealId,name,status);
+        });
     }
 
     /**
@@ -65,6 +87,9 @@ public class SetmealServiceImpl extends ServiceImpl<SetmealMapper, Setmeal> impl
             throw new CustomException("套餐正在售卖中，不能删除");
         }
 
+        //删除前记录套餐所属分类，用于失效套餐缓存
+        Set<Long> categoryIds = this.listByIds(ids).stream().map(Setmeal::getCategoryId).collect(Collectors.toSet());
+
         //如果可以删除，先删除套餐表的数据---setmeal
         this.removeByIds(ids);
 
@@ -74,5 +99,10 @@ public class SetmealServiceImpl extends ServiceImpl<SetmealMapper, Setmeal> impl
         lambdaQueryWrapper.in(SetmealDish::getSetmealId,ids);
         setmealDishService.remove(lambdaQueryWrapper);
 
+        //事务提交后失效套餐缓存，并从名称索引中删除
+        TransactionUtils.afterCommit(()->{
+            menuCache.evictSetmealCategories(categoryIds);
+            menuSearchIndex.removeSetmeals(ids);
+        });
     }
 }
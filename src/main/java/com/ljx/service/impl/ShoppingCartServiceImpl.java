@@ -1,12 +1,129 @@
 package com.ljx.service.impl;
 
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.ljx.cache.MenuSnapshot;
+import com.ljx.cart.CartChange;
+import com.ljx.cart.CartStore;
+import com.ljx.common.CustomException;
+import com.ljx.dto.CartOperation;
+import com.ljx.dto.DishDto;
+import com.ljx.dto.SetmealDto;
 import com.ljx.entity.ShoppingCart;
 import com.ljx.mapper.ShoppingCartMapper;
+import com.ljx.service.MenuService;
 import com.ljx.service.ShoppingCartService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 @Service
 public class ShoppingCartServiceImpl extends ServiceImpl<ShoppingCartMapper, ShoppingCart> implements ShoppingCartService {
 
+    private static final int MAX_OPERATIONS = 100;
+
+    private static final BigDecimal HUNDRED = new BigDecimal(100);
+
+    @Autowired
+    private MenuService menuService;
+
+    //默认为内存存储，reggie.cart.store=database时直接读写数据库
+    @Autowired
+    private CartStore cartStore;
+
+    /**
+     * 查询用户购物车
+     * @param userId
+     * @return
+     */
+    @Override
+    public List<ShoppingCart> listCart(Long userId) {
+        return cartStore.list(userId);
+    }
+
+    /**
+     * 修改购物车中菜品或套餐的数量
+     * @param userId
+     * @param shoppingCart
+     * @param delta 数量变化，加一为1，减一为-1
+     * @return 修改后的记录，数量减到0时number为0
+     */
+    @Override
+    public ShoppingCart changeNumber(Long userId, ShoppingCart shoppingCart, int delta) {
+        return cartStore.change(userId, shoppingCart, delta);
+    }
+
+    /**
+     * 批量修改购物车，名称、图片和金额从菜单快照中读取，不使用客户端传来的数据
+     * 菜单快照只有起售的菜品和套餐，只有增加数量时才要求在菜单中，加入购物车后停售的也能减少和删除
+     * 任意一项不合法时整批都不生效
+     * @param userId
+     * @param operations
+     * @return 修改后的整个购物车
+     */
+    @Override
+    public List<ShoppingCart> applyOperations(Long userId, List<CartOperation> operations) {
+        if (operations == null || operations.isEmpty()) {
+            return cartStore.list(userId);
+        }
+        if (operations.size() > MAX_OPERATIONS) {
+            throw new CustomException("一次最多修改" + MAX_OPERATIONS + "项");
+        }
+        MenuSnapshot snapshot = menuService.getSnapshot();
+        List<CartChange> changes = new ArrayList<>(operations.size());
+        for (CartOperation operation : operations) {
+            if (operation.getDelta() == null || operation.getDelta() == 0) {
+                continue;
+            }
+            ShoppingCart item = new ShoppingCart();
+            if ((operation.getDishId() == null) == (operation.getSetmealId() == null)) {
+                throw new CustomException("dishId和setmealId必须且只能传一个");
+            }
+            if (operation.getDelta() < 0) {
+                //减少数量按菜品或套餐id匹配购物车中已有的记录，不需要菜单数据
+                item.setDishId(operation.getDishId());
+                item.setSetmealId(operation.getSetmealId());
+                item.setDishFlavor(operation.getDishFlavor());
+            } else if (operation.getDishId() != null) {
+                DishDto dish = snapshot.findDish(operation.getDishId());
+                if (dish == null) {
+                    throw new CustomException("菜品不存在或已停售");
+                }
+                item.setDishId(dish.getId());
+                item.setName(dish.getName());
+                item.setImage(dish.getImage());
+                item.setAmount(toAmount(dish.getPrice()));
+                item.setDishFlavor(operation.getDishFlavor());
+            } else {
+                SetmealDto setmeal = snapshot.findSetmeal(operation.getSetmealId());
+                if (setmeal == null) {
+                    throw new CustomException("套餐不存在或已停售");
+                }
+                item.setSetmealId(setmeal.getId());
+                item.setName(setmeal.getName());
+                item.setImage(setmeal.getImage());
+                item.setAmount(toAmount(setmeal.getPrice()));
+            }
+            changes.add(new CartChange(item, operation.getDelta()));
+        }
+        return cartStore.changeAll(userId, changes);
+    }
+
+    //价格以分保存，购物车金额以元保存，和移动端加入购物车时传的金额一致
+    private static BigDecimal toAmount(BigDecimal price) {
+        return price.divide(HUNDRED);
+    }
+
+    @Override
+    public void cleanCart(Long userId) {
+        cartStore.clean(userId);
+    }
+
+    @Override
+    public void removeCartItems(Long userId, Collection<Long> ids) {
+        cartStore.remove(userId, ids);
+    }
 }
@@ -0,0 +1,425 @@
+package com.ljx.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.ljx.cache.MenuCache;
+import com.ljx.common.BaseContext;
+import com.ljx.common.CustomException;
+import com.ljx.common.MetricsSource;
+import com.ljx.entity.*;
+import com.ljx.mapper.DishMapper;
+import com.ljx.mapper.SetmealMapper;
+import com.ljx.mapper.StockMapper;
+import com.ljx.service.StockService;
+import com.ljx.stock.StripedCounter;
+import com.ljx.utils.TransactionUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/*
+* 每日限量库存
+* 当日的库存在第一次使用时从stock表加载到内存，下单时在内存的分段计数器上扣减，定时把已售数量回写到stock表
+* 售罄状态变化时失效对应分类的菜单缓存，菜单接口立即显示售罄
+* 进程异常退出时最后一个回写间隔内的已售数量会丢失，重启后这部分库存可能被再次卖出*/
+@Service
+@Slf4j
+public class StockServiceImpl extends ServiceImpl<StockMapper, Stock> implements StockService, MetricsSource {
+
+    //这里直接使用mapper查询分类id，避免和DishServiceImpl形成循环依赖
+    @Autowired
+    private DishMapper dishMapper;
+
+    @Autowired
+    private SetmealMapper setmealMapper;
+
+    @Autowired
+    private MenuCache menuCache;
+
+    @Value("${reggie.stock.flush-interval-seconds:5}")
+    private long flushIntervalSeconds;
+
+    @Value("${reggie.stock.stripes:8}")
+    private int stripes;
+
+    private volatile Daily daily;
+
+    //切换日期前的库存，前一天扣减的订单跨过零点后失败时归还到这里
+    private volatile Daily previous;
+
+    private ScheduledExecutorService flusher;
+
+    private final LongAdder rejected = new LongAdder();
+
+    @PostConstruct
+    public void start() {
+        flusher = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "stock-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(() -> {
+            try {
+                //顺便检查日期，过了零点及时切换到新一天的库存
+                if (daily != null) {
+                    flush(daily());
+                }
+            } catch (RuntimeException e) {
+                log.error("库存回写失败", e);
+            }
+        }, flushIntervalSeconds, flushIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+        Daily current = daily;
+        if (current != null) {
+            flush(current);
+        }
+    }
+
+    /**
+     * 扣减订单中各菜品、套餐的当日库存，没有设置限量的不扣减
+     * @param orderDetails
+     * @return 扣减的库存日期，归还时使用
+     */
+    @Override
+    public LocalDate reserve(List<OrderDetail> orderDetails) {
+        Daily current = daily();
+        List<OrderDetail> reserved = new ArrayList<>(orderDetails.size());
+        for (OrderDetail orderDetail : orderDetails) {
+            Item item = current.items.get(key(orderDetail.getDishId(), orderDetail.getSetmealId()));
+            if (item == null) {
+                continue;
+            }
+            if (!item.counter.tryAcquire(orderDetail.getNumber())) {
+                rejected.increment();
+                release(current, reserved);
+                updateSoldOut(item);
+                throw new CustomException(orderDetail.getName() + "已售罄");
+            }
+            item.sold.add(orderDetail.getNumber());
+            reserved.add(orderDetail);
+            updateSoldOut(item);
+        }
+        return current.date;
+    }
+
+    @Override
+    public void release(LocalDate stockDate, List<OrderDetail> orderDetails) {
+        Daily current = daily();
+        if (current.date.equals(stockDate)) {
+            release(current, orderDetails);
+            return;
+        }
+        Daily old = previous;
+        if (old != null && old.date.equals(stockDate)) {
+            //前一天的库存已经在切换时回写过，归还后再回写一次已售数量
+            release(old, orderDetails);
+            synchronized (this) {
+                flush(old);
+            }
+            return;
+        }
+        log.warn("{}的库存已经不在内存中，不再归还", stockDate);
+    }
+
+    private void release(Daily current, List<OrderDetail> orderDetails) {
+        for (OrderDetail orderDetail : orderDetails) {
+            Item item = current.items.get(key(orderDetail.getDishId(), orderDetail.getSetmealId()));
+            if (item == null) {
+                continue;
+            }
+            item.counter.release(orderDetail.getNumber());
+            item.sold.add(-orderDetail.getNumber());
+            updateSoldOut(item);
+        }
+    }
+
+    /**
+     * 设置菜品或套餐的当日限量，已经设置过时修改限量，已售数量不变
+     * @param stock dishId和setmealId二选一，total为当日限量
+     * @return
+     */
+    @Override
+    @Transactional
+    public Stock setDailyStock(Stock stock) {
+        if ((stock.getDishId() == null) == (stock.getSetmealId() == null)) {
+            throw new CustomException("dishId和setmealId必须且只能传一个");
+        }
+        if (stock.getTotal() == null || stock.getTotal() < 0) {
+            throw new CustomException("限量不能小于0");
+        }
+        LocalDate today = LocalDate.now();
+        LocalDateTime now = LocalDateTime.now();
+        Stock upsert = new Stock();
+        upsert.setId(IdWorker.getId());
+        upsert.setDishId(stock.getDishId());
+        upsert.setSetmealId(stock.getSetmealId());
+        upsert.setStockDate(today);
+        upsert.setTotal(stock.getTotal());
+        upsert.setCreateTime(now);
+        upsert.setUpdateTime(now);
+        upsert.setCreateUser(BaseContext.getCurrentId());
+        upsert.setUpdateUser(BaseContext.getCurrentId());
+        //插入或修改限量是一条语句，并发设置同一项时不会产生重复记录
+        baseMapper.upsertTotal(upsert);
+
+        LambdaQueryWrapper<Stock> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(Stock::getStockDate, today);
+        queryWrapper.eq(stock.getDishId() != null, Stock::getDishId, stock.getDishId());
+        queryWrapper.eq(stock.getSetmealId() != null, Stock::getSetmealId, stock.getSetmealId());
+        Stock row = this.getOne(queryWrapper);
+
+        //事务提交后调整内存中的计数，当日库存还没有加载时不需要调整，加载时会读到最新数据
+        Stock saved = row;
+        TransactionUtils.afterCommit(() -> {
+            Daily current = daily;
+            if (current == null || !current.date.equals(saved.getStockDate())) {
+                return;
+            }
+            String key = key(saved.getDishId(), saved.getSetmealId());
+            synchronized (current) {
+                Item item = current.items.get(key);
+                if (item == null) {
+                    item = newItem(saved, categoryIds(Collections.singletonList(saved)).get(key));
+                    current.items.put(key, item);
+                } else {
+                    //剩余数量按新限量减去已售数量重新计算
+                    item.counter.adjustTo(saved.getTotal() - item.sold.intValue());
+                    item.total = saved.getTotal();
+                }
+                updateSoldOut(item);
+            }
+        });
+        return row;
+    }
+
+    /**
+     * 取消当日限量
+     * @param id 库存记录id
+     */
+    @Override
+    @Transactional
+    public void removeDailyStock(Long id) {
+        Stock row = this.getById(id);
+        if (row == null) {
+            return;
+        }
+        this.removeById(id);
+        TransactionUtils.afterCommit(() -> {
+            Daily current = daily;
+            if (current == null || !current.date.equals(row.getStockDate())) {
+                return;
+            }
+            Item item = current.items.remove(key(row.getDishId(), row.getSetmealId()));
+            if (item != null && item.soldOut.get()) {
+                evict(item);
+            }
+        });
+    }
+
+    /**
+     * 查询当日库存，已售数量使用内存中的最新值
+     * @return
+     */
+    @Override
+    public List<Stock> listToday() {
+        Daily current = daily();
+        LambdaQueryWrapper<Stock> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(Stock::getStockDate, current.date);
+        List<Stock> list = this.list(queryWrapper);
+        for (Stock stock : list) {
+            Item item = current.items.get(key(stock.getDishId(), stock.getSetmealId()));
+            if (item != null) {
+                stock.setSold(item.sold.intValue());
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void markSoldOut(Collection<? extends Dish> dishes) {
+        Daily current = daily();
+        for (Dish dish : dishes) {
+            Item item = current.items.get(key(dish.getId(), null));
+            dish.setSoldOut(item != null && item.soldOut.get());
+        }
+    }
+
+    @Override
+    public void markSetmealSoldOut(Collection<? extends Setmeal> setmeals) {
+        Daily current = daily();
+        for (Setmeal setmeal : setmeals) {
+            Item item = current.items.get(key(null, setmeal.getId()));
+            setmeal.setSoldOut(item != null && item.soldOut.get());
+        }
+    }
+
+    //售罄状态变化时失效该分类的菜单缓存
+    private void updateSoldOut(Item item) {
+        boolean soldOut = item.counter.remaining() <= 0;
+        if (item.soldOut.compareAndSet(!soldOut, soldOut)) {
+            log.info("{}{}", item.key, soldOut ? "已售罄" : "恢复供应");
+            evict(item);
+        }
+    }
+
+    private void evict(Item item) {
+        if (item.categoryId == null) {
+            return;
+        }
+        if (item.dish) {
+            menuCache.evictDishCategories(Collections.singletonList(item.categoryId));
+        } else {
+            menuCache.evictSetmealCategories(Collections.singletonList(item.categoryId));
+        }
+    }
+
+    private Daily daily() {
+        Daily current = daily;
+        if (current != null && current.date.equals(LocalDate.now())) {
+            return current;
+        }
+        return loadDaily();
+    }
+
+    private synchronized Daily loadDaily() {
+        LocalDate today = LocalDate.now();
+        Daily old = daily;
+        if (old != null && old.date.equals(today)) {
+            return old;
+        }
+        if (old != null) {
+            flush(old);
+        }
+
+        LambdaQueryWrapper<Stock> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(Stock::getStockDate, today);
+        List<Stock> rows = this.list(queryWrapper);
+        Map<String, Long> categoryIds = categoryIds(rows);
+        Daily loaded = new Daily(today);
+        for (Stock row : rows) {
+            String key = key(row.getDishId(), row.getSetmealId());
+            loaded.items.put(key, newItem(row, categoryIds.get(key)));
+        }
+        previous = old;
+        daily = loaded;
+        log.info("{}库存加载完成，共{}项", today, rows.size());
+
+        //跨天后昨天售罄的恢复供应，今天库存为0的直接售罄，都需要失效菜单缓存
+        if (old != null) {
+            old.items.values().stream().filter((item) -> item.soldOut.get()).forEach(this::evict);
+        }
+        loaded.items.values().stream().filter((item) -> item.soldOut.get()).forEach(this::evict);
+        return loaded;
+    }
+
+    private Item newItem(Stock row, Long categoryId) {
+        int sold = row.getSold() == null ? 0 : row.getSold();
+        Item item = new Item(key(row.getDishId(), row.getSetmealId()), row.getId(), row.getDishId() != null, categoryId,
+                row.getTotal(), new StripedCounter(Math.max(0, row.getTotal() - sold), stripes));
+        item.sold.add(sold);
+        item.flushedSold = sold;
+        item.soldOut.set(item.counter.remaining() <= 0);
+        return item;
+    }
+
+    //批量查询菜品、套餐所属分类
+    private Map<String, Long> categoryIds(List<Stock> rows) {
+        Map<String, Long> categoryIds = new HashMap<>();
+        List<Long> dishIds = rows.stream().map(Stock::getDishId).filter(Objects::nonNull).collect(Collectors.toList());
+        List<Long> setmealIds = rows.stream().map(Stock::getSetmealId).filter(Objects::nonNull).collect(Collectors.toList());
+        if (!dishIds.isEmpty()) {
+            LambdaQueryWrapper<Dish> queryWrapper = new LambdaQueryWrapper<>();
+            queryWrapper.select(Dish::getId, Dish::getCategoryId).in(Dish::getId, dishIds);
+            dishMapper.selectList(queryWrapper).forEach((dish) -> categoryIds.put(key(dish.getId(), null), dish.getCategoryId()));
+        }
+        if (!setmealIds.isEmpty()) {
+            LambdaQueryWrapper<Setmeal> queryWrapper = new LambdaQueryWrapper<>();
+            queryWrapper.select(Setmeal::getId, Setmeal::getCategoryId).in(Setmeal::getId, setmealIds);
+            setmealMapper.selectList(queryWrapper).forEach((setmeal) -> categoryIds.put(key(null, setmeal.getId()), setmeal.getCategoryId()));
+        }
+        return categoryIds;
+    }
+
+    //回写已售数量有变化的库存
+    private void flush(Daily current) {
+        for (Item item : current.items.values()) {
+            int sold = item.sold.intValue();
+            if (sold != item.flushedSold) {
+                baseMapper.updateSold(item.stockId, sold);
+                item.flushedSold = sold;
+            }
+        }
+    }
+
+    private static String key(Long dishId, Long setmealId) {
+        return dishId != null ? "dish:" + dishId : "setmeal:" + setmealId;
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "stock";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        Daily current = daily;
+        metrics.put("date", current == null ? null : current.date.toString());
+        metrics.put("items", current == null ? 0 : current.items.size());
+        metrics.put("soldOut", current == null ? 0 : current.items.values().stream().filter((item) -> item.soldOut.get()).count());
+        metrics.put("unflushed", current == null ? 0 : current.items.values().stream().filter((item) -> item.sold.intValue() != item.flushedSold).count());
+        metrics.put("rejected", rejected.sum());
+        return metrics;
+    }
+
+    private static final class Daily {
+        private final LocalDate date;
+        private final Map<String, Item> items = new ConcurrentHashMap<>();
+
+        private Daily(LocalDate date) {
+            this.date = date;
+        }
+    }
+
+    private static final class Item {
+        private final String key;
+        private final Long stockId;
+        private final boolean dish;
+        private final Long categoryId;
+        private volatile int total;
+        private final StripedCounter counter;
+        private final LongAdder sold = new LongAdder();
+        private final AtomicBoolean soldOut = new AtomicBoolean();
+        private volatile int flushedSold;
+
+        private Item(String key, Long stockId, boolean dish, Long categoryId, int total, StripedCounter counter) {
+            this.key = key;
+            this.stockId = stockId;
+            this.dish = dish;
+            this.categoryId = categoryId;
+            this.total = total;
+            this.counter = counter;
+        }
+    }
+}
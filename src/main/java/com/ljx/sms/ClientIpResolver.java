@@ -0,0 +1,154 @@
+package com.ljx.sms;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/*
+* 解析发送验证码请求的客户端IP，用于按IP限流
+* 部署在nginx等反向代理后面时getRemoteAddr是代理的地址，所有用户会共用一个令牌桶
+* 只有直接连接的地址是受信任的代理时才读取代理传来的请求头，否则客户端可以伪造请求头绕过限流
+* X-Forwarded-For从右向左跳过受信任的代理，第一个不受信任的地址就是客户端*/
+@Component
+@Slf4j
+public class ClientIpResolver {
+
+    //只解析IP字面量，避免请求头中的主机名触发DNS查询
+    private static final Pattern IP_LITERAL = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}|[0-9a-fA-F]*:[0-9a-fA-F:.]*");
+
+    //代理传递客户端IP的请求头，例如X-Forwarded-For或X-Real-IP，不配置时直接使用连接地址
+    @Value("${reggie.sms.client-ip-header:}")
+    private String header;
+
+    //受信任的代理地址，逗号分隔，支持CIDR，例如127.0.0.1,10.0.0.0/8
+    @Value("${reggie.sms.trusted-proxies:127.0.0.1,::1}")
+    private String trustedProxies;
+
+    private final List<Cidr> trusted = new ArrayList<>();
+
+    @PostConstruct
+    public void start() {
+        trusted.clear();
+        for (String proxy : StringUtils.split(StringUtils.defaultString(trustedProxies), ", ")) {
+            Cidr cidr = Cidr.parse(proxy);
+            if (cidr == null) {
+                log.warn("忽略无法解析的受信任代理地址：{}", proxy);
+            } else {
+                trusted.add(cidr);
+            }
+        }
+    }
+
+    /**
+     * 解析客户端IP
+     * @param request
+     * @return
+     */
+    public String resolve(HttpServletRequest request) {
+        String remote = request.getRemoteAddr();
+        if (StringUtils.isEmpty(header) || !isTrusted(remote)) {
+            return remote;
+        }
+        String value = request.getHeader(header);
+        if (StringUtils.isBlank(value)) {
+            return remote;
+        }
+        String[] hops = StringUtils.split(value, ',');
+        String client = remote;
+        for (int i = hops.length - 1; i >= 0; i--) {
+            String hop = hops[i].trim();
+            if (!IP_LITERAL.matcher(hop).matches()) {
+                //格式不对说明这一段不是受信任的代理写入的，停在上一个地址
+                break;
+            }
+            client = hop;
+            if (!isTrusted(hop)) {
+                break;
+            }
+        }
+        return client;
+    }
+
+    private boolean isTrusted(String address) {
+        byte[] bytes = toBytes(address);
+        if (bytes == null) {
+            return false;
+        }
+        for (Cidr cidr : trusted) {
+            if (cidr.contains(bytes)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] toBytes(String address) {
+        if (address == null || !IP_LITERAL.matcher(address).matches()) {
+            return null;
+        }
+        try {
+            return InetAddress.getByName(address).getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    private static final class Cidr {
+
+        private final byte[] network;
+
+        private final int prefix;
+
+        private Cidr(byte[] network, int prefix) {
+            this.network = network;
+            this.prefix = prefix;
+        }
+
+        private static Cidr parse(String value) {
+            int slash = value.indexOf('/');
+            byte[] network = toBytes(slash < 0 ? value : value.substring(0, slash));
+            if (network == null) {
+                return null;
+            }
+            int prefix = network.length * 8;
+            if (slash >= 0) {
+                try {
+                    prefix = Integer.parseInt(value.substring(slash + 1));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                if (prefix < 0 || prefix > network.length * 8) {
+                    return null;
+                }
+            }
+            return new Cidr(network, prefix);
+        }
+
+        private boolean contains(byte[] address) {
+            if (address.length != network.length) {
+                return false;
+            }
+            int full = prefix / 8;
+            for (int i = 0; i < full; i++) {
+                if (address[i] != network[i]) {
+                    return false;
+                }
+            }
+            int rest = prefix % 8;
+            if (rest == 0) {
+                return true;
+            }
+            int mask = 0xFF << (8 - rest);
+            return (address[full] & mask) == (network[full] & mask);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.ljx.sms;
+
+import com.ljx.common.CustomException;
+import com.ljx.entity.VerificationCode;
+import com.ljx.mapper.VerificationCodeMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+* 保存在数据库中的验证码存储，多实例部署且请求不能固定到同一实例时使用
+* 限流、校验次数和一次性使用都通过单条条件更新保证，各实例行为一致
+* 后台线程定时删除过期的验证码和已经补满的令牌桶*/
+@Component
+@ConditionalOnProperty(name = "reggie.sms.store", havingValue = "database")
+@Slf4j
+public class DatabaseVerificationCodeStore implements VerificationCodeStore {
+
+    @Autowired
+    private VerificationCodeMapper verificationCodeMapper;
+
+    @Value("${reggie.sms.code-ttl-seconds:300}")
+    private long codeTtlSeconds;
+
+    @Value("${reggie.sms.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${reggie.sms.phone-bucket.capacity:3}")
+    private int phoneCapacity;
+
+    @Value("${reggie.sms.phone-bucket.refill-seconds:60}")
+    private long phoneRefillSeconds;
+
+    @Value("${reggie.sms.ip-bucket.capacity:20}")
+    private int ipCapacity;
+
+    @Value("${reggie.sms.ip-bucket.refill-seconds:6}")
+    private long ipRefillSeconds;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private ScheduledExecutorService cleaner;
+
+    @PostConstruct
+    public void start() {
+        cleaner = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "sms-code-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        cleaner.scheduleWithFixedDelay(this::clean, 60, 60, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        cleaner.shutdownNow();
+    }
+
+    @Override
+    public String issue(String phone, String ip) {
+        long now = System.currentTimeMillis();
+        if (!tryConsume("i:" + ip, ipCapacity, ipRefillSeconds, now)
+                || !tryConsume("p:" + phone, phoneCapacity, phoneRefillSeconds, now)) {
+            throw new CustomException("验证码发送过于频繁，请稍后再试");
+        }
+        String code = String.valueOf(1000 + random.nextInt(9000));
+        verificationCodeMapper.upsert(phone, code, LocalDateTime.now().plusSeconds(codeTtlSeconds));
+        return code;
+    }
+
+    @Override
+    public boolean verify(String phone, String code) {
+        //先计数再比较，并发猜测也不能超过次数限制
+        if (verificationCodeMapper.incrementAttempts(phone, LocalDateTime.now()) == 0) {
+            return false;
+        }
+        VerificationCode saved = verificationCodeMapper.selectByPhone(phone);
+        if (saved == null) {
+            return false;
+        }
+        if (saved.getAttempts() > maxAttempts) {
+            verificationCodeMapper.deleteByCode(phone, saved.getCode());
+            throw new CustomException("验证码错误次数过多，请重新获取");
+        }
+        if (code == null || !MessageDigest.isEqual(saved.getCode().getBytes(StandardCharsets.US_ASCII), code.getBytes(StandardCharsets.US_ASCII))) {
+            return false;
+        }
+        return verificationCodeMapper.deleteByCode(phone, saved.getCode()) == 1;
+    }
+
+    private boolean tryConsume(String key, int capacity, long refillSeconds, long now) {
+        verificationCodeMapper.insertBucket(key, capacity, now);
+        return verificationCodeMapper.consume(key, capacity, refillSeconds * 1000, now) == 1;
+    }
+
+    private void clean() {
+        try {
+            verificationCodeMapper.deleteExpired(LocalDateTime.now());
+            //最后一次使用后经过补满时间的桶与新桶相同
+            long fullMillis = Math.max(phoneCapacity * phoneRefillSeconds, ipCapacity * ipRefillSeconds) * 1000;
+            verificationCodeMapper.deleteIdleBuckets(System.currentTimeMillis() - fullMillis);
+        } catch (RuntimeException e) {
+            log.error("清理过期验证码失败", e);
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.ljx.sms;
+
+import com.ljx.common.CustomException;
+import com.ljx.common.MetricsSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/*
+* 内存验证码存储，默认使用
+* 验证码、按手机号和按IP的令牌桶都保存在有上限的Map中，通过时间轮按到期时间删除，不占用HttpSession
+* 令牌桶数量达到上限时淘汰最接近补满的一批桶，验证码数量达到上限时先删除已过期的，仍然超过时淘汰最接近过期的一批，
+* 而不是拒绝新的手机号和IP，避免大量新key把正常用户挡在外面
+* 只在本实例内存中保存，多实例部署时发送和登录请求需要到达同一实例，否则使用database存储*/
+@Component
+@ConditionalOnProperty(name = "reggie.sms.store", havingValue = "memory", matchIfMissing = true)
+@Slf4j
+public class MemoryVerificationCodeStore implements VerificationCodeStore, MetricsSource {
+
+    private static final String CODE_PREFIX = "c:";
+
+    private static final String PHONE_PREFIX = "p:";
+
+    private static final String IP_PREFIX = "i:";
+
+    //令牌桶、验证码达到上限时一次淘汰的比例，摊薄遍历全部条目的开销
+    private static final int EVICT_PERCENT = 10;
+
+    @Value("${reggie.sms.code-ttl-seconds:300}")
+    private long codeTtlSeconds;
+
+    @Value("${reggie.sms.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${reggie.sms.max-entries:100000}")
+    private int maxEntries;
+
+    @Value("${reggie.sms.phone-bucket.capacity:3}")
+    private int phoneCapacity;
+
+    @Value("${reggie.sms.phone-bucket.refill-seconds:60}")
+    private long phoneRefillSeconds;
+
+    @Value("${reggie.sms.ip-bucket.capacity:20}")
+    private int ipCapacity;
+
+    @Value("${reggie.sms.ip-bucket.refill-seconds:6}")
+    private long ipRefillSeconds;
+
+    //时间来源，测试中替换
+    private LongSupplier clock = System::currentTimeMillis;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private final Map<String, CodeEntry> codes = new ConcurrentHashMap<>();
+
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    private TimingWheel wheel;
+
+    private ScheduledExecutorService ticker;
+
+    private final AtomicLong issued = new AtomicLong();
+
+    private final AtomicLong rateLimited = new AtomicLong();
+
+    private final AtomicLong verifyFailures = new AtomicLong();
+
+    private final AtomicLong expired = new AtomicLong();
+
+    private final AtomicLong evicted = new AtomicLong();
+
+    private final AtomicLong evictedCodes = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        //一秒一个刻度，一圈覆盖验证码有效期时大部分key只需要处理一次
+        wheel = new TimingWheel((int) Math.max(64, codeTtlSeconds + 1), 1000, clock.getAsLong());
+        ticker = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "sms-code-expirer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleWithFixedDelay(this::expire, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        ticker.shutdownNow();
+    }
+
+    @Override
+    public String issue(String phone, String ip) {
+        long now = clock.getAsLong();
+        //先检查IP再检查手机号，一个IP轮流使用大量手机号时不会消耗这些手机号的额度
+        if (!tryConsume(IP_PREFIX + ip, ipCapacity, ipRefillSeconds, now)
+                || !tryConsume(PHONE_PREFIX + phone, phoneCapacity, phoneRefillSeconds, now)) {
+            rateLimited.incrementAndGet();
+            throw new CustomException("验证码发送过于频繁，请稍后再试");
+        }
+        if (codes.size() >= maxEntries && !codes.containsKey(phone)) {
+            evictCodes(now);
+        }
+
+        String code = String.valueOf(1000 + random.nextInt(9000));
+        long expireAt = now + codeTtlSeconds * 1000;
+        codes.put(phone, new CodeEntry(code, expireAt));
+        wheel.schedule(CODE_PREFIX + phone, expireAt);
+        issued.incrementAndGet();
+        return code;
+    }
+
+    @Override
+    public boolean verify(String phone, String code) {
+        CodeEntry entry = codes.get(phone);
+        if (entry == null || entry.expireAt <= clock.getAsLong()) {
+            verifyFailures.incrementAndGet();
+            return false;
+        }
+        //先计数再比较，并发猜测也不能超过次数限制
+        if (entry.attempts.incrementAndGet() > maxAttempts) {
+            codes.remove(phone, entry);
+            verifyFailures.incrementAndGet();
+            throw new CustomException("验证码错误次数过多，请重新获取");
+        }
+        if (code == null || !MessageDigest.isEqual(entry.code.getBytes(StandardCharsets.US_ASCII), code.getBytes(StandardCharsets.US_ASCII))) {
+            verifyFailures.incrementAndGet();
+            return false;
+        }
+        //同一验证码并发登录时只有一个请求能删除成功
+        return codes.remove(phone, entry);
+    }
+
+    private boolean tryConsume(String key, int capacity, long refillSeconds, long now) {
+        TokenBucket bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= maxEntries) {
+                evictBuckets();
+            }
+            TokenBucket created = new TokenBucket(capacity, refillSeconds * 1000, now);
+            bucket = buckets.putIfAbsent(key, created);
+            if (bucket == null) {
+                bucket = created;
+                //每个桶只在时间轮中放一次，到期时还没补满再按新的补满时间放入
+                wheel.schedule(key, now + refillSeconds * 1000);
+            }
+        }
+        return bucket.tryConsume(now);
+    }
+
+    //淘汰补满时间最早的一批桶：这些桶剩余的令牌最多，删除后重新创建对限流效果影响最小
+    //被淘汰的key在时间轮中的记录保留，到期时找不到桶或者找到新建的桶都能正确处理
+    private synchronized void evictBuckets() {
+        if (buckets.size() < maxEntries) {
+            //其他线程刚刚淘汰过
+            return;
+        }
+        long[] fullAt = buckets.values().stream().mapToLong(TokenBucket::fullAt).sorted().toArray();
+        if (fullAt.length == 0) {
+            return;
+        }
+        int count = Math.max(1, fullAt.length * EVICT_PERCENT / 100);
+        long threshold = fullAt[count - 1];
+        int removed = 0;
+        for (Map.Entry<String, TokenBucket> entry : buckets.entrySet()) {
+            if (removed >= count) {
+                break;
+            }
+            TokenBucket bucket = entry.getValue();
+            if (bucket.fullAt() <= threshold && buckets.remove(entry.getKey(), bucket)) {
+                removed++;
+            }
+        }
+        evicted.addAndGet(removed);
+        log.warn("验证码令牌桶数量达到上限{}，淘汰{}个最接近补满的桶", maxEntries, removed);
+    }
+
+    //先删除已过期但时间轮还没有处理到的验证码，仍然达到上限时淘汰到期时间最早的一批
+    private synchronized void evictCodes(long now) {
+        if (codes.size() < maxEntries) {
+            return;
+        }
+        for (Map.Entry<String, CodeEntry> entry : codes.entrySet()) {
+            if (entry.getValue().expireAt <= now && codes.remove(entry.getKey(), entry.getValue())) {
+                expired.incrementAndGet();
+            }
+        }
+        if (codes.size() >= maxEntries) {
+            long[] expireAt = codes.values().stream().mapToLong((entry) -> entry.expireAt).sorted().toArray();
+            if (expireAt.length == 0) {
+                return;
+            }
+            int count = Math.max(1, expireAt.length * EVICT_PERCENT / 100);
+            long threshold = expireAt[count - 1];
+            int removed = 0;
+            for (Map.Entry<String, CodeEntry> entry : codes.entrySet()) {
+                if (removed >= count) {
+                    break;
+                }
+                if (entry.getValue().expireAt <= threshold && codes.remove(entry.getKey(), entry.getValue())) {
+                    removed++;
+                }
+            }
+            evictedCodes.addAndGet(removed);
+            log.warn("验证码数量达到上限{}，淘汰{}个最接近过期的验证码", maxEntries, removed);
+        }
+    }
+
+    //时间轮推进到当前时间，删除过期的验证码和已经补满的令牌桶
+    void expire() {
+        long now = clock.getAsLong();
+        wheel.advance(now, (key) -> {
+            if (key.startsWith(CODE_PREFIX)) {
+                String phone = key.substring(CODE_PREFIX.length());
+                CodeEntry entry = codes.get(phone);
+                if (entry == null) {
+                    return;
+                }
+                if (entry.expireAt <= now) {
+                    if (codes.remove(phone, entry)) {
+                        expired.incrementAndGet();
+                    }
+                } else {
+                    wheel.schedule(key, entry.expireAt);
+                }
+            } else {
+                TokenBucket bucket = buckets.get(key);
+                if (bucket == null) {
+                    return;
+                }
+                long fullAt = bucket.fullAt();
+                if (fullAt <= now) {
+                    buckets.remove(key, bucket);
+                } else {
+                    wheel.schedule(key, fullAt);
+                }
+            }
+        });
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "verificationCode";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("codes", codes.size());
+        metrics.put("buckets", buckets.size());
+        metrics.put("issued", issued.get());
+        metrics.put("rateLimited", rateLimited.get());
+        metrics.put("verifyFailures", verifyFailures.get());
+        metrics.put("expired", expired.get());
+        metrics.put("evictedBuckets", evicted.get());
+        metrics.put("evictedCodes", evictedCodes.get());
+        return metrics;
+    }
+
+    private static final class CodeEntry {
+
+        private final String code;
+
+        private final long expireAt;
+
+        private final AtomicInteger attempts = new AtomicInteger();
+
+        private CodeEntry(String code, long expireAt) {
+            this.code = code;
+            this.expireAt = expireAt;
+        }
+    }
+}
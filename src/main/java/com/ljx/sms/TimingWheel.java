@@ -0,0 +1,62 @@
+package com.ljx.sms;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/*
+* 时间轮，按到期时间把key放进对应的槽，每次推进只处理到期槽中的key，不需要扫描全部数据
+* 超过一圈的key到期槽被处理时还没有过期，由调用方重新放入*/
+public class TimingWheel {
+
+    private final long tickMillis;
+
+    private final Queue<String>[] slots;
+
+    //已经处理过的最后一个刻度
+    private volatile long currentTick;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(int slotCount, long tickMillis, long now) {
+        this.tickMillis = tickMillis;
+        this.slots = new Queue[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.currentTick = now / tickMillis;
+    }
+
+    /**
+     * 在指定时间之后处理key，同一个key可以放入多次
+     * @param key
+     * @param deadline 毫秒
+     */
+    public void schedule(String key, long deadline) {
+        //已经处理过的刻度放到下一个刻度，避免遗漏
+        long tick = Math.max(deadline / tickMillis + 1, currentTick + 1);
+        slots[(int) (tick % slots.length)].add(key);
+    }
+
+    /**
+     * 推进到当前时间，依次处理经过的槽中的key
+     * @param now
+     * @param expirer 检查key是否真的过期，过期则删除，否则重新放入
+     */
+    public synchronized void advance(long now, Consumer<String> expirer) {
+        long targetTick = now / tickMillis;
+        //停顿超过一圈时每个槽只需要处理一次
+        long from = Math.max(currentTick + 1, targetTick - slots.length + 1);
+        for (long tick = from; tick <= targetTick; tick++) {
+            Queue<String> slot = slots[(int) (tick % slots.length)];
+            //只处理进入时已有的key，处理期间重新放入同一槽的key留到下一圈
+            for (int n = slot.size(); n > 0; n--) {
+                String key = slot.poll();
+                if (key == null) {
+                    break;
+                }
+                expirer.accept(key);
+            }
+        }
+        currentTick = Math.max(currentTick, targetTick);
+    }
+}
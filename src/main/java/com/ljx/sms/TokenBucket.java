@@ -0,0 +1,50 @@
+package com.ljx.sms;
+
+/*
+* 令牌桶，容量为允许的突发次数，每隔固定时间补充一个令牌*/
+public class TokenBucket {
+
+    private final int capacity;
+
+    private final long millisPerToken;
+
+    private double tokens;
+
+    private long refillTime;
+
+    public TokenBucket(int capacity, long millisPerToken, long now) {
+        this.capacity = capacity;
+        this.millisPerToken = millisPerToken;
+        this.tokens = capacity;
+        this.refillTime = now;
+    }
+
+    /**
+     * 取一个令牌
+     * @param now 当前时间（毫秒）
+     * @return 没有可用令牌时返回false
+     */
+    public synchronized boolean tryConsume(long now) {
+        refill(now);
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    /**
+     * 令牌补满的时间，此后该桶与新建的桶没有区别，可以删除
+     * @return
+     */
+    public synchronized long fullAt() {
+        return refillTime + (long) Math.ceil((capacity - tokens) * millisPerToken);
+    }
+
+    private void refill(long now) {
+        if (now > refillTime) {
+            tokens = Math.min(capacity, tokens + (double) (now - refillTime) / millisPerToken);
+            refillTime = now;
+        }
+    }
+}
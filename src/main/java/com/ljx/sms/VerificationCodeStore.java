@@ -0,0 +1,25 @@
+package com.ljx.sms;
+
+/*
+* 短信验证码存储，负责生成、限流和校验验证码
+* memory：本实例内存保存，默认使用；database：保存在数据库，多实例部署且请求不能固定到同一实例时使用*/
+public interface VerificationCodeStore {
+
+    /**
+     * 为手机号生成新的验证码，旧验证码失效
+     * 同一手机号、同一IP发送过于频繁时抛出CustomException
+     * @param phone
+     * @param ip 客户端地址
+     * @return 需要发送的验证码
+     */
+    String issue(String phone, String ip);
+
+    /**
+     * 校验验证码，校验成功后验证码失效，只能使用一次
+     * 错误次数超过限制时验证码失效并抛出CustomException
+     * @param phone
+     * @param code
+     * @return
+     */
+    boolean verify(String phone, String code);
+}
@@ -0,0 +1,158 @@
+package com.ljx.stock;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/*
+* 分段库存计数器
+* 剩余数量分散在多个分段中，每个线程从随机的分段开始扣减，大量并发扣减时不会争抢同一个变量，也不需要全局锁
+* 一个分段不够时继续从其他分段扣，全部分段都不够时归还已经扣下的数量并返回失败，剩余数量不会小于0
+* 竞争激烈时多个线程可能互相扣下一部分又归还，重试几次仍失败就加锁逐步累计扣减，避免剩余足够时误判为不足*/
+public class StripedCounter {
+
+    //每个分段占一个缓存行（64字节），避免伪共享
+    private static final int PADDING = 16;
+
+    //并发扣减时别的线程可能暂时扣下了一部分又归还，失败后剩余数量足够时重试
+    private static final int MAX_ATTEMPTS = 3;
+
+    //加锁扣减时连续没有进展的轮数上限，其他线程扣下又归还只需要很短的时间
+    private static final int MAX_IDLE_ROUNDS = 64;
+
+    private final int stripes;
+
+    private final AtomicIntegerArray cells;
+
+    public StripedCounter(int initial, int stripes) {
+        if (initial < 0 || stripes <= 0) {
+            throw new IllegalArgumentException("initial=" + initial + ", stripes=" + stripes);
+        }
+        this.stripes = stripes;
+        this.cells = new AtomicIntegerArray(stripes * PADDING);
+        for (int i = 0; i < stripes; i++) {
+            cells.set(i * PADDING, initial / stripes + (i < initial % stripes ? 1 : 0));
+        }
+    }
+
+    /**
+     * 扣减n个，剩余不足时不扣减
+     * @param n
+     * @return 是否扣减成功
+     */
+    public boolean tryAcquire(int n) {
+        if (n <= 0) {
+            return true;
+        }
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            if (acquireUpTo(n, true) == n) {
+                return true;
+            }
+            if (remaining() < n) {
+                return false;
+            }
+        }
+        return acquireLocked(n);
+    }
+
+    //加锁后逐步累计扣减，已经扣下的部分不归还，其他线程的全有或全无扣减会失败并归还，直到凑够n个或确实不足
+    private synchronized boolean acquireLocked(int n) {
+        int taken = 0;
+        int idleRounds = 0;
+        while (taken < n) {
+            int take = acquireUpTo(n - taken, false);
+            taken += take;
+            if (take > 0) {
+                idleRounds = 0;
+            } else if (++idleRounds > MAX_IDLE_ROUNDS) {
+                release(taken);
+                return false;
+            } else {
+                Thread.yield();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 尽量扣减，最多扣n个
+     * @param n
+     * @return 实际扣减的数量
+     */
+    public int drain(int n) {
+        return n <= 0 ? 0 : acquireUpTo(n, false);
+    }
+
+    /**
+     * 把剩余数量调整为target，用于修改限量
+     * 按目标值调整而不是按限量的差值调整：减少限量时剩余不足差值只能扣到0，之后再增加限量按差值归还会多出库存
+     * @param target 调整后的剩余数量
+     * @return 调整后的剩余数量，并发扣减时是一个近似值
+     */
+    public int adjustTo(int target) {
+        int delta = Math.max(0, target) - remaining();
+        if (delta > 0) {
+            release(delta);
+        } else {
+            drain(-delta);
+        }
+        return remaining();
+    }
+
+    /**
+     * 归还n个
+     * @param n
+     */
+    public void release(int n) {
+        if (n > 0) {
+            cells.addAndGet(startStripe() * PADDING, n);
+        }
+    }
+
+    //各分段之和，并发修改时是一个近似值
+    public int remaining() {
+        int sum = 0;
+        for (int i = 0; i < stripes; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    private int acquireUpTo(int n, boolean allOrNothing) {
+        int start = startStripe();
+        int taken = 0;
+        int[] takenPerStripe = null;
+        for (int i = 0; i < stripes && taken < n; i++) {
+            int index = ((start + i) % stripes) * PADDING;
+            while (true) {
+                int available = cells.get(index);
+                if (available <= 0) {
+                    break;
+                }
+                int take = Math.min(available, n - taken);
+                if (cells.compareAndSet(index, available, available - take)) {
+                    taken += take;
+                    if (taken < n) {
+                        if (takenPerStripe == null) {
+                            takenPerStripe = new int[stripes];
+                        }
+                        takenPerStripe[(start + i) % stripes] += take;
+                    }
+                    break;
+                }
+            }
+        }
+        if (taken < n && allOrNothing && takenPerStripe != null) {
+            for (int i = 0; i < stripes; i++) {
+                if (takenPerStripe[i] > 0) {
+                    cells.addAndGet(i * PADDING, takenPerStripe[i]);
+                }
+            }
+            return 0;
+        }
+        return taken;
+    }
+
+    private int startStripe() {
+        return stripes == 1 ? 0 : ThreadLocalRandom.current().nextInt(stripes);
+    }
+}
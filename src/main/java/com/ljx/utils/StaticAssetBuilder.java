@@ -0,0 +1,156 @@
+package com.ljx.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 构建时处理静态资源，在process-classes阶段由maven-antrun-plugin对target/classes/static执行，源文件不变
+ * 1.页面中引用的js、css改为带内容MD5的文件名，例如vue.js改为vue-{md5}.js，
+ *   与VersionResourceResolver的ContentVersionStrategy规则相同，运行时校验MD5后返回原文件，内容变化后地址随之变化
+ *   页面每次都从源目录读取后改写，增量构建时maven-resources不会重新复制比源文件新的页面，改写已改写过的页面会保留旧的MD5
+ * 2.文本类资源生成gzip压缩版本（.gz），运行时由EncodedResourceResolver按Accept-Encoding返回
+ * JDK没有brotli编码器，不生成.br文件；EncodedResourceResolver同样支持br，以后构建中加入.br即可生效
+ */
+@Slf4j
+public class StaticAssetBuilder {
+
+    //src、href引用的本地js、css，带查询参数和外部地址的不处理
+    private static final Pattern REFERENCE = Pattern.compile("(\\s(?:src|href)\\s*=\\s*\")([^\"?#:]+\\.(?:js|css))(\")");
+
+    private static final Set<String> COMPRESSIBLE = new HashSet<>(Arrays.asList(
+            "html", "js", "css", "json", "svg", "ttf", "otf", "eot", "ico", "map", "txt"));
+
+    //小于该大小的文件压缩后节省不多
+    private static final int MIN_COMPRESS_SIZE = 1024;
+
+    /**
+     * @param args 静态资源源目录、构建输出目录
+     */
+    public static void main(String[] args) throws IOException {
+        Path source = Paths.get(args[0]).toAbsolutePath().normalize();
+        Path root = Paths.get(args[1]).toAbsolutePath().normalize();
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        int[] counts = build(source, root);
+        log.info("静态资源处理完成：{}个页面更新引用，{}个文件生成gzip版本", counts[0], counts[1]);
+    }
+
+    /**
+     * 处理静态资源目录
+     * @param source 源目录，页面从这里读取
+     * @param root 构建输出目录
+     * @return 更新引用的页面数，生成gzip的文件数
+     * @throws IOException
+     */
+    static int[] build(Path source, Path root) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk.filter(Files::isRegularFile)
+                    .filter((file) -> !file.getFileName().toString().endsWith(".gz"))
+                    .collect(Collectors.toList());
+        }
+        //先改写页面，再压缩改写后的内容
+        int rewritten = 0;
+        Map<Path, String> hashes = new HashMap<>();
+        for (Path file : files) {
+            if (file.getFileName().toString().endsWith(".html") && rewrite(source, root, file, hashes)) {
+                rewritten++;
+            }
+        }
+        int compressed = 0;
+        for (Path file : files) {
+            if (compress(file)) {
+                compressed++;
+            }
+        }
+        return new int[]{rewritten, compressed};
+    }
+
+    private static boolean rewrite(Path source, Path root, Path page, Map<Path, String> hashes) throws IOException {
+        Path original = source.resolve(root.relativize(page));
+        String html = new String(Files.readAllBytes(Files.isRegularFile(original) ? original : page), StandardCharsets.UTF_8);
+        Matcher matcher = REFERENCE.matcher(html);
+        StringBuffer result = new StringBuffer();
+        boolean changed = false;
+        while (matcher.find()) {
+            String reference = matcher.group(2);
+            Path target = reference.startsWith("/") ? root.resolve(reference.substring(1))
+                    : page.getParent().resolve(reference);
+            target = target.normalize();
+            String replacement = reference;
+            if (target.startsWith(root) && Files.isRegularFile(target)) {
+                String hash = hashes.computeIfAbsent(target, StaticAssetBuilder::md5);
+                int dot = reference.lastIndexOf('.');
+                replacement = reference.substring(0, dot) + "-" + hash + reference.substring(dot);
+                changed = true;
+            }
+            matcher.appendReplacement(result, Matcher.quoteReplacement(matcher.group(1) + replacement + matcher.group(3)));
+        }
+        if (!changed) {
+            return false;
+        }
+        matcher.appendTail(result);
+        Files.write(page, result.toString().getBytes(StandardCharsets.UTF_8));
+        return true;
+    }
+
+    //压缩后小于原文件的90%才保留
+    //先删除上次构建留下的.gz，增量构建时文件变小或压缩效果变差后不会继续返回旧的压缩内容
+    private static boolean compress(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        if (dot < 0 || !COMPRESSIBLE.contains(name.substring(dot + 1).toLowerCase())) {
+            return false;
+        }
+        Path gzip = file.resolveSibling(name + ".gz");
+        Files.deleteIfExists(gzip);
+        byte[] content = Files.readAllBytes(file);
+        if (content.length < MIN_COMPRESS_SIZE) {
+            return false;
+        }
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzip)) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            out.write(content);
+        }
+        if (Files.size(gzip) > content.length * 0.9) {
+            Files.delete(gzip);
+            return false;
+        }
+        return true;
+    }
+
+    private static String md5(Path file) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(Files.readAllBytes(file));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.ljx.utils;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 事务工具类
+ */
+public class TransactionUtils {
+
+    /**
+     * 在当前事务提交之后执行，没有事务时立即执行
+     * 用于缓存失效等必须在数据真正落库之后才能进行的操作
+     * @param action
+     */
+    public static void afterCommit(Runnable action){
+        if(TransactionSynchronizationManager.isSynchronizationActive()){
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        }else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,7 @@
+-- 后台列表游标分页（请求带cursor参数）使用的联合索引
+-- 按 (排序字段, id) 定位下一页并排序，where条件和order by都可以直接走索引，不需要filesort
+-- 已经建好表的库直接执行，索引已存在时先删除同名索引
+ALTER TABLE `dish` ADD KEY `idx_dish_update_time_id` (`update_time`,`id`);
+ALTER TABLE `setmeal` ADD KEY `idx_setmeal_update_time_id` (`update_time`,`id`);
+ALTER TABLE `employee` ADD KEY `idx_employee_update_time_id` (`update_time`,`id`);
+ALTER TABLE `category` ADD KEY `idx_category_sort_id` (`sort`,`id`);
@@ -0,0 +1,21 @@
+-- 菜品、套餐每日限量库存，没有记录的菜品和套餐不限量
+CREATE TABLE `stock` (
+  `id` bigint NOT NULL COMMENT '主键',
+  `dish_id` bigint DEFAULT NULL COMMENT '菜品id',
+  `setmeal_id` bigint DEFAULT NULL COMMENT '套餐id',
+  `stock_date` date NOT NULL COMMENT '库存日期',
+  `total` int NOT NULL COMMENT '当日限量',
+  `sold` int NOT NULL DEFAULT '0' COMMENT '已售数量',
+  `create_time` datetime NOT NULL COMMENT '创建时间',
+  `update_time` datetime NOT NULL COMMENT '更新时间',
+  `create_user` bigint NOT NULL COMMENT '创建人',
+  `update_user` bigint NOT NULL COMMENT '修改人',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_stock_date_dish` (`stock_date`,`dish_id`),
+  UNIQUE KEY `uk_stock_date_setmeal` (`stock_date`,`setmeal_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8 COMMENT='每日库存';
+
+-- 已经建好stock表的库执行以下语句，执行前先删除同一天同一菜品、套餐的重复记录
+-- ALTER TABLE `stock` DROP KEY `idx_stock_date`,
+--   ADD UNIQUE KEY `uk_stock_date_dish` (`stock_date`,`dish_id`),
+--   ADD UNIQUE KEY `uk_stock_date_setmeal` (`stock_date`,`setmeal_id`);
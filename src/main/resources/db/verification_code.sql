@@ -0,0 +1,18 @@
+-- 短信验证码，reggie.sms.store=database时使用
+CREATE TABLE `verification_code` (
+  `phone` varchar(20) NOT NULL COMMENT '手机号',
+  `code` varchar(8) NOT NULL COMMENT '验证码',
+  `expire_time` datetime NOT NULL COMMENT '过期时间',
+  `attempts` int NOT NULL DEFAULT '0' COMMENT '已校验次数',
+  PRIMARY KEY (`phone`),
+  KEY `idx_expire_time` (`expire_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8 COMMENT='短信验证码';
+
+-- 发送验证码的令牌桶，按手机号和IP限流
+CREATE TABLE `rate_limit_bucket` (
+  `bucket_key` varchar(64) NOT NULL COMMENT '限流对象，p:手机号 或 i:IP',
+  `tokens` double NOT NULL COMMENT '剩余令牌数',
+  `refill_time` bigint NOT NULL COMMENT '最后补充时间（毫秒）',
+  PRIMARY KEY (`bucket_key`),
+  KEY `idx_refill_time` (`refill_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8 COMMENT='限流令牌桶';
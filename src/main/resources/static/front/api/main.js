@@ -69,3 +69,20 @@ function setMealDishDetailsApi(id) {
 }
 
 
+
+//获取完整菜单（分类、菜品、套餐），菜单未变化时服务端返回304
+function menuApi() {
+    return $axios({
+        'url': '/menu',
+        'method': 'get',
+    })
+}
+
+//批量修改购物车，data为[{dishId或setmealId, dishFlavor, delta}]，返回修改后的整个购物车
+function batchCartApi(data){
+    return $axios({
+        'url': '/shoppingCart/batch',
+        'method': 'post',
+        data
+      })
+}
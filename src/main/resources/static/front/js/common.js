@@ -1,7 +1,8 @@
 var web_prefix = '/front'
 
-function imgPath(path){
-    return '/common/download?name=' + path
+//size为图片版本：thumb、list、detail，不传返回原图
+function imgPath(path, size){
+    return '/common/download?name=' + path + (size ? '&size=' + size : '')
 }
 
 //将url传参转换为数组
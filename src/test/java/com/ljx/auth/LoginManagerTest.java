@@ -0,0 +1,75 @@
+package com.ljx.auth;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.servlet.http.Cookie;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoginManagerTest {
+
+    private LoginManager loginManager;
+
+    @BeforeEach
+    void setUp() {
+        loginManager = new LoginManager();
+        ReflectionTestUtils.setField(loginManager, "mode", "token");
+        ReflectionTestUtils.setField(loginManager, "ttlMinutes", 60L);
+        ReflectionTestUtils.setField(loginManager, "keys", "k1:0123456789abcdef0123456789abcdef");
+        loginManager.init();
+    }
+
+    //登录响应中Set-Cookie的令牌
+    private Cookie login(String type, Long id) {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        loginManager.login(new MockHttpServletRequest(), response, type, id);
+        return response.getCookie(LoginManager.TOKEN_COOKIE_PREFIX + type);
+    }
+
+    private LoginPrincipal authenticate(Cookie... cookies) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        if (cookies.length > 0) {
+            request.setCookies(cookies);
+        }
+        return loginManager.authenticate(request, new MockHttpServletResponse());
+    }
+
+    @Test
+    void employeeAndUserLoginsUseSeparateCookies() {
+        Cookie employee = login(LoginPrincipal.EMPLOYEE, 1L);
+        Cookie user = login(LoginPrincipal.USER, 2L);
+        assertNotNull(employee);
+        assertNotNull(user);
+
+        //同一浏览器两种登录都在时优先识别为员工，与会话方式相同
+        LoginPrincipal principal = authenticate(employee, user);
+        assertTrue(principal.isEmployee());
+        assertEquals(1L, principal.getId());
+        assertEquals(2L, authenticate(user).getId());
+        assertNull(authenticate());
+    }
+
+    @Test
+    void tokenInTheWrongCookieIsRejected() {
+        Cookie user = login(LoginPrincipal.USER, 2L);
+
+        assertNull(authenticate(new Cookie(LoginManager.TOKEN_COOKIE_PREFIX + LoginPrincipal.EMPLOYEE, user.getValue())));
+    }
+
+    @Test
+    void logoutClearsOnlyThatTypesCookie() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        loginManager.logout(new MockHttpServletRequest(), response, LoginPrincipal.USER);
+
+        List<String> cookies = response.getHeaders(HttpHeaders.SET_COOKIE);
+        assertEquals(1, cookies.size());
+        assertTrue(cookies.get(0).startsWith(LoginManager.TOKEN_COOKIE_PREFIX + LoginPrincipal.USER + "="));
+        assertTrue(cookies.get(0).contains("Max-Age=0"));
+    }
+}
@@ -0,0 +1,77 @@
+package com.ljx.auth;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenSignerTest {
+
+    private static final long NOW = 1_700_000_000L;
+
+    private static LinkedHashMap<String, byte[]> keys(String... keyIds) {
+        LinkedHashMap<String, byte[]> keys = new LinkedHashMap<>();
+        for (String keyId : keyIds) {
+            keys.put(keyId, ("secret-of-" + keyId + "-0123456789abcdef").getBytes(StandardCharsets.UTF_8));
+        }
+        return keys;
+    }
+
+    @Test
+    void issuedTokenVerifies() {
+        TokenSigner signer = new TokenSigner(keys("k1"));
+        String token = signer.issue(LoginPrincipal.USER, 42L, NOW + 60);
+
+        LoginPrincipal principal = signer.verify(token, NOW);
+        assertNotNull(principal);
+        assertEquals(LoginPrincipal.USER, principal.getType());
+        assertEquals(42L, principal.getId());
+        assertEquals(NOW + 60, principal.getExpiresAt());
+        assertFalse(principal.isEmployee());
+        assertTrue(signer.isSignedByPrimary(token));
+    }
+
+    @Test
+    void tamperedTokenIsRejected() {
+        TokenSigner signer = new TokenSigner(keys("k1"));
+        String token = signer.issue(LoginPrincipal.USER, 42L, NOW + 60);
+
+        //把用户改成员工、改id、改过期时间都会导致签名不匹配
+        assertNull(signer.verify(token.replace(".user.", ".employee."), NOW));
+        assertNull(signer.verify(token.replace(".42.", ".43."), NOW));
+        assertNull(signer.verify(token.replace("." + (NOW + 60) + ".", "." + (NOW + 6000) + "."), NOW));
+        assertNull(signer.verify(token.substring(0, token.length() - 2), NOW));
+        assertNull(signer.verify("garbage", NOW));
+        assertNull(signer.verify(null, NOW));
+    }
+
+    @Test
+    void expiredTokenIsRejected() {
+        TokenSigner signer = new TokenSigner(keys("k1"));
+        String token = signer.issue(LoginPrincipal.EMPLOYEE, 1L, NOW + 60);
+
+        assertNotNull(signer.verify(token, NOW + 59));
+        assertNull(signer.verify(token, NOW + 60));
+    }
+
+    @Test
+    void tokenSignedByRetiredKeyStillVerifiesAfterRotation() {
+        String oldToken = new TokenSigner(keys("k1")).issue(LoginPrincipal.USER, 7L, NOW + 60);
+
+        //新密钥放在最前面，旧密钥只用于校验
+        TokenSigner rotated = new TokenSigner(keys("k2", "k1"));
+        assertNotNull(rotated.verify(oldToken, NOW));
+        assertFalse(rotated.isSignedByPrimary(oldToken));
+        assertTrue(rotated.isSignedByPrimary(rotated.issue(LoginPrincipal.USER, 7L, NOW + 60)));
+    }
+
+    @Test
+    void tokenWithUnknownKeyIsRejected() {
+        String token = new TokenSigner(keys("k1")).issue(LoginPrincipal.USER, 7L, NOW + 60);
+
+        //旧密钥已删除
+        assertNull(new TokenSigner(keys("k2")).verify(token, NOW));
+    }
+}
@@ -0,0 +1,120 @@
+package com.ljx.cache;
+
+import com.ljx.common.JacksonObjectMapper;
+import com.ljx.common.R;
+import com.ljx.dto.DishDto;
+import com.ljx.entity.DishFlavor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonBytesCacheTest {
+
+    @Test
+    void serializesOncePerVersion() throws Exception {
+        JsonBytesCache cache = new JsonBytesCache(16, 1024);
+        AtomicInteger loads = new AtomicInteger();
+        List<DishDto> dishes = dishes(40);
+
+        JsonBytes first = cache.get("dish:list:1", 1, () -> { loads.incrementAndGet(); return R.success(dishes); });
+        JsonBytes second = cache.get("dish:list:1", 1, () -> { loads.incrementAndGet(); return R.success(dishes); });
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+
+        JsonBytes third = cache.get("dish:list:1", 2, () -> { loads.incrementAndGet(); return R.success(dishes); });
+        assertNotSame(first, third);
+        assertEquals(2, loads.get());
+
+        //与jackson转换器输出一致，gzip解压后内容相同
+        byte[] expected = new JacksonObjectMapper().writeValueAsBytes(R.success(dishes));
+        assertArrayEquals(expected, third.getJson());
+        assertTrue(third.hasGzip());
+        assertArrayEquals(expected, gunzip(third.getGzip()));
+    }
+
+    @Test
+    void smallBodiesAreNotCompressed() {
+        JsonBytesCache cache = new JsonBytesCache(16, 1024);
+        JsonBytes jsonBytes = cache.get("category:list:null", 1, () -> R.success(new ArrayList<>()));
+        assertFalse(jsonBytes.hasGzip());
+    }
+
+    /**
+     * 每次请求都用jackson序列化 与 直接使用缓存字节 的对比
+     * mvn test -Dtest=JsonBytesCacheTest -Dbench=true
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "bench", matches = "true")
+    void benchmarkSerializePerRequestVsCachedBytes() throws Exception {
+        JacksonObjectMapper objectMapper = new JacksonObjectMapper();
+        JsonBytesCache cache = new JsonBytesCache(16, 1024);
+        R<List<DishDto>> body = R.success(dishes(40));
+        int iterations = 200_000;
+
+        ByteArrayOutputStream sink = new ByteArrayOutputStream(64 * 1024);
+        for (int i = 0; i < iterations / 10; i++) {
+            sink.reset();
+            objectMapper.writeValue(sink, body);
+            sink.reset();
+            sink.write(cache.get("dish:list:1", 1, () -> body).getJson());
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink.reset();
+            objectMapper.writeValue(sink, body);
+        }
+        long before = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink.reset();
+            sink.write(cache.get("dish:list:1", 1, () -> body).getJson());
+        }
+        long after = System.nanoTime() - start;
+
+        System.out.printf("jackson per request : %.2f us/op%n", before / 1000.0 / iterations);
+        System.out.printf("cached json bytes   : %.2f us/op%n", after / 1000.0 / iterations);
+        System.out.printf("speedup             : %.1fx%n", (double) before / after);
+        assertTrue(after < before);
+    }
+
+    private List<DishDto> dishes(int size) {
+        List<DishDto> dishes = new ArrayList<>();
+        for (long i = 1; i <= size; i++) {
+            DishDto dishDto = new DishDto();
+            dishDto.setId(1397849739276890000L + i);
+            dishDto.setName("菜品" + i);
+            dishDto.setCategoryId(1397844263642378242L);
+            dishDto.setCategoryName("湘菜");
+            dishDto.setPrice(new BigDecimal("8800"));
+            dishDto.setImage("0a3b3288-3446-4420-bbff-f263d0c02d8e.jpg");
+            dishDto.setDescription("口味鲜美，营养丰富");
+            dishDto.setStatus(1);
+            dishDto.setUpdateTime(LocalDateTime.of(2026, 10, 1, 12, 0));
+            DishFlavor flavor = new DishFlavor();
+            flavor.setDishId(dishDto.getId());
+            flavor.setName("辣度");
+            flavor.setValue("[\"不辣\",\"微辣\",\"中辣\",\"重辣\"]");
+            dishDto.getFlavors().add(flavor);
+            dishes.add(dishDto);
+        }
+        return dishes;
+    }
+
+    private byte[] gunzip(byte[] gzip) throws Exception {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.ljx.cart;
+
+import com.ljx.entity.ShoppingCart;
+import com.ljx.mapper.ShoppingCartMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class MemoryCartStoreTest {
+
+    private ShoppingCartMapper shoppingCartMapper;
+
+    private MemoryCartStore store;
+
+    @BeforeEach
+    void setUp() {
+        shoppingCartMapper = mock(ShoppingCartMapper.class);
+        when(shoppingCartMapper.selectList(any())).thenReturn(Collections.emptyList());
+        store = new MemoryCartStore();
+        ReflectionTestUtils.setField(store, "shoppingCartMapper", shoppingCartMapper);
+        ReflectionTestUtils.setField(store, "transactionTemplate", new TransactionTemplate(mock(PlatformTransactionManager.class)));
+        ReflectionTestUtils.setField(store, "ttlMinutes", 30L);
+    }
+
+    private static ShoppingCart dish(long dishId) {
+        ShoppingCart item = new ShoppingCart();
+        item.setDishId(dishId);
+        item.setName("dish" + dishId);
+        item.setAmount(new BigDecimal("9.9"));
+        return item;
+    }
+
+    @Test
+    void concurrentIncrementsAreNotLost() throws Exception {
+        store.list(1L);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(pool.submit(() -> {
+                for (int j = 0; j < 500; j++) {
+                    store.change(1L, dish(10), 1);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+
+        List<ShoppingCart> cart = store.list(1L);
+        assertEquals(1, cart.size());
+        assertEquals(4000, cart.get(0).getNumber());
+        //加载后的修改都在内存中进行，不再查询数据库
+        verify(shoppingCartMapper, times(1)).selectList(any());
+    }
+
+    @Test
+    void subtractingToZeroRemovesTheLine() {
+        store.change(1L, dish(10), 1);
+        ShoppingCart result = store.change(1L, dish(10), -1);
+        assertEquals(0, result.getNumber());
+        assertTrue(store.list(1L).isEmpty());
+        assertEquals(0, store.change(1L, dish(10), -1).getNumber());
+    }
+
+    @Test
+    void changeAllReturnsTheResultingCart() {
+        store.change(1L, dish(10), 1);
+        List<ShoppingCart> cart = store.changeAll(1L, List.of(
+                new CartChange(dish(10), 2),
+                new CartChange(dish(11), 1),
+                new CartChange(dish(11), -1),
+                new CartChange(dish(12), 3)));
+
+        assertEquals(2, cart.size());
+        assertEquals(10L, cart.get(0).getDishId());
+        assertEquals(3, cart.get(0).getNumber());
+        assertEquals(12L, cart.get(1).getDishId());
+        assertEquals(3, cart.get(1).getNumber());
+    }
+
+    @Test
+    void dirtyCartsAreWrittenBackAndIdleCartsEvicted() {
+        store.change(1L, dish(10), 2);
+        store.flushAndEvict();
+        verify(shoppingCartMapper, times(1)).delete(any());
+        verify(shoppingCartMapper, times(1)).insertBatch(argThat((list) -> list.size() == 1 && list.get(0).getNumber() == 2));
+
+        //没有修改时不回写
+        store.flushAndEvict();
+        verify(shoppingCartMapper, times(1)).insertBatch(anyList());
+
+        ReflectionTestUtils.setField(store, "ttlMinutes", -1L);
+        store.flushAndEvict();
+        assertEquals(0, store.getMetrics().get("carts"));
+    }
+}
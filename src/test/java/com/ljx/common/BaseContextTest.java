@@ -0,0 +1,58 @@
+package com.ljx.common;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BaseContextTest {
+
+    private final ExecutorService pool = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        BaseContext.clear();
+        pool.shutdown();
+        pool.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void wrappedTaskSeesSubmitterIdAndPoolThreadIsRestored() throws Exception {
+        BaseContext.setCurrentId(1L);
+        assertEquals(1L, pool.submit(BaseContext.wrap(BaseContext::getCurrentId)).get());
+
+        //池中线程执行完后不残留上一个任务的用户id
+        assertNull(pool.submit(BaseContext::getCurrentId).get());
+
+        //提交时没有用户id，执行线程原有的值也不会被带入
+        pool.submit(() -> BaseContext.setCurrentId(99L)).get();
+        BaseContext.clear();
+        assertNull(pool.submit(BaseContext.wrap(BaseContext::getCurrentId)).get());
+        assertEquals(99L, pool.submit(BaseContext::getCurrentId).get());
+    }
+
+    @Test
+    void completableFutureStagesUseWrappedExecutor() throws Exception {
+        Executor executor = BaseContext.wrap(pool);
+        BaseContext.setCurrentId(7L);
+        CompletableFuture<Long> future = CompletableFuture
+                .supplyAsync(BaseContext::getCurrentId, executor)
+                .thenApplyAsync((id) -> id + BaseContext.getCurrentId(), executor);
+        BaseContext.setCurrentId(8L);
+
+        assertEquals(14L, future.get(5, TimeUnit.SECONDS));
+        assertNull(pool.submit(BaseContext::getCurrentId).get());
+    }
+
+    @Test
+    void wrapSupplierWorksWithDefaultPool() throws Exception {
+        BaseContext.setCurrentId(3L);
+        assertEquals(3L, CompletableFuture.supplyAsync(BaseContext.wrapSupplier(BaseContext::getCurrentId)).get(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,65 @@
+package com.ljx.common;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.ljx.entity.Category;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SeekPageTest {
+
+    @BeforeAll
+    static void initTableInfo() {
+        TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""), Category.class);
+    }
+
+    private static Category category(long id, Integer sort) {
+        Category category = new Category();
+        category.setId(id);
+        category.setSort(sort);
+        return category;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String sqlFor(List<Category> rows, String cursor, int pageSize, SeekPage<Category>[] result) {
+        IService<Category> service = mock(IService.class);
+        when(service.list(any(LambdaQueryWrapper.class))).thenReturn(new ArrayList<>(rows));
+        result[0] = SeekPage.query(service, new LambdaQueryWrapper<>(), Category::getSort, Category::getId, false, cursor, pageSize);
+        ArgumentCaptor<LambdaQueryWrapper<Category>> captor = ArgumentCaptor.forClass(LambdaQueryWrapper.class);
+        verify(service).list(captor.capture());
+        return captor.getValue().getSqlSegment();
+    }
+
+    @Test
+    void nullSortKeyProducesCursorThatContinuesWithNonNullRows() {
+        @SuppressWarnings("unchecked")
+        SeekPage<Category>[] result = new SeekPage[1];
+        //升序时null排在最前，第一页最后一条的sort为null
+        sqlFor(List.of(category(1, null), category(2, null), category(3, 1)), "", 2, result);
+        assertTrue(result[0].isHasNext());
+        String cursor = result[0].getNextCursor();
+        assertArrayEquals(new Object[]{null, 2L}, SeekPage.decode(cursor));
+
+        String sql = sqlFor(List.of(category(3, 1)), cursor, 2, result);
+        assertTrue(sql.contains("sort IS NULL AND id >"), sql);
+        assertTrue(sql.contains("OR sort IS NOT NULL"), sql);
+        assertFalse(result[0].isHasNext());
+    }
+
+    @Test
+    void invalidCursorIsRejected() {
+        assertThrows(CustomException.class, () -> SeekPage.decode("bm86eDox"));
+        assertArrayEquals(new Object[]{5, 7L}, SeekPage.decode(SeekPage.encode(5, 7L)));
+    }
+}
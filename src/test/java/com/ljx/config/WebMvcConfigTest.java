@@ -0,0 +1,66 @@
+package com.ljx.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.junit.jupiter.web.SpringJUnitWebConfig;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.io.InputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+@SpringJUnitWebConfig(WebMvcConfig.class)
+class WebMvcConfigTest {
+
+    private static final String SCRIPT = "static/backend/plugins/axios/axios.min.js";
+
+    @Autowired
+    private WebApplicationContext context;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+    }
+
+    @Test
+    void servesVersionedScriptWithImmutableCaching() throws Exception {
+        String hash;
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(SCRIPT)) {
+            hash = DigestUtils.md5DigestAsHex(StreamUtils.copyToByteArray(in));
+        }
+
+        MvcResult result = mockMvc.perform(get("/backend/plugins/axios/axios.min-" + hash + ".js")).andReturn();
+        assertEquals(200, result.getResponse().getStatus());
+        assertTrue(result.getResponse().getHeader("Cache-Control").contains("immutable"));
+
+        //内容哈希不一致时不返回
+        result = mockMvc.perform(get("/backend/plugins/axios/axios.min-00000000000000000000000000000000.js")).andReturn();
+        assertEquals(404, result.getResponse().getStatus());
+    }
+
+    @Test
+    void servesPrecompressedVariantWhenAccepted() throws Exception {
+        //gzip版本在process-classes阶段生成，早于test阶段
+        assertNotNull(getClass().getClassLoader().getResource(SCRIPT + ".gz"));
+
+        MvcResult result = mockMvc.perform(get("/backend/plugins/axios/axios.min.js")
+                .header("Accept-Encoding", "gzip, deflate, br")).andReturn();
+        assertEquals(200, result.getResponse().getStatus());
+        assertEquals("no-cache", result.getResponse().getHeader("Cache-Control"));
+        assertEquals("application/javascript", result.getResponse().getContentType());
+        assertEquals("gzip", result.getResponse().getHeader("Content-Encoding"));
+        assertTrue(result.getResponse().getHeaders("Vary").contains("Accept-Encoding"));
+
+        result = mockMvc.perform(get("/backend/plugins/axios/axios.min.js")).andReturn();
+        assertNull(result.getResponse().getHeader("Content-Encoding"));
+    }
+}
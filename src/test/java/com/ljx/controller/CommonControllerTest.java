@@ -0,0 +1,111 @@
+package com.ljx.controller;
+
+import com.ljx.image.ImageCache;
+import com.ljx.image.ImageSender;
+import com.ljx.image.ImageStore;
+import com.ljx.image.ImageVariants;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommonControllerTest {
+
+    @TempDir
+    Path dir;
+
+    private final ImageStore imageStore = new ImageStore();
+
+    private final ImageVariants imageVariants = new ImageVariants();
+
+    private final CommonController controller = new CommonController();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ReflectionTestUtils.setField(imageStore, "basePath", dir.toString());
+        ReflectionTestUtils.setField(imageStore, "migrateLegacy", false);
+        imageStore.start();
+
+        ReflectionTestUtils.setField(imageVariants, "basePath", dir.toString());
+        ReflectionTestUtils.setField(imageVariants, "variants", "thumb:120");
+        ReflectionTestUtils.setField(imageVariants, "quality", 0.8f);
+        ReflectionTestUtils.setField(imageVariants, "workers", 1);
+        ReflectionTestUtils.setField(imageVariants, "queueCapacity", 1);
+        ReflectionTestUtils.setField(imageVariants, "waitMillis", 10_000L);
+        imageVariants.start();
+
+        ImageSender imageSender = new ImageSender();
+        ReflectionTestUtils.setField(imageSender, "cacheMaxAgeDays", 365L);
+        ReflectionTestUtils.setField(imageSender, "imageCache", new ImageCache());
+
+        ReflectionTestUtils.setField(controller, "imageStore", imageStore);
+        ReflectionTestUtils.setField(controller, "imageVariants", imageVariants);
+        ReflectionTestUtils.setField(controller, "imageSender", imageSender);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        imageVariants.stop();
+    }
+
+    @Test
+    void fallbackToOriginalIsNotCachedAsVariant() throws Exception {
+        String name = save(400);
+        //生成线程被占用，等待队列也已满，版本无法生成
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) ReflectionTestUtils.getField(imageVariants, "executor");
+        executor.execute(this::block);
+        executor.execute(this::block);
+
+        MockHttpServletResponse response = download(name, "thumb");
+
+        assertEquals(200, response.getStatus());
+        assertEquals("no-cache", response.getHeader("Cache-Control"));
+        assertEquals(400, ImageIO.read(new ByteArrayInputStream(response.getContentAsByteArray())).getWidth());
+    }
+
+    @Test
+    void generatedVariantIsCachedLongTerm() throws Exception {
+        String name = save(400);
+
+        MockHttpServletResponse response = download(name, "thumb");
+
+        assertEquals("public, max-age=31536000, immutable", response.getHeader("Cache-Control"));
+        assertEquals(120, ImageIO.read(new ByteArrayInputStream(response.getContentAsByteArray())).getWidth());
+    }
+
+    private String save(int width) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, width, BufferedImage.TYPE_INT_RGB), "png", out);
+        return imageStore.save(new ByteArrayInputStream(out.toByteArray()), "a.png");
+    }
+
+    private MockHttpServletResponse download(String name, String size) {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.download(name, size, new MockHttpServletRequest("GET", "/common/download"), response);
+        return response;
+    }
+
+    private void block() {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
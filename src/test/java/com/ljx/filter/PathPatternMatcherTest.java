@@ -0,0 +1,111 @@
+package com.ljx.filter;
+
+import com.alibaba.fastjson.JSON;
+import com.ljx.common.R;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.util.AntPathMatcher;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PathPatternMatcherTest {
+
+    private static final List<String> PATTERNS = Arrays.asList(
+            "/employee/login", "/employee/logout", "/backend/**", "/front/**",
+            "/user/sendMsg", "/user/login", "/user/loginout");
+
+    private static final String[] PATHS = {
+            "/employee/login", "/employee/login/", "/employee/loginx", "/employee/logout", "/employee/page",
+            "/backend", "/backend/", "/backend/index.html", "/backend/js/vue.js", "/backendx/index.html",
+            "/front", "/front/page/login.html", "/frontend/x",
+            "/user/sendMsg", "/user/login", "/user/loginout", "/user/log", "/user",
+            "/", "", "/dish/list", "/order/submit"
+    };
+
+    @Test
+    void matchesSameAsAntPathMatcher() {
+        PathPatternMatcher matcher = new PathPatternMatcher(PATTERNS);
+        AntPathMatcher antPathMatcher = new AntPathMatcher();
+        for (String path : PATHS) {
+            boolean expected = PATTERNS.stream().anyMatch((pattern) -> antPathMatcher.match(pattern, path));
+            assertEquals(expected, matcher.matches(path), path);
+        }
+    }
+
+    @Test
+    void rootSubtreeMatchesEverything() {
+        PathPatternMatcher matcher = new PathPatternMatcher(List.of("/**"));
+        assertTrue(matcher.matches("/"));
+        assertTrue(matcher.matches("/dish/list"));
+    }
+
+    @Test
+    void unsupportedPatternFailsAtStartup() {
+        assertThrows(IllegalArgumentException.class, () -> new PathPatternMatcher(List.of("/dish/*/list")));
+        assertThrows(IllegalArgumentException.class, () -> new PathPatternMatcher(List.of("dish/**")));
+    }
+
+    /**
+     * 原来的 每次新建白名单数组+AntPathMatcher逐条匹配+序列化NOTLOGIN 与 前缀树+预编码字节 的对比
+     * mvn test -Dtest=PathPatternMatcherTest -Dbench=true
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "bench", matches = "true")
+    void benchmarkAntPathMatcherVsPrefixTrie() {
+        AntPathMatcher antPathMatcher = new AntPathMatcher();
+        PathPatternMatcher matcher = new PathPatternMatcher(PATTERNS);
+        byte[] notLogin = JSON.toJSONString(R.error("NOTLOGIN")).getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream(256);
+        int iterations = 1_000_000;
+
+        for (int i = 0; i < iterations / 10; i++) {
+            before(antPathMatcher, PATHS[i % PATHS.length], sink);
+            after(matcher, notLogin, PATHS[i % PATHS.length], sink);
+        }
+
+        long start = System.nanoTime();
+        int matched = 0;
+        for (int i = 0; i < iterations; i++) {
+            matched += before(antPathMatcher, PATHS[i % PATHS.length], sink);
+        }
+        long before = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            matched -= after(matcher, notLogin, PATHS[i % PATHS.length], sink);
+        }
+        long after = System.nanoTime() - start;
+
+        System.out.printf("ant path matcher : %.1f ns/op%n", (double) before / iterations);
+        System.out.printf("prefix trie      : %.1f ns/op%n", (double) after / iterations);
+        System.out.printf("speedup          : %.1fx%n", (double) before / after);
+        assertEquals(0, matched);
+        assertTrue(after < before);
+    }
+
+    private static int before(AntPathMatcher antPathMatcher, String path, ByteArrayOutputStream sink) {
+        String[] urls = PATTERNS.toArray(new String[0]);
+        for (String url : urls) {
+            if (antPathMatcher.match(url, path)) {
+                return 1;
+            }
+        }
+        sink.reset();
+        sink.writeBytes(JSON.toJSONString(R.error("NOTLOGIN")).getBytes(StandardCharsets.UTF_8));
+        return 0;
+    }
+
+    private static int after(PathPatternMatcher matcher, byte[] notLogin, String path, ByteArrayOutputStream sink) {
+        if (matcher.matches(path)) {
+            return 1;
+        }
+        sink.reset();
+        sink.writeBytes(notLogin);
+        return 0;
+    }
+}
@@ -0,0 +1,152 @@
+package com.ljx.filter;
+
+import com.ljx.common.VirtualThreads;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 平台线程池 与 虚拟线程（有无按连接池限流）处理请求的吞吐量、延迟对比
+ * 每个请求模拟两次数据库查询（持有连接）和中间一段不持有连接的阻塞等待
+ * mvn test -Dtest=VirtualThreadLoadTest -Dbench=true
+ * 可以用 -Dload.clients= -Dload.dbMillis= -Dload.otherMillis= 等调整负载
+ */
+@EnabledIfSystemProperty(named = "bench", matches = "true")
+class VirtualThreadLoadTest {
+
+    private final int clients = Integer.getInteger("load.clients", 1000);
+    private final int requestsPerClient = Integer.getInteger("load.requests", 10);
+    private final int connections = Integer.getInteger("load.connections", 20);
+    private final int tomcatThreads = Integer.getInteger("load.tomcatThreads", 200);
+    private final int requestsPerConnection = Integer.getInteger("load.requestsPerConnection", 10);
+    private final long dbMillis = Long.getLong("load.dbMillis", 2);
+    private final long otherMillis = Long.getLong("load.otherMillis", 30);
+    private final long queueTimeoutMillis = Long.getLong("load.queueTimeoutMillis", 3000);
+    //与virtual配置中的druid max-wait相同
+    private final long connectionWaitMillis = Long.getLong("load.connectionWaitMillis", 3000);
+
+    @Test
+    void compareRequestExecutionModes() throws Exception {
+        System.out.printf("clients=%d connections=%d tomcatThreads=%d db=%dms*2 other=%dms virtualThreads=%s%n",
+                clients, connections, tomcatThreads, dbMillis, otherMillis, VirtualThreads.isSupported());
+
+        Result platform = run("platform pool", Executors.newFixedThreadPool(tomcatThreads), null);
+        Result unlimited = run("virtual", VirtualThreads.newThreadPerTaskExecutor("load-"), null);
+        Result limited = run("virtual+limit", VirtualThreads.newThreadPerTaskExecutor("load-"),
+                new ConcurrencyLimitFilter(connections * requestsPerConnection, queueTimeoutMillis,
+                        new PathPatternMatcher(List.of("/front/**"))));
+
+        for (Result result : Arrays.asList(platform, unlimited, limited)) {
+            System.out.println(result);
+        }
+        assertTrue(limited.completed > 0);
+    }
+
+    private Result run(String name, ExecutorService server, ConcurrencyLimitFilter filter) throws Exception {
+        Semaphore pool = new Semaphore(connections, true);
+        AtomicLong failures = new AtomicLong();
+        FilterChain handler = (request, response) -> {
+            try {
+                query(pool, failures);
+                Thread.sleep(otherMillis);
+                query(pool, failures);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        long[] latencies = new long[clients * requestsPerClient];
+        AtomicLong rejected = new AtomicLong();
+        ExecutorService clientPool = Executors.newFixedThreadPool(clients);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            int client = c;
+            futures.add(clientPool.submit(() -> {
+                start.await();
+                for (int i = 0; i < requestsPerClient; i++) {
+                    long begin = System.nanoTime();
+                    MockHttpServletResponse response = new MockHttpServletResponse();
+                    server.submit(() -> {
+                        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/order/page");
+                        if (filter == null) {
+                            handler.doFilter(request, response);
+                        } else {
+                            filter.doFilter(request, response, handler);
+                        }
+                        return null;
+                    }).get();
+                    if (response.getStatus() != 200) {
+                        rejected.incrementAndGet();
+                    }
+                    latencies[client * requestsPerClient + i] = System.nanoTime() - begin;
+                }
+                return null;
+            }));
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long elapsed = System.nanoTime() - begin;
+        clientPool.shutdown();
+        server.shutdown();
+
+        Arrays.sort(latencies);
+        return new Result(name, latencies.length, elapsed, latencies, failures.get(), rejected.get());
+    }
+
+    private void query(Semaphore pool, AtomicLong failures) throws InterruptedException {
+        if (!pool.tryAcquire(connectionWaitMillis, TimeUnit.MILLISECONDS)) {
+            failures.incrementAndGet();
+            return;
+        }
+        try {
+            Thread.sleep(dbMillis);
+        } finally {
+            pool.release();
+        }
+    }
+
+    private static final class Result {
+
+        private final String name;
+        private final int completed;
+        private final long elapsedNanos;
+        private final long[] latencies;
+        private final long connectionTimeouts;
+        private final long rejected;
+
+        private Result(String name, int completed, long elapsedNanos, long[] latencies, long connectionTimeouts, long rejected) {
+            this.name = name;
+            this.completed = completed;
+            this.elapsedNanos = elapsedNanos;
+            this.latencies = latencies;
+            this.connectionTimeouts = connectionTimeouts;
+            this.rejected = rejected;
+        }
+
+        private double percentileMillis(double p) {
+            return latencies[(int) Math.min(latencies.length - 1, latencies.length * p)] / 1_000_000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-14s %8.0f req/s  p50 %7.1fms  p99 %7.1fms  max %7.1fms  connection timeouts %d  rejected %d",
+                    name, completed / (elapsedNanos / 1_000_000_000.0),
+                    percentileMillis(0.5), percentileMillis(0.99), percentileMillis(1.0), connectionTimeouts, rejected);
+        }
+    }
+}
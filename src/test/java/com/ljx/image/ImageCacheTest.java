@@ -0,0 +1,78 @@
+package com.ljx.image;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private final ImageCache cache = new ImageCache();
+
+    @BeforeEach
+    void setUp() {
+        //主区约1MB，每张图片256KB，最多放下3张
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxSizeMb", 1L);
+        ReflectionTestUtils.setField(cache, "maxEntryKb", 256L);
+        cache.start();
+    }
+
+    @Test
+    void keepsFrequentImagesWhenScanned() throws Exception {
+        Path hot = image("hot.png");
+        load(hot);
+        for (int i = 0; i < 5; i++) {
+            assertNotNull(cache.get(hot));
+        }
+
+        //大量只访问一次的图片不能把热点图片挤出缓存
+        for (int i = 0; i < 20; i++) {
+            Path cold = image("cold" + i + ".png");
+            assertNull(cache.get(cold));
+            load(cold);
+        }
+
+        assertNotNull(cache.get(hot));
+        long resident = (long) cache.getMetrics().get("residentBytes");
+        assertTrue(resident <= 1024 * 1024, "resident " + resident);
+        assertTrue((long) cache.getMetrics().get("rejected") > 0);
+    }
+
+    @Test
+    void rejectsOversizedEntries() {
+        assertTrue(cache.accepts(256 * 1024));
+        assertFalse(cache.accepts(256 * 1024 + 1));
+    }
+
+    @Test
+    void invalidatesOriginalAndVariants() throws Exception {
+        Path original = image("abc.png");
+        Files.createDirectories(dir.resolve("thumb"));
+        Path variant = Files.write(dir.resolve("thumb").resolve("abc.jpg"), new byte[100]);
+        load(original);
+        load(variant);
+
+        cache.invalidateImage("abc.png");
+
+        assertNull(cache.get(original));
+        assertNull(cache.get(variant));
+        assertEquals(0L, cache.getMetrics().get("residentBytes"));
+    }
+
+    private Path image(String name) throws Exception {
+        return Files.write(dir.resolve(name), new byte[256 * 1024]);
+    }
+
+    private void load(Path file) throws Exception {
+        cache.load(file, Files.size(file), Files.getLastModifiedTime(file).toMillis());
+    }
+}
@@ -0,0 +1,118 @@
+package com.ljx.image;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageCollectorTest {
+
+    @TempDir
+    Path dir;
+
+    private final ImageStore store = new ImageStore();
+
+    private final ImageCollector collector = new ImageCollector();
+
+    private long now;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ReflectionTestUtils.setField(store, "basePath", dir.toString());
+        ReflectionTestUtils.setField(store, "migrateLegacy", false);
+        store.start();
+        ReflectionTestUtils.setField(collector, "imageStore", store);
+        ReflectionTestUtils.setField(collector, "imageCache", new ImageCache());
+        ReflectionTestUtils.setField(collector, "graceHours", 72L);
+        ReflectionTestUtils.setField(collector, "parallelism", 2);
+        ReflectionTestUtils.setField(collector, "quarantineRetentionDays", 30L);
+        now = System.currentTimeMillis();
+    }
+
+    @Test
+    void dryRunReportsOnlyOldUnreferencedFiles() throws Exception {
+        String kept = save("kept");
+        String orphan = save("orphan");
+        String fresh = save("fresh");
+        Path legacy = Files.write(dir.resolve("legacy.png"), new byte[3]);
+        Path variant = variant(orphan);
+        Path aliasIndex = Files.write(dir.resolve("aliases.idx"), new byte[0]);
+        age(store.path(kept), store.path(orphan), legacy, variant, aliasIndex);
+
+        Map<String, Object> report = collector.collect(dir, references(kept), ImageCollector.DRY_RUN, now);
+
+        assertEquals(3L, report.get("orphans"));
+        assertEquals(0L, report.get("removed"));
+        List<?> samples = (List<?>) report.get("samples");
+        assertTrue(samples.contains(dir.relativize(store.path(orphan)).toString()));
+        assertFalse(samples.contains(dir.relativize(store.path(fresh)).toString()));
+        assertTrue(Files.exists(store.path(orphan)));
+        assertFalse(samples.contains("aliases.idx"));
+    }
+
+    @Test
+    void quarantinesOrphansAndTheirVariants() throws Exception {
+        String kept = save("kept");
+        String orphan = save("orphan");
+        Path variant = variant(orphan);
+        Path keptVariant = variant(kept);
+        age(store.path(kept), store.path(orphan), variant, keptVariant);
+
+        Map<String, Object> report = collector.collect(dir, references(kept), ImageCollector.QUARANTINE, now);
+
+        assertEquals(2L, report.get("removed"));
+        assertFalse(Files.exists(store.path(orphan)));
+        assertFalse(Files.exists(variant));
+        assertTrue(Files.exists(store.path(kept)));
+        assertTrue(Files.exists(keptVariant));
+        try (var quarantined = Files.walk(dir.resolve(ImageCollector.QUARANTINE_DIR))) {
+            assertEquals(2, quarantined.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    void skipsRunWhenNoReferencesWereRead() throws Exception {
+        String orphan = save("orphan");
+        age(store.path(orphan));
+
+        Map<String, Object> report = collector.collect(dir, new ImageReferences().seal(), ImageCollector.DELETE, now);
+
+        assertTrue(report.isEmpty());
+        assertTrue(Files.exists(store.path(orphan)));
+    }
+
+    private String save(String content) throws Exception {
+        return store.save(new ByteArrayInputStream(content.getBytes()), "a.png");
+    }
+
+    private Path variant(String name) throws Exception {
+        Path file = dir.resolve(ImageVariants.VARIANT_DIR).resolve("thumb")
+                .resolve(ImageReferences.baseName(name) + ".jpg");
+        Files.createDirectories(file.getParent());
+        return Files.write(file, new byte[2]);
+    }
+
+    private ImageReferences references(String... names) {
+        ImageReferences references = new ImageReferences();
+        for (String name : names) {
+            references.add(name);
+        }
+        return references.seal();
+    }
+
+    private void age(Path... files) throws Exception {
+        for (Path file : files) {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(now - TimeUnit.DAYS.toMillis(10)));
+        }
+    }
+}
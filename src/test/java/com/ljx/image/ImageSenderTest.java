@@ -0,0 +1,135 @@
+package com.ljx.image;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageSenderTest {
+
+    @TempDir
+    Path dir;
+
+    private Path file;
+
+    private final ImageSender sender = new ImageSender();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ReflectionTestUtils.setField(sender, "cacheMaxAgeDays", 365L);
+        //未启用缓存，直接从文件发送
+        ReflectionTestUtils.setField(sender, "imageCache", new ImageCache());
+        file = dir.resolve("a.png");
+        Files.write(file, "0123456789".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void sendsWholeFileWithCacheHeaders() throws Exception {
+        MockHttpServletResponse response = send(new MockHttpServletRequest("GET", "/common/download"));
+
+        assertEquals(200, response.getStatus());
+        assertEquals("image/png", response.getContentType());
+        assertEquals("0123456789", response.getContentAsString());
+        assertEquals(10, response.getContentLengthLong());
+        assertEquals("public, max-age=31536000, immutable", response.getHeader("Cache-Control"));
+        assertNotNull(response.getHeader("ETag"));
+        assertNotNull(response.getHeader("Last-Modified"));
+    }
+
+    @Test
+    void returnsNotModifiedForMatchingEtag() throws Exception {
+        String etag = send(new MockHttpServletRequest("GET", "/common/download")).getHeader("ETag");
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/common/download");
+        request.addHeader("If-None-Match", etag);
+        MockHttpServletResponse response = send(request);
+
+        assertEquals(304, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void servesSingleByteRange() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/common/download");
+        request.addHeader("Range", "bytes=2-5");
+        MockHttpServletResponse response = send(request);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 2-5/10", response.getHeader("Content-Range"));
+        assertEquals("2345", response.getContentAsString());
+
+        request = new MockHttpServletRequest("GET", "/common/download");
+        request.addHeader("Range", "bytes=-3");
+        assertEquals("789", send(request).getContentAsString());
+    }
+
+    @Test
+    void staleIfRangeReturnsWholeFileAndBadRangeIs416() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/common/download");
+        request.addHeader("Range", "bytes=2-5");
+        request.addHeader("If-Range", "\"other\"");
+        MockHttpServletResponse response = send(request);
+        assertEquals(200, response.getStatus());
+        assertEquals("0123456789", response.getContentAsString());
+
+        request = new MockHttpServletRequest("GET", "/common/download");
+        request.addHeader("Range", "bytes=20-30");
+        response = send(request);
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */10", response.getHeader("Content-Range"));
+    }
+
+    @Test
+    void handsFileToTomcatSendfileWhenSupported() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/common/download");
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        request.addHeader("Range", "bytes=4-");
+        MockHttpServletResponse response = send(request);
+
+        assertEquals(0, response.getContentAsByteArray().length);
+        assertEquals(file.toAbsolutePath().toString(), request.getAttribute("org.apache.tomcat.sendfile.filename"));
+        assertEquals(4L, request.getAttribute("org.apache.tomcat.sendfile.start"));
+        assertEquals(10L, request.getAttribute("org.apache.tomcat.sendfile.end"));
+        assertEquals(6, response.getContentLengthLong());
+    }
+
+    @Test
+    void servesCachedContentWithoutReadingFile() throws Exception {
+        ImageCache cache = new ImageCache();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxSizeMb", 1L);
+        ReflectionTestUtils.setField(cache, "maxEntryKb", 64L);
+        cache.start();
+        ReflectionTestUtils.setField(sender, "imageCache", cache);
+
+        String etag = send(new MockHttpServletRequest("GET", "/common/download")).getHeader("ETag");
+        //文件删除后仍然从缓存发送，ETag和范围请求不变
+        Files.delete(file);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/common/download");
+        request.addHeader("Range", "bytes=2-5");
+        MockHttpServletResponse response = send(request);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("2345", response.getContentAsString());
+        assertEquals(etag, response.getHeader("ETag"));
+        assertEquals(1L, cache.getMetrics().get("hits"));
+        assertEquals(10L, cache.getMetrics().get("residentBytes"));
+
+        cache.invalidateImage("a.png");
+        assertEquals(0L, cache.getMetrics().get("residentBytes"));
+    }
+
+    private MockHttpServletResponse send(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        sender.send(request, response, file);
+        return response;
+    }
+}
@@ -0,0 +1,81 @@
+package com.ljx.image;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private ImageStore store(boolean migrate) throws Exception {
+        ImageStore store = new ImageStore();
+        ReflectionTestUtils.setField(store, "basePath", dir.toString());
+        ReflectionTestUtils.setField(store, "migrateLegacy", false);
+        store.start();
+        if (migrate) {
+            store.migrate();
+        }
+        return store;
+    }
+
+    @Test
+    void sameContentIsStoredOnceInShardedPath() throws Exception {
+        ImageStore store = store(false);
+
+        String first = store.save(new ByteArrayInputStream(bytes("dish")), "红烧肉.JPG");
+        String second = store.save(new ByteArrayInputStream(bytes("dish")), "copy.jpg");
+
+        assertEquals(first, second);
+        assertTrue(first.matches("[0-9a-f]{64}\\.jpg"));
+        Path file = store.locate(first);
+        assertEquals(dir.resolve(ImageStore.OBJECT_DIR).resolve(first.substring(0, 2)).resolve(first.substring(2, 4)).resolve(first), file);
+        assertArrayEquals(bytes("dish"), Files.readAllBytes(file));
+        assertEquals(1L, store.getMetrics().get("stored"));
+        assertEquals(1L, store.getMetrics().get("deduplicated"));
+        //临时文件不残留
+        try (var temp = Files.list(dir.resolve(".tmp"))) {
+            assertEquals(0, temp.count());
+        }
+    }
+
+    @Test
+    void legacyNamesStayResolvableAfterMigrationAndRestart() throws Exception {
+        Files.write(dir.resolve("0a3b3288-3446-4420-bbff-f263d0c02d8e.jpg"), bytes("old"));
+        //迁移前直接读取旧文件
+        assertNotNull(store(false).locate("0a3b3288-3446-4420-bbff-f263d0c02d8e.jpg"));
+
+        ImageStore store = store(true);
+        assertFalse(Files.exists(dir.resolve("0a3b3288-3446-4420-bbff-f263d0c02d8e.jpg")));
+        Path file = store.locate("0a3b3288-3446-4420-bbff-f263d0c02d8e.jpg");
+        assertNotNull(file);
+        assertArrayEquals(bytes("old"), Files.readAllBytes(file));
+
+        //重启后从别名索引恢复
+        ImageStore restarted = store(false);
+        assertEquals(file, restarted.locate("0a3b3288-3446-4420-bbff-f263d0c02d8e.jpg"));
+        assertEquals(1, restarted.getMetrics().get("aliases"));
+    }
+
+    @Test
+    void rejectsNamesOutsideTheStore() throws Exception {
+        ImageStore store = store(false);
+
+        assertNull(store.locate("../etc/passwd"));
+        assertNull(store.locate("a/b.jpg"));
+        assertNull(store.locate(null));
+        assertNull(store.locate("missing.jpg"));
+    }
+
+    private static byte[] bytes(String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,103 @@
+package com.ljx.image;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageVariantsTest {
+
+    @TempDir
+    Path dir;
+
+    private ImageVariants variants;
+
+    @BeforeEach
+    void setUp() {
+        variants = new ImageVariants();
+        ReflectionTestUtils.setField(variants, "basePath", dir.toString());
+        ReflectionTestUtils.setField(variants, "variants", "thumb:120,detail:750");
+        ReflectionTestUtils.setField(variants, "quality", 0.8f);
+        ReflectionTestUtils.setField(variants, "workers", 2);
+        ReflectionTestUtils.setField(variants, "queueCapacity", 16);
+        ReflectionTestUtils.setField(variants, "waitMillis", 10_000L);
+        variants.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        variants.stop();
+    }
+
+    @Test
+    void generatesScaledJpegAndKeepsAspectRatio() throws Exception {
+        Path original = image("a.png", 1000, 500);
+
+        Path thumb = variants.resolve("a.png", original, "thumb");
+
+        assertEquals(dir.resolve(ImageVariants.VARIANT_DIR).resolve("thumb").resolve("a.jpg"), thumb);
+        BufferedImage image = ImageIO.read(thumb.toFile());
+        assertEquals(120, image.getWidth());
+        assertEquals(60, image.getHeight());
+        //已存在的版本直接返回
+        assertEquals(thumb, variants.resolve("a.png", original, "thumb"));
+        assertEquals(1L, variants.getMetrics().get("generated"));
+    }
+
+    @Test
+    void smallOriginalIsNotUpscaled() throws Exception {
+        Path original = image("small.png", 300, 200);
+
+        Path detail = variants.resolve("small.png", original, "detail");
+
+        assertEquals(300, ImageIO.read(detail.toFile()).getWidth());
+    }
+
+    @Test
+    void concurrentRequestsGenerateOnce() throws Exception {
+        Path original = image("b.png", 2000, 2000);
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Path>> futures = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                return variants.resolve("b.png", original, "thumb");
+            }));
+        }
+        start.countDown();
+        for (Future<Path> future : futures) {
+            assertTrue(future.get().toString().endsWith("b.jpg"));
+        }
+        pool.shutdown();
+
+        assertEquals(1L, variants.getMetrics().get("generated"));
+    }
+
+    @Test
+    void unreadableOriginalReturnsNull() throws Exception {
+        Path original = dir.resolve("broken.jpg");
+        Files.write(original, new byte[]{1, 2, 3});
+
+        assertNull(variants.resolve("broken.jpg", original, "thumb"));
+        assertEquals(1L, variants.getMetrics().get("failures"));
+    }
+
+    private Path image(String name, int width, int height) throws Exception {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Path file = dir.resolve(name);
+        ImageIO.write(image, "png", file.toFile());
+        return file;
+    }
+}
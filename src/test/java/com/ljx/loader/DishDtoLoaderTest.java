@@ -0,0 +1,107 @@
+package com.ljx.loader;
+
+import com.ljx.dto.DishDto;
+import com.ljx.entity.Dish;
+import com.ljx.entity.DishFlavor;
+import com.ljx.mapper.DishFlavorMapper;
+import com.ljx.service.CategoryService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DishDtoLoaderTest {
+
+    @Mock
+    private CategoryService categoryService;
+
+    @Mock
+    private DishFlavorMapper dishFlavorMapper;
+
+    @InjectMocks
+    private DishDtoLoader dishDtoLoader;
+
+    @Test
+    void statementCountStaysConstantAsDishCountGrows() {
+        for (int size : new int[]{1, 10, 40, 200}) {
+            reset(categoryService, dishFlavorMapper);
+            List<Dish> dishes = dishes(size);
+            when(categoryService.getNameMap(anyCollection())).thenReturn(categoryNames());
+            when(dishFlavorMapper.selectList(any())).thenReturn(flavors(dishes));
+
+            List<DishDto> dtos = dishDtoLoader.load(dishes, true, true);
+
+            assertEquals(size, dtos.size());
+            //分类名称来自内存快照，口味只执行一条SQL
+            verify(categoryService, times(1)).getNameMap(anyCollection());
+            verify(dishFlavorMapper, times(1)).selectList(any());
+            verifyNoMoreInteractions(categoryService, dishFlavorMapper);
+        }
+    }
+
+    @Test
+    void stitchesCategoryNamesAndFlavorsInOrder() {
+        List<Dish> dishes = dishes(3);
+        when(categoryService.getNameMap(anyCollection())).thenReturn(categoryNames());
+        when(dishFlavorMapper.selectList(any())).thenReturn(flavors(dishes.subList(0, 2)));
+
+        List<DishDto> dtos = dishDtoLoader.load(dishes, true, true);
+
+        assertEquals(1L, dtos.get(0).getId());
+        assertEquals("湘菜", dtos.get(0).getCategoryName());
+        assertEquals("川菜", dtos.get(1).getCategoryName());
+        assertEquals(1, dtos.get(0).getFlavors().size());
+        assertEquals(2L, dtos.get(1).getFlavors().get(0).getDishId());
+        assertEquals(0, dtos.get(2).getFlavors().size());
+    }
+
+    @Test
+    void emptyInputDoesNotQuery() {
+        assertEquals(0, dishDtoLoader.load(Collections.emptyList(), true, true).size());
+        assertEquals(0, dishDtoLoader.loadCategoryNames(Collections.emptyList()).size());
+        verifyNoInteractions(categoryService, dishFlavorMapper);
+    }
+
+    private List<Dish> dishes(int size) {
+        List<Dish> dishes = new ArrayList<>();
+        for (long i = 1; i <= size; i++) {
+            Dish dish = new Dish();
+            dish.setId(i);
+            dish.setName("菜品" + i);
+            dish.setCategoryId(i % 2 == 1 ? 100L : 200L);
+            dishes.add(dish);
+        }
+        return dishes;
+    }
+
+    private Map<Long, String> categoryNames() {
+        Map<Long, String> names = new HashMap<>();
+        names.put(100L, "湘菜");
+        names.put(200L, "川菜");
+        return names;
+    }
+
+    private List<DishFlavor> flavors(List<Dish> dishes) {
+        List<DishFlavor> flavors = new ArrayList<>();
+        for (Dish dish : dishes) {
+            DishFlavor flavor = new DishFlavor();
+            flavor.setDishId(dish.getId());
+            flavor.setName("辣度");
+            flavors.add(flavor);
+        }
+        return flavors;
+    }
+}
@@ -0,0 +1,138 @@
+package com.ljx.order;
+
+import com.ljx.common.CustomException;
+import com.ljx.entity.OrderDetail;
+import com.ljx.entity.Orders;
+import com.ljx.mapper.OrderDetailMapper;
+import com.ljx.mapper.OrderMapper;
+import com.ljx.mapper.ShoppingCartMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class OrderGroupCommitterTest {
+
+    private OrderMapper orderMapper;
+
+    private OrderDetailMapper orderDetailMapper;
+
+    private ShoppingCartMapper shoppingCartMapper;
+
+    private OrderGroupCommitter committer;
+
+    @BeforeEach
+    void setUp() {
+        orderMapper = mock(OrderMapper.class);
+        orderDetailMapper = mock(OrderDetailMapper.class);
+        shoppingCartMapper = mock(ShoppingCartMapper.class);
+        OrderBatchWriter writer = new OrderBatchWriter();
+        ReflectionTestUtils.setField(writer, "orderMapper", orderMapper);
+        ReflectionTestUtils.setField(writer, "orderDetailMapper", orderDetailMapper);
+        ReflectionTestUtils.setField(writer, "shoppingCartMapper", shoppingCartMapper);
+        committer = new OrderGroupCommitter();
+        ReflectionTestUtils.setField(committer, "orderBatchWriter", writer);
+        ReflectionTestUtils.setField(committer, "transactionTemplate", new TransactionTemplate(mock(PlatformTransactionManager.class)));
+        ReflectionTestUtils.setField(committer, "enabled", true);
+        ReflectionTestUtils.setField(committer, "windowMs", 200L);
+        ReflectionTestUtils.setField(committer, "batchSize", 5);
+        ReflectionTestUtils.setField(committer, "queueCapacity", 100);
+        ReflectionTestUtils.setField(committer, "waitTimeoutMs", 5000L);
+        committer.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        committer.stop();
+    }
+
+    private static PendingOrder order(long id, long userId) {
+        Orders orders = new Orders();
+        orders.setId(id);
+        orders.setUserId(userId);
+        OrderDetail detail = new OrderDetail();
+        detail.setOrderId(id);
+        return new PendingOrder(orders, Collections.singletonList(detail), Collections.singletonList(id * 10));
+    }
+
+    private static List<CompletableFuture<Void>> submitAll(OrderGroupCommitter committer, PendingOrder... orders) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (PendingOrder order : orders) {
+            futures.add(committer.submit(order));
+        }
+        return futures;
+    }
+
+    @Test
+    void concurrentOrdersAreWrittenInOneTransaction() {
+        List<CompletableFuture<Void>> futures = submitAll(committer,
+                order(1, 1), order(2, 2), order(3, 3), order(4, 4), order(5, 5));
+        futures.forEach(CompletableFuture::join);
+
+        verify(orderMapper, times(1)).insertBatch(argThat((list) -> list.size() == 5));
+        verify(orderDetailMapper, times(1)).insertBatch(argThat((list) -> list.size() == 5));
+        verify(shoppingCartMapper, times(1)).deleteBatchIds(argThat((ids) -> ids.size() == 5));
+    }
+
+    @Test
+    void failedOrderOnlyFailsItsOwnCaller() {
+        //包含订单2的insert失败，整批回退为逐单提交
+        when(orderMapper.insertBatch(anyList())).thenAnswer((invocation) -> {
+            List<Orders> list = invocation.getArgument(0);
+            if (list.stream().anyMatch((o) -> o.getId() == 2L)) {
+                throw new IllegalStateException("bad row");
+            }
+            return list.size();
+        });
+
+        List<CompletableFuture<Void>> futures = submitAll(committer, order(1, 1), order(2, 2), order(3, 3));
+
+        futures.get(0).join();
+        CompletionException e = assertThrows(CompletionException.class, () -> futures.get(1).join());
+        assertInstanceOf(CustomException.class, e.getCause());
+        futures.get(2).join();
+    }
+
+    @Test
+    void sameUserCannotSubmitTwiceInOneBatch() {
+        List<CompletableFuture<Void>> futures = submitAll(committer, order(1, 1), order(2, 1));
+
+        futures.get(0).join();
+        assertThrows(CompletionException.class, () -> futures.get(1).join());
+        verify(orderMapper, times(1)).insertBatch(argThat((list) -> list.size() == 1));
+    }
+
+    @Test
+    void errorInWorkerFailsCallersInsteadOfBlocking() {
+        when(orderMapper.insertBatch(anyList())).thenThrow(new OutOfMemoryError("simulated"));
+
+        assertThrows(CustomException.class, () -> committer.submitAndWait(order(1, 1)));
+        //提交线程继续工作
+        reset(orderMapper);
+        committer.submitAndWait(order(2, 2));
+    }
+
+    @Test
+    void timedOutOrderIsNotWritten() throws Exception {
+        //等待时间短于组提交窗口，调用方超时放弃时订单还在队列中
+        ReflectionTestUtils.setField(committer, "waitTimeoutMs", 50L);
+
+        assertThrows(CustomException.class, () -> committer.submitAndWait(order(1, 1)));
+        Thread.sleep(400);
+
+        verify(orderMapper, never()).insertBatch(anyList());
+        assertEquals(1L, committer.getMetrics().get("timedOutOrders"));
+    }
+}
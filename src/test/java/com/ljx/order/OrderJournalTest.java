@@ -0,0 +1,145 @@
+package com.ljx.order;
+
+import com.ljx.entity.OrderDetail;
+import com.ljx.entity.Orders;
+import com.ljx.service.StockService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class OrderJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private final StockService stockService = mock(StockService.class);
+
+    private OrderJournal journal(OrderBatchWriter writer) throws Exception {
+        OrderJournal journal = new OrderJournal();
+        ReflectionTestUtils.setField(journal, "orderBatchWriter", writer);
+        ReflectionTestUtils.setField(journal, "transactionTemplate", new TransactionTemplate(mock(PlatformTransactionManager.class)));
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "path", directory.toString());
+        ReflectionTestUtils.setField(journal, "segmentSizeMb", 1);
+        ReflectionTestUtils.setField(journal, "batchSize", 10);
+        ReflectionTestUtils.setField(journal, "pollIntervalMs", 10L);
+        ReflectionTestUtils.setField(journal, "maxAttempts", 2);
+        ReflectionTestUtils.setField(journal, "stockService", stockService);
+        journal.start();
+        return journal;
+    }
+
+    private static PendingOrder order(long id, long userId) {
+        Orders orders = new Orders();
+        orders.setId(id);
+        orders.setUserId(userId);
+        orders.setAmount(new BigDecimal("12.50"));
+        orders.setOrderTime(LocalDateTime.now().withNano(0));
+        OrderDetail detail = new OrderDetail();
+        detail.setId(id * 100);
+        detail.setOrderId(id);
+        detail.setName("鸡丁");
+        return new PendingOrder(orders, Collections.singletonList(detail), Collections.singletonList(id * 10));
+    }
+
+    private static void await(OrderJournal journal, long drained) throws InterruptedException {
+        for (int i = 0; i < 500 && ((Number) journal.getMetrics().get("drained")).longValue() < drained; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(drained, ((Number) journal.getMetrics().get("drained")).longValue());
+    }
+
+    @Test
+    void unflushedOrdersAreReplayedAfterRestart() throws Exception {
+        //数据库不可用，订单只能留在日志中
+        OrderBatchWriter down = mock(OrderBatchWriter.class);
+        when(down.writeIfAbsent(anyList())).thenThrow(new DataAccessResourceFailureException("db down"));
+        OrderJournal first = journal(down);
+        first.append(order(1, 1));
+        first.append(order(2, 2));
+        first.append(order(3, 3));
+        assertEquals(3, first.getMetrics().get("pendingOrders"));
+        first.stop();
+
+        Set<Long> written = ConcurrentHashMap.newKeySet();
+        OrderBatchWriter up = mock(OrderBatchWriter.class);
+        when(up.writeIfAbsent(anyList())).thenAnswer((invocation) -> {
+            List<PendingOrder> orders = invocation.getArgument(0);
+            orders.forEach((item) -> {
+                assertEquals(new BigDecimal("12.50"), item.getOrders().getAmount());
+                assertEquals("鸡丁", item.getOrderDetails().get(0).getName());
+                written.add(item.getOrders().getId());
+            });
+            return orders.size();
+        });
+        OrderJournal second = journal(up);
+        assertEquals(3L, second.getMetrics().get("replayed"));
+        await(second, 3);
+        assertEquals(Set.of(1L, 2L, 3L), written);
+        second.append(order(4, 1));
+        await(second, 4);
+        second.stop();
+
+        //检查点之后没有新订单，再次启动不会重放
+        OrderJournal third = journal(up);
+        assertEquals(0L, third.getMetrics().get("replayed"));
+        third.stop();
+    }
+
+    @Test
+    void sameUserCannotAppendWhileOrderIsPending() throws Exception {
+        OrderBatchWriter down = mock(OrderBatchWriter.class);
+        when(down.writeIfAbsent(anyList())).thenThrow(new DataAccessResourceFailureException("db down"));
+        OrderJournal journal = journal(down);
+        journal.append(order(1, 1));
+        assertThrows(RuntimeException.class, () -> journal.append(order(2, 1)));
+        journal.stop();
+    }
+
+    @Test
+    void poisonOrderIsDeadLetteredAndDoesNotBlockLaterOrders() throws Exception {
+        Set<Long> written = ConcurrentHashMap.newKeySet();
+        OrderBatchWriter writer = mock(OrderBatchWriter.class);
+        when(writer.writeIfAbsent(anyList())).thenAnswer((invocation) -> {
+            List<PendingOrder> orders = invocation.getArgument(0);
+            if (orders.stream().anyMatch((item) -> item.getOrders().getId() == 2L)) {
+                throw new DataIntegrityViolationException("Data too long for column 'name'");
+            }
+            orders.forEach((item) -> written.add(item.getOrders().getId()));
+            return orders.size();
+        });
+        OrderJournal journal = journal(writer);
+        journal.append(order(1, 1));
+        journal.append(order(2, 2));
+        journal.append(order(3, 3));
+
+        await(journal, 2);
+        assertEquals(Set.of(1L, 3L), written);
+        assertEquals(1L, journal.getMetrics().get("skipped"));
+        assertEquals(1, Files.readAllLines(directory.resolve("dead-letter.log")).size());
+        verify(stockService).release(any(LocalDate.class), anyList());
+        //死信订单的用户可以重新下单
+        journal.append(order(4, 2));
+        await(journal, 3);
+        journal.stop();
+    }
+}
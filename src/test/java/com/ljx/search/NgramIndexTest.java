@@ -0,0 +1,54 @@
+package com.ljx.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class NgramIndexTest {
+
+    private NgramIndex index() {
+        Map<Long, String> names = new HashMap<>();
+        names.put(1L, "宫保鸡丁");
+        names.put(2L, "鸡丁");
+        names.put(3L, "辣子鸡丁盖饭");
+        names.put(4L, "鸡丁炒饭");
+        names.put(5L, "Coca Cola");
+        NgramIndex index = new NgramIndex();
+        index.rebuild(names);
+        return index;
+    }
+
+    @Test
+    void matchesChineseSubstringsRankedByRelevance() {
+        //完全相同 > 开头匹配 > 匹配位置靠前 > 名称较短
+        assertEquals(Arrays.asList(2L, 4L, 1L, 3L), index().search("鸡丁"));
+    }
+
+    @Test
+    void sameResultsAsLike() {
+        NgramIndex index = index();
+        //"鸡饭"两个字都出现过，但不是连续的子串，LIKE不会匹配
+        assertEquals(Collections.emptyList(), index.search("鸡饭"));
+        assertEquals(Arrays.asList(4L, 3L), index.search("饭"));
+        assertEquals(Collections.singletonList(5L), index.search("cola"));
+        //空白按原样匹配，LIKE '%cocacola%'匹配不到Coca Cola
+        assertEquals(Collections.singletonList(5L), index.search("COCA COLA"));
+        assertEquals(Collections.emptyList(), index.search("cocacola"));
+    }
+
+    @Test
+    void putAndRemoveKeepIndexCurrent() {
+        NgramIndex index = index();
+        index.put(2L, "水煮鱼");
+        assertEquals(Arrays.asList(4L, 1L, 3L), index.search("鸡丁"));
+        assertEquals(Collections.singletonList(2L), index.search("煮鱼"));
+
+        index.remove(4L);
+        assertEquals(Arrays.asList(1L, 3L), index.search("鸡丁"));
+    }
+}
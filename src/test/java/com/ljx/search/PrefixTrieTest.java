@@ -0,0 +1,85 @@
+package com.ljx.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PrefixTrieTest {
+
+    private static void putDish(PrefixTrie trie, long id, String name, String code) {
+        Map<String, Suggestion> terms = new HashMap<>();
+        terms.put(name, new Suggestion(id, Suggestion.TYPE_DISH, name, null));
+        if (code != null) {
+            terms.put(code, new Suggestion(id, Suggestion.TYPE_DISH, name, code));
+        }
+        trie.put("dish:" + id, terms);
+    }
+
+    private static List<String> names(List<Suggestion> suggestions) {
+        return suggestions.stream().map(Suggestion::getName).collect(Collectors.toList());
+    }
+
+    @Test
+    void shorterCompletionsComeFirst() {
+        //长度相同时按字符顺序
+        PrefixTrie trie = new PrefixTrie();
+        putDish(trie, 1L, "鸡丁炒饭", null);
+        putDish(trie, 2L, "鸡丁", null);
+        putDish(trie, 3L, "宫保鸡丁", null);
+        trie.put("setmeal:9", Collections.singletonMap("鸡丁套餐",
+                new Suggestion(9L, Suggestion.TYPE_SETMEAL, "鸡丁套餐", null)));
+
+        assertEquals(List.of("鸡丁", "鸡丁套餐", "鸡丁炒饭"), names(trie.suggest("鸡", 10)));
+        assertEquals(List.of("鸡丁"), names(trie.suggest("鸡", 1)));
+        assertTrue(trie.suggest("牛", 10).isEmpty());
+        assertTrue(trie.suggest(" ", 10).isEmpty());
+    }
+
+    @Test
+    void matchesCodeIgnoringCase() {
+        PrefixTrie trie = new PrefixTrie();
+        putDish(trie, 1L, "可乐", "CL001");
+
+        List<Suggestion> result = trie.suggest("cl0", 10);
+        assertEquals(1, result.size());
+        assertEquals("可乐", result.get(0).getName());
+        assertEquals("CL001", result.get(0).getCode());
+    }
+
+    @Test
+    void updatesReplaceOldTermsAndPruneNodes() {
+        PrefixTrie trie = new PrefixTrie();
+        putDish(trie, 1L, "鸡丁", null);
+        int nodes = trie.nodeCount();
+
+        putDish(trie, 1L, "牛肉", null);
+        assertTrue(trie.suggest("鸡", 10).isEmpty());
+        assertEquals(List.of("牛肉"), names(trie.suggest("牛", 10)));
+        assertEquals(nodes, trie.nodeCount());
+
+        trie.remove("dish:1");
+        assertEquals(0, trie.size());
+        assertEquals(1, trie.nodeCount());
+    }
+
+    @Test
+    void filterSkipsStoppedItemsWithoutUsingLimit() {
+        PrefixTrie trie = new PrefixTrie();
+        trie.put("dish:1", Map.of("鸡丁", new Suggestion(1L, Suggestion.TYPE_DISH, "鸡丁", null, 0)));
+        trie.put("dish:2", Map.of("鸡丁炒饭", new Suggestion(2L, Suggestion.TYPE_DISH, "鸡丁炒饭", null, 1)));
+
+        assertEquals(List.of("鸡丁炒饭"), names(trie.suggest("鸡", 1, Suggestion::isOnSale)));
+        assertEquals(List.of("鸡丁"), names(trie.suggest("鸡", 1)));
+
+        //停售后重新写入，提示随之变化
+        trie.put("dish:2", Map.of("鸡丁炒饭", new Suggestion(2L, Suggestion.TYPE_DISH, "鸡丁炒饭", null, 0)));
+        assertTrue(trie.suggest("鸡", 10, Suggestion::isOnSale).isEmpty());
+    }
+}
@@ -0,0 +1,83 @@
+package com.ljx.service.impl;
+
+import com.ljx.cache.MenuSnapshot;
+import com.ljx.cart.MemoryCartStore;
+import com.ljx.common.CustomException;
+import com.ljx.dto.CartOperation;
+import com.ljx.dto.DishDto;
+import com.ljx.entity.ShoppingCart;
+import com.ljx.mapper.ShoppingCartMapper;
+import com.ljx.service.MenuService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ShoppingCartServiceImplTest {
+
+    private MenuService menuService;
+
+    private ShoppingCartServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        ShoppingCartMapper shoppingCartMapper = mock(ShoppingCartMapper.class);
+        when(shoppingCartMapper.selectList(any())).thenReturn(Collections.emptyList());
+        MemoryCartStore store = new MemoryCartStore();
+        ReflectionTestUtils.setField(store, "shoppingCartMapper", shoppingCartMapper);
+        ReflectionTestUtils.setField(store, "transactionTemplate", new TransactionTemplate(mock(PlatformTransactionManager.class)));
+        ReflectionTestUtils.setField(store, "ttlMinutes", 30L);
+
+        menuService = mock(MenuService.class);
+        service = new ShoppingCartServiceImpl();
+        ReflectionTestUtils.setField(service, "menuService", menuService);
+        ReflectionTestUtils.setField(service, "cartStore", store);
+    }
+
+    private static MenuSnapshot menu(DishDto... dishes) {
+        return new MenuSnapshot(1, Collections.emptyList(), List.of(dishes), Collections.emptyList(), "\"1\"");
+    }
+
+    private static DishDto dish(long id) {
+        DishDto dish = new DishDto();
+        dish.setId(id);
+        dish.setName("dish" + id);
+        dish.setPrice(new BigDecimal(1200));
+        return dish;
+    }
+
+    private static CartOperation operation(long dishId, int delta) {
+        CartOperation operation = new CartOperation();
+        operation.setDishId(dishId);
+        operation.setDelta(delta);
+        return operation;
+    }
+
+    @Test
+    void stoppedDishCanStillBeDecremented() {
+        when(menuService.getSnapshot()).thenReturn(menu(dish(1), dish(2)));
+        service.applyOperations(1L, List.of(operation(1, 2), operation(2, 1)));
+
+        //菜品1停售后不在菜单快照中
+        when(menuService.getSnapshot()).thenReturn(menu(dish(2)));
+        List<ShoppingCart> cart = service.applyOperations(1L, List.of(operation(1, -1)));
+        assertEquals(2, cart.size());
+        assertEquals(1, cart.stream().filter((line) -> line.getDishId() == 1L).findFirst().get().getNumber());
+
+        cart = service.applyOperations(1L, List.of(operation(1, -1)));
+        assertEquals(1, cart.size());
+        assertEquals(2L, cart.get(0).getDishId());
+
+        //停售的菜品不能再加入
+        assertThrows(CustomException.class, () -> service.applyOperations(1L, List.of(operation(1, 1))));
+    }
+}
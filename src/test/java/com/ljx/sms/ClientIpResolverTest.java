@@ -0,0 +1,57 @@
+package com.ljx.sms;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ClientIpResolverTest {
+
+    private static ClientIpResolver resolver(String header, String trustedProxies) {
+        ClientIpResolver resolver = new ClientIpResolver();
+        ReflectionTestUtils.setField(resolver, "header", header);
+        ReflectionTestUtils.setField(resolver, "trustedProxies", trustedProxies);
+        resolver.start();
+        return resolver;
+    }
+
+    private static MockHttpServletRequest request(String remote, String forwardedFor) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(remote);
+        if (forwardedFor != null) {
+            request.addHeader("X-Forwarded-For", forwardedFor);
+        }
+        return request;
+    }
+
+    @Test
+    void headerIsIgnoredWhenNotConfigured() {
+        ClientIpResolver resolver = resolver("", "127.0.0.1");
+
+        assertEquals("127.0.0.1", resolver.resolve(request("127.0.0.1", "203.0.113.7")));
+    }
+
+    @Test
+    void headerIsReadOnlyFromTrustedProxies() {
+        ClientIpResolver resolver = resolver("X-Forwarded-For", "127.0.0.1,10.0.0.0/8");
+
+        assertEquals("203.0.113.7", resolver.resolve(request("127.0.0.1", "203.0.113.7")));
+        assertEquals("203.0.113.7", resolver.resolve(request("10.1.2.3", "203.0.113.7")));
+        //客户端直接连接时伪造的请求头无效
+        assertEquals("198.51.100.1", resolver.resolve(request("198.51.100.1", "203.0.113.7")));
+        assertEquals("127.0.0.1", resolver.resolve(request("127.0.0.1", null)));
+    }
+
+    @Test
+    void forwardedChainIsWalkedFromTheRight() {
+        ClientIpResolver resolver = resolver("X-Forwarded-For", "127.0.0.1,10.0.0.0/8");
+
+        //客户端自己写入的地址在最左边，不能作为限流的key
+        assertEquals("203.0.113.7", resolver.resolve(request("127.0.0.1", "1.1.1.1, 203.0.113.7, 10.0.0.5")));
+        //全部是受信任的代理时使用最左边的地址
+        assertEquals("10.0.0.6", resolver.resolve(request("127.0.0.1", "10.0.0.6, 10.0.0.5")));
+        //不是IP的内容不解析
+        assertEquals("127.0.0.1", resolver.resolve(request("127.0.0.1", "unknown")));
+    }
+}
@@ -0,0 +1,146 @@
+package com.ljx.sms;
+
+import com.ljx.common.CustomException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryVerificationCodeStoreTest {
+
+    private final AtomicLong now = new AtomicLong(1_700_000_000_000L);
+
+    private MemoryVerificationCodeStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new MemoryVerificationCodeStore();
+        ReflectionTestUtils.setField(store, "clock", (LongSupplier) now::get);
+        ReflectionTestUtils.setField(store, "codeTtlSeconds", 300L);
+        ReflectionTestUtils.setField(store, "maxAttempts", 3);
+        ReflectionTestUtils.setField(store, "maxEntries", 1000);
+        ReflectionTestUtils.setField(store, "phoneCapacity", 2);
+        ReflectionTestUtils.setField(store, "phoneRefillSeconds", 60L);
+        ReflectionTestUtils.setField(store, "ipCapacity", 5);
+        ReflectionTestUtils.setField(store, "ipRefillSeconds", 10L);
+        store.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.stop();
+    }
+
+    @Test
+    void codeCanBeUsedOnlyOnce() {
+        String code = store.issue("13800000000", "10.0.0.1");
+
+        assertFalse(store.verify("13800000000", wrong(code)));
+        assertTrue(store.verify("13800000000", code));
+        assertFalse(store.verify("13800000000", code));
+    }
+
+    @Test
+    void tooManyAttemptsInvalidatesCode() {
+        String code = store.issue("13800000000", "10.0.0.1");
+
+        assertFalse(store.verify("13800000000", wrong(code)));
+        assertFalse(store.verify("13800000000", wrong(code)));
+        assertFalse(store.verify("13800000000", wrong(code)));
+        assertThrows(CustomException.class, () -> store.verify("13800000000", code));
+        assertFalse(store.verify("13800000000", code));
+    }
+
+    @Test
+    void phoneAndIpAreRateLimited() {
+        store.issue("13800000000", "10.0.0.1");
+        store.issue("13800000000", "10.0.0.1");
+        assertThrows(CustomException.class, () -> store.issue("13800000000", "10.0.0.2"));
+
+        //一分钟恢复一次
+        now.addAndGet(60_000);
+        store.issue("13800000000", "10.0.0.3");
+
+        //同一IP换手机号也受限
+        for (int i = 0; i < 5; i++) {
+            store.issue("1390000000" + i, "10.0.0.9");
+        }
+        assertThrows(CustomException.class, () -> store.issue("13911111111", "10.0.0.9"));
+    }
+
+    @Test
+    void expiredCodesAndFullBucketsAreRemovedByTheWheel() {
+        String code = store.issue("13800000000", "10.0.0.1");
+        assertEquals(1, store.getMetrics().get("codes"));
+        assertEquals(2, store.getMetrics().get("buckets"));
+
+        now.addAndGet(299_000);
+        store.expire();
+        assertEquals(1, store.getMetrics().get("codes"));
+
+        now.addAndGet(2_000);
+        store.expire();
+        Map<String, Object> metrics = store.getMetrics();
+        assertEquals(0, metrics.get("codes"));
+        assertEquals(0, metrics.get("buckets"));
+        assertEquals(1L, metrics.get("expired"));
+        assertFalse(store.verify("13800000000", code));
+    }
+
+    @Test
+    void fullBucketMapEvictsInsteadOfRejectingNewKeys() {
+        ReflectionTestUtils.setField(store, "maxEntries", 10);
+        for (int i = 0; i < 5; i++) {
+            store.issue("1380000000" + i, "10.0.0." + i);
+            now.addAndGet(1_000);
+        }
+        assertEquals(10, store.getMetrics().get("buckets"));
+
+        //新的手机号和IP仍然可以获取验证码，IP和手机号的桶各淘汰一个，桶数量不超过上限
+        assertNotNull(store.issue("13900000000", "10.0.1.1"));
+        Map<String, Object> metrics = store.getMetrics();
+        assertEquals(2L, metrics.get("evictedBuckets"));
+        assertEquals(10, metrics.get("buckets"));
+    }
+
+    @Test
+    void fullCodeMapEvictsInsteadOfRejectingNewPhones() {
+        ReflectionTestUtils.setField(store, "maxEntries", 3);
+        String first = store.issue("13800000000", "10.0.0.1");
+        now.addAndGet(1_000);
+        String second = store.issue("13800000001", "10.0.0.2");
+        now.addAndGet(1_000);
+        store.issue("13800000002", "10.0.0.3");
+
+        //新手机号仍然可以获取验证码，淘汰最早过期的验证码
+        String code = store.issue("13800000003", "10.0.0.4");
+        assertEquals(1L, store.getMetrics().get("evictedCodes"));
+        assertFalse(store.verify("13800000000", first));
+        assertTrue(store.verify("13800000001", second));
+        assertTrue(store.verify("13800000003", code));
+    }
+
+    @Test
+    void fullCodeMapDropsExpiredCodesFirst() {
+        ReflectionTestUtils.setField(store, "maxEntries", 2);
+        store.issue("13800000000", "10.0.0.1");
+        now.addAndGet(200_000);
+        String second = store.issue("13800000001", "10.0.0.2");
+        //第一个验证码已过期，时间轮还没有处理
+        now.addAndGet(101_000);
+
+        assertNotNull(store.issue("13800000002", "10.0.0.3"));
+        assertEquals(0L, store.getMetrics().get("evictedCodes"));
+        assertTrue(store.verify("13800000001", second));
+    }
+
+    private static String wrong(String code) {
+        return code.equals("1234") ? "4321" : "1234";
+    }
+}
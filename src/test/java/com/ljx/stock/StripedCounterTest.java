@@ -0,0 +1,78 @@
+package com.ljx.stock;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StripedCounterTest {
+
+    @Test
+    void concurrentReservationsNeverOversell() throws Exception {
+        StripedCounter counter = new StripedCounter(1000, 8);
+        AtomicInteger acquired = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(32);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int j = 0; j < 100; j++) {
+                    int n = j % 3 + 1;
+                    if (counter.tryAcquire(n)) {
+                        acquired.addAndGet(n);
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+
+        assertEquals(1000 - acquired.get(), counter.remaining());
+        assertTrue(acquired.get() <= 1000);
+        //请求总量远大于库存，剩余的零头凑不够一次最大扣减量
+        assertTrue(counter.remaining() < 3);
+    }
+
+    @Test
+    void failedReservationTakesNothing() {
+        StripedCounter counter = new StripedCounter(5, 4);
+        assertFalse(counter.tryAcquire(6));
+        assertEquals(5, counter.remaining());
+        //跨越多个分段扣减
+        assertTrue(counter.tryAcquire(5));
+        assertEquals(0, counter.remaining());
+        assertFalse(counter.tryAcquire(1));
+
+        counter.release(2);
+        assertEquals(2, counter.remaining());
+        assertEquals(2, counter.drain(10));
+        assertEquals(0, counter.remaining());
+    }
+
+    @Test
+    void lowerThenRaiseLimitDoesNotOversell() {
+        //限量10，已售8
+        int sold = 8;
+        StripedCounter counter = new StripedCounter(10, 4);
+        assertTrue(counter.tryAcquire(sold));
+
+        //限量改为5，只剩2个可扣，剩余为0
+        assertEquals(0, counter.adjustTo(5 - sold));
+        //限量改回10，剩余应为10-8=2，而不是按差值归还5个
+        assertEquals(2, counter.adjustTo(10 - sold));
+        assertTrue(counter.tryAcquire(2));
+        assertFalse(counter.tryAcquire(1));
+    }
+}
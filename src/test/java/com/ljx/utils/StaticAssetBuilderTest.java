@@ -0,0 +1,91 @@
+package com.ljx.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.DigestUtils;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StaticAssetBuilderTest {
+
+    @TempDir
+    Path source;
+
+    @TempDir
+    Path root;
+
+    @Test
+    void fingerprintsReferencesAndCompressesText() throws Exception {
+        Files.createDirectories(root.resolve("backend/js"));
+        Files.createDirectories(root.resolve("front/page"));
+        Files.createDirectories(source.resolve("front/page"));
+        byte[] script = "var a = 1;\n".repeat(200).getBytes(StandardCharsets.UTF_8);
+        Files.write(root.resolve("backend/js/app.js"), script);
+        byte[] original = ("<script src=\"../../backend/js/app.js\"></script>\n"
+                + "<script src=\"https://cdn.example.com/x.js\"></script>\n"
+                + "<script src=\"../missing.js\"></script>").getBytes(StandardCharsets.UTF_8);
+        Files.write(source.resolve("front/page/index.html"), original);
+        Path page = root.resolve("front/page/index.html");
+        Files.write(page, original);
+
+        int[] counts = StaticAssetBuilder.build(source, root);
+
+        String hash = DigestUtils.md5DigestAsHex(script);
+        String html = new String(Files.readAllBytes(page), StandardCharsets.UTF_8);
+        assertTrue(html.contains("src=\"../../backend/js/app-" + hash + ".js\""));
+        assertTrue(html.contains("src=\"https://cdn.example.com/x.js\""));
+        assertTrue(html.contains("src=\"../missing.js\""));
+        assertEquals(1, counts[0]);
+
+        //页面小于1KB不压缩
+        assertEquals(1, counts[1]);
+        assertFalse(Files.exists(root.resolve("front/page/index.html.gz")));
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(root.resolve("backend/js/app.js.gz")))) {
+            assertArrayEquals(script, in.readAllBytes());
+        }
+
+        //重复执行结果不变
+        StaticAssetBuilder.build(source, root);
+        assertEquals(html, new String(Files.readAllBytes(page), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void incrementalBuildRewritesPagesFromSource() throws Exception {
+        Files.createDirectories(root.resolve("js"));
+        Files.createDirectories(source.resolve("page"));
+        byte[] original = "<script src=\"../js/app.js\"></script>".getBytes(StandardCharsets.UTF_8);
+        Files.write(source.resolve("page/index.html"), original);
+        Path page = root.resolve("page/index.html");
+        Files.createDirectories(page.getParent());
+        Files.write(page, original);
+        Files.write(root.resolve("js/app.js"), "var a = 1;".getBytes(StandardCharsets.UTF_8));
+        StaticAssetBuilder.build(source, root);
+
+        //增量构建时只有修改过的js被重新复制，输出目录中的页面是上次改写的结果
+        byte[] changed = "var a = 2;".getBytes(StandardCharsets.UTF_8);
+        Files.write(root.resolve("js/app.js"), changed);
+        StaticAssetBuilder.build(source, root);
+
+        String html = new String(Files.readAllBytes(page), StandardCharsets.UTF_8);
+        assertEquals("<script src=\"../js/app-" + DigestUtils.md5DigestAsHex(changed) + ".js\"></script>", html);
+    }
+
+    @Test
+    void staleGzipIsRemovedWhenFileNoLongerQualifies() throws Exception {
+        Path script = root.resolve("app.js");
+        Files.write(script, "var a = 1;\n".repeat(200).getBytes(StandardCharsets.UTF_8));
+        StaticAssetBuilder.build(source, root);
+        assertTrue(Files.exists(root.resolve("app.js.gz")));
+
+        //增量构建时文件改小到不再压缩，旧的.gz不能留下
+        Files.write(script, "var a = 2;".getBytes(StandardCharsets.UTF_8));
+        StaticAssetBuilder.build(source, root);
+        assertFalse(Files.exists(root.resolve("app.js.gz")));
+    }
+}